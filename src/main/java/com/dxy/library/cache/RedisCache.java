@@ -1,25 +1,55 @@
 package com.dxy.library.cache;
 
 import com.google.gson.reflect.TypeToken;
+import com.dxy.library.cache.bitmap.ChunkedBitcount;
+import com.dxy.library.cache.bitmap.CompressedBitmapStore;
+import com.dxy.library.cache.bitmap.SegmentedBitmap;
 import com.dxy.library.cache.constant.CacheType;
+import com.dxy.library.cache.filter.BloomFilterRebuild;
+import com.dxy.library.cache.filter.CountingBloomFilter;
+import com.dxy.library.cache.filter.CuckooFilter;
+import com.dxy.library.cache.filter.ScalableBloomFilter;
+import com.dxy.library.cache.lock.FencedLock;
+import com.dxy.library.cache.lock.RedisLock;
+import com.dxy.library.cache.lock.RedisLockManager;
+import com.dxy.library.cache.lock.RedisQuorumLock;
 import com.dxy.library.cache.memory.IMemory;
 import com.dxy.library.cache.memory.caffeine.CaffeineCache;
 import com.dxy.library.cache.memory.guava.GuavaCache;
+import com.dxy.library.cache.memory.mapped.MappedFileCache;
+import com.dxy.library.cache.memory.offheap.OffHeapCache;
+import com.dxy.library.cache.ratelimit.RedisRateLimiter;
 import com.dxy.library.cache.redis.IRedis;
 import com.dxy.library.cache.redis.cluster.RedisClusterCache;
 import com.dxy.library.cache.redis.sentinel.RedisSentinelCache;
 import com.dxy.library.cache.redis.sharded.RedisShardedCache;
 import com.dxy.library.cache.redis.single.RedisSingleCache;
+import com.dxy.library.cache.stream.RedisStream;
+import com.dxy.library.cache.stream.StreamConsumer;
+import com.dxy.library.cache.stream.StreamMessage;
+import com.dxy.library.cache.warmup.CacheWarmer;
+import com.dxy.library.cache.window.RedisWindow;
+import com.dxy.library.cache.writebehind.CounterBuffer;
+import com.dxy.library.cache.writebehind.HllBuffer;
+import com.dxy.library.cache.writebehind.WriteBehindQueue;
 import com.dxy.library.json.gson.GsonUtil;
 import com.dxy.library.util.common.config.ConfigUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import redis.clients.jedis.BitOP;
 
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * 缓存操作类，部分缓存交由内存+Redis的模式进行，但仅限于不频繁变更的内容
@@ -32,6 +62,20 @@ public class RedisCache {
 
     private volatile static IMemory memory;
     private volatile static IRedis redis;
+    private volatile static CacheWarmer warmer;
+    private volatile static RedisStream stream;
+    private volatile static RedisLockManager lockManager;
+    private volatile static RedisQuorumLock quorumLock;
+    private volatile static RedisRateLimiter rateLimiter;
+    private volatile static CounterBuffer counterBuffer;
+    private volatile static WriteBehindQueue writeBehindQueue;
+    private volatile static HllBuffer hllBuffer;
+    private volatile static CompressedBitmapStore compressedBitmaps;
+    private volatile static ChunkedBitcount chunkedBitcount;
+    private static final Map<String, SegmentedBitmap> SEGMENTED_BITMAPS = new ConcurrentHashMap<>();
+
+    //zset前N名在内存中的缓存时间，内存缓存的过期时间对所有key生效，排行榜需要更短的过期时间
+    private static final long ZSET_TOP_EXPIRE_MILLIS = TimeUnit.SECONDS.toMillis(NumberUtils.toInt(ConfigUtils.getConfig("cache.memory.zset.top.expire.seconds"), 5));
 
     static {
         IS_MEMORY_ENABLE = BooleanUtils.toBoolean(ConfigUtils.getConfig("cache.memory.enable", Boolean.class));
@@ -45,6 +89,12 @@ public class RedisCache {
                     case CacheType.Memory.guava:
                         memory = new GuavaCache();
                         break;
+                    case CacheType.Memory.offheap:
+                        memory = new OffHeapCache();
+                        break;
+                    case CacheType.Memory.mapped:
+                        memory = new MappedFileCache();
+                        break;
                     default:
                         break;
                 }
@@ -74,6 +124,40 @@ public class RedisCache {
         }else{
 
         }
+
+        if (redis != null) {
+            stream = new RedisStream(redis);
+            lockManager = new RedisLockManager(redis);
+            rateLimiter = new RedisRateLimiter(redis);
+            compressedBitmaps = new CompressedBitmapStore(redis);
+            chunkedBitcount = new ChunkedBitcount(redis);
+        }
+
+        if (IS_MEMORY_ENABLE && memory != null && redis != null
+                && BooleanUtils.toBoolean(ConfigUtils.getConfig("cache.warmup.enable", Boolean.class))) {
+            warmer = new CacheWarmer(memory, redis);
+            warmer.start();
+        }
+    }
+
+    /**
+     * 缓存预热是否已完成（未开启预热时直接返回true），可用于服务的就绪检查
+     */
+    public static boolean isReady() {
+        return warmer == null || warmer.isReady();
+    }
+
+    /**
+     * 等待缓存预热完成，返回true表示已完成
+     */
+    public static boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return warmer == null || warmer.awaitReady(timeout, unit);
+    }
+
+    private static void record(String key, String type) {
+        if (warmer != null) {
+            warmer.record(key, type);
+        }
     }
 
     public static <T> String set(String key, T value) {
@@ -98,6 +182,39 @@ public class RedisCache {
         return redis.set(key, value, seconds);
     }
 
+    /**
+     * 异步设置键值对，放入写队列后立即返回，同一个key未写入前的多次修改只写入最后一次
+     * 不保证与同步写入之间的顺序，适用于不需要确认结果的缓存回填
+     */
+    public static <T> void setAsync(String key, T value) {
+        setAsync(key, value, 0);
+    }
+
+    public static <T> void setAsync(String key, T value, int seconds) {
+        if (value == null) {
+            return;
+        }
+        String valueStr = value instanceof String ? (String) value : GsonUtil.to(value);
+        if (IS_MEMORY_ENABLE) {
+            memory.set(key, valueStr);
+        }
+        writeBehindQueue().set(key, valueStr, seconds);
+    }
+
+    /**
+     * 异步写队列，可获取队列长度、合并次数、溢出次数等监控指标
+     */
+    public static WriteBehindQueue writeBehindQueue() {
+        if (writeBehindQueue == null) {
+            synchronized (RedisCache.class) {
+                if (writeBehindQueue == null) {
+                    writeBehindQueue = new WriteBehindQueue(redis);
+                }
+            }
+        }
+        return writeBehindQueue;
+    }
+
 
     public static <T> Long setnx(String key, T value) {
         return redis.setnx(key, value);
@@ -108,6 +225,7 @@ public class RedisCache {
     }
 
     public static String get(String key) {
+        record(key, CacheWarmer.TYPE_STRING);
         if (IS_MEMORY_ENABLE) {
             String value = memory.get(key);
             if (StringUtils.isNotEmpty(value)) {
@@ -123,6 +241,7 @@ public class RedisCache {
     }
 
     public static <T> T get(String key, Class<T> c) {
+        record(key, CacheWarmer.TYPE_STRING);
         if (IS_MEMORY_ENABLE) {
             String value = memory.get(key);
             if (StringUtils.isNotEmpty(value)) {
@@ -138,6 +257,7 @@ public class RedisCache {
     }
 
     public static <T> T get(String key, TypeToken<T> typeToken) {
+        record(key, CacheWarmer.TYPE_STRING);
         if (IS_MEMORY_ENABLE) {
             String value = memory.get(key);
             if (StringUtils.isNotEmpty(value)) {
@@ -152,6 +272,10 @@ public class RedisCache {
         return GsonUtil.from(value, typeToken);
     }
 
+    public static List<String> mget(String... keys) {
+        return redis.mget(keys);
+    }
+
     public static Long incr(String key, Integer value, int seconds) {
         if (IS_MEMORY_ENABLE) {//清除内存中的数据，防止脏读
             memory.del(key);
@@ -180,10 +304,61 @@ public class RedisCache {
         return redis.decr(key, value, seconds);
     }
 
+    /**
+     * 缓冲计数，增量在本地累加后定期批量写入Redis（cache.redis.counter.flush.interval.millis），适用于访问量等高频计数
+     * 不返回计数值，进程异常退出时最多丢失一个刷新周期的增量
+     */
+    public static void incrBuffered(String key, long value) {
+        if (IS_MEMORY_ENABLE) {//清除内存中的数据，防止脏读
+            memory.del(key);
+        }
+        counterBuffer().incr(key, value);
+    }
+
+    public static void decrBuffered(String key, long value) {
+        if (IS_MEMORY_ENABLE) {//清除内存中的数据，防止脏读
+            memory.del(key);
+        }
+        counterBuffer().incr(key, -value);
+    }
+
+    public static void hincrBuffered(String key, String field, long value) {
+        if (IS_MEMORY_ENABLE) {//清除内存中的数据，防止脏读
+            memory.del(key);
+        }
+        counterBuffer().hincr(key, field, value);
+    }
+
+    /**
+     * 立即将缓冲的计数写入Redis
+     */
+    public static void flushCounters() {
+        counterBuffer().flush();
+    }
+
+    /**
+     * 计数缓冲区，可获取未刷新的增量数量等监控指标
+     */
+    public static CounterBuffer counterBuffer() {
+        if (counterBuffer == null) {
+            synchronized (RedisCache.class) {
+                if (counterBuffer == null) {
+                    //刷新前读取可能把Redis中的旧值加载到内存，写入后再清除一次
+                    counterBuffer = new CounterBuffer(redis, IS_MEMORY_ENABLE ? memory::del : null);
+                }
+            }
+        }
+        return counterBuffer;
+    }
+
     public static Long expire(String key, int seconds) {
         return redis.expire(key, seconds);
     }
 
+    public static void expire(int seconds, String... keys) {
+        redis.expire(seconds, keys);
+    }
+
     public static Long persist(String key) {
         return redis.persist(key);
     }
@@ -193,10 +368,15 @@ public class RedisCache {
         return redis.exist(key);
     }
 
+    public static List<Boolean> exist(String... keys) {
+        return redis.exist(keys);
+    }
+
     public static Long del(String key) {
         if (IS_MEMORY_ENABLE) {
             memory.del(key);
         }
+        chunkedBitcount.invalidate(key);
         return redis.del(key);
     }
 
@@ -204,9 +384,49 @@ public class RedisCache {
         if (IS_MEMORY_ENABLE) {
             memory.del(keys);
         }
+        chunkedBitcount.invalidate(keys);
         redis.del(keys);
     }
 
+    public static Long unlink(String key) {
+        if (IS_MEMORY_ENABLE) {
+            memory.del(key);
+        }
+        chunkedBitcount.invalidate(key);
+        return redis.unlink(key);
+    }
+
+    public static Long unlink(String... keys) {
+        if (IS_MEMORY_ENABLE) {
+            memory.del(keys);
+        }
+        chunkedBitcount.invalidate(keys);
+        return redis.unlink(keys);
+    }
+
+    public static Iterator<String> scanKeys(String pattern) {
+        return redis.scanKeys(pattern);
+    }
+
+    public static Long delByPattern(String pattern) {
+        return delByPattern(pattern, null);
+    }
+
+    /**
+     * 删除匹配的key，同时删除内存中匹配的key
+     * @param progress 每删除一批key后回调已删除的总数，可以为null
+     */
+    public static Long delByPattern(String pattern, LongConsumer progress) {
+        if (IS_MEMORY_ENABLE) {
+            memory.delByPattern(pattern);
+        }
+        Long count = redis.delByPattern(pattern, progress);
+        if (IS_MEMORY_ENABLE) {//删除过程中可能有key被重新加载到内存，删除完成后再清除一次
+            memory.delByPattern(pattern);
+        }
+        return count;
+    }
+
     public static <T> Long lpush(String key, T value) {
         return redis.lpush(key, value);
     }
@@ -272,6 +492,10 @@ public class RedisCache {
         return redis.lrangePage(key, pageNo, pageSize, c);
     }
 
+    public static Iterator<String> lrangeStream(String key) {
+        return redis.lrangeStream(key);
+    }
+
     public static String lindex(String key, int index) {
         return redis.lindex(key, index);
     }
@@ -335,6 +559,7 @@ public class RedisCache {
     }
 
     public static Set<String> smembers(String key) {
+        record(key, CacheWarmer.TYPE_SET);
         if (IS_MEMORY_ENABLE) {
             String value = memory.get(key);
             if (StringUtils.isNotEmpty(value)) {
@@ -349,6 +574,92 @@ public class RedisCache {
         return set;
     }
 
+    public static Iterator<String> sscan(String key) {
+        return redis.sscan(key);
+    }
+
+    public static Long zadd(String key, double score, String member) {
+        return redis.zadd(key, score, member);
+    }
+
+    public static Long zadd(String key, Map<String, Double> scoreMembers) {
+        return redis.zadd(key, scoreMembers);
+    }
+
+    public static Double zincrby(String key, double increment, String member) {
+        return redis.zincrby(key, increment, member);
+    }
+
+    public static Map<String, Double> zincrby(String key, Map<String, Double> increments) {
+        return redis.zincrby(key, increments);
+    }
+
+    public static Double zscore(String key, String member) {
+        return redis.zscore(key, member);
+    }
+
+    public static List<Double> zscore(String key, String... members) {
+        return redis.zscore(key, members);
+    }
+
+    public static Long zrank(String key, String member) {
+        return redis.zrank(key, member);
+    }
+
+    public static Long zrevrank(String key, String member) {
+        return redis.zrevrank(key, member);
+    }
+
+    public static Set<String> zrange(String key, long start, long end) {
+        return redis.zrange(key, start, end);
+    }
+
+    public static Set<String> zrevrange(String key, long start, long end) {
+        return redis.zrevrange(key, start, end);
+    }
+
+    public static Map<String, Double> zrangeWithScores(String key, long start, long end) {
+        return redis.zrangeWithScores(key, start, end);
+    }
+
+    public static Map<String, Double> zrevrangeWithScores(String key, long start, long end) {
+        return redis.zrevrangeWithScores(key, start, end);
+    }
+
+    /**
+     * 获取分数最高的前n个元素及分数（如排行榜），返回的Map按排名有序
+     * 开启内存缓存时结果在内存中缓存cache.memory.zset.top.expire.seconds秒，期间可能读到旧数据
+     */
+    public static Map<String, Double> ztop(String key, int n) {
+        if (StringUtils.isEmpty(key) || n <= 0) {
+            return null;
+        }
+        String memoryKey = "ztop:" + n + ":" + key;
+        if (IS_MEMORY_ENABLE) {
+            String value = memory.get(memoryKey);
+            if (StringUtils.isNotEmpty(value)) {
+                ZsetTop top = GsonUtil.from(value, ZsetTop.class);
+                if (top.expireAt > System.currentTimeMillis()) {
+                    return top.scores;
+                }
+            }
+        }
+
+        Map<String, Double> scores = redis.zrevrangeWithScores(key, 0, n - 1);
+        if (IS_MEMORY_ENABLE && scores != null) {
+            memory.set(memoryKey, GsonUtil.to(new ZsetTop(System.currentTimeMillis() + ZSET_TOP_EXPIRE_MILLIS, scores)));
+        }
+        return scores;
+    }
+
+    public static Long zrem(String key, String... members) {
+        return redis.zrem(key, members);
+    }
+
+    public static Long zcard(String key) {
+        return redis.zcard(key);
+    }
+
     public static <T> Long hset(String key, String field, T value) {
         if (IS_MEMORY_ENABLE) {//清除内存中的数据，防止脏读
             memory.del(key);
@@ -370,6 +681,20 @@ public class RedisCache {
         return redis.hset(key, field, value, seconds);
     }
 
+    /**
+     * 异步设置map的字段，放入写队列后立即返回
+     * @param seconds 整个map的过期时间（秒），0表示不过期
+     */
+    public static <T> void hsetAsync(String key, String field, T value, int seconds) {
+        if (field == null || value == null) {
+            return;
+        }
+        if (IS_MEMORY_ENABLE) {//清除内存中的数据，防止脏读
+            memory.del(key);
+        }
+        writeBehindQueue().hset(key, field, value instanceof String ? (String) value : GsonUtil.to(value), seconds);
+    }
+
     public static String hmset(String key, int seconds, String... values) {
         if (IS_MEMORY_ENABLE) {//清除内存中的数据，防止脏读
             memory.del(key);
@@ -378,6 +703,7 @@ public class RedisCache {
     }
 
     public static String hget(String key, String field) {
+        record(key, CacheWarmer.TYPE_HASH);
         if (IS_MEMORY_ENABLE) {
             String value = memory.get(key);
             if (StringUtils.isNotEmpty(value)) {
@@ -404,6 +730,7 @@ public class RedisCache {
     }
 
     public static Map<String, String> hgetAll(String key) {
+        record(key, CacheWarmer.TYPE_HASH);
         if (IS_MEMORY_ENABLE) {
             String value = memory.get(key);
             Map<String, String> map = GsonUtil.from(value, new TypeToken<Map<String, String>>() {});
@@ -418,6 +745,10 @@ public class RedisCache {
         return map;
     }
 
+    public static Iterator<Map.Entry<String, String>> hscan(String key) {
+        return redis.hscan(key);
+    }
+
     public static Long pfadd(String key, String value) {
         return redis.pfadd(key, value);
     }
@@ -426,12 +757,61 @@ public class RedisCache {
         return redis.pfcount(key);
     }
 
+    /**
+     * 获取多个key合并之后的元素数量，如统计多天的UV时传入每天的key，不修改原有的key
+     */
+    public static Long pfcount(String... keys) {
+        return redis.pfcount(keys);
+    }
+
+    /**
+     * 缓冲添加，值在本地去重后定期通过多元素PFADD批量写入Redis（cache.redis.hll.flush.interval.millis），适用于UV统计
+     * @param seconds 过期时间（秒），0表示不过期
+     */
+    public static void pfaddBuffered(String key, String value, int seconds) {
+        hllBuffer().pfadd(key, value, seconds);
+    }
+
+    /**
+     * 立即将缓冲的值写入Redis
+     */
+    public static void flushHll() {
+        hllBuffer().flush();
+    }
+
+    /**
+     * 按时间分桶的去重计数和计数器，如window("uv", Duration.ofMinutes(5), Duration.ofHours(1), Duration.ofDays(1))
+     * 写入时一次请求更新所有粒度的桶，区间查询一次请求完成
+     * @param buckets 分桶粒度，较粗的粒度必须是较细粒度的整数倍，每个粒度保留cache.redis.window.retention.buckets个桶，按UTC时间对齐
+     */
+    public static RedisWindow window(String name, Duration... buckets) {
+        return new RedisWindow(redis, name, buckets);
+    }
+
+    /**
+     * HyperLogLog写缓冲，可获取未刷新的值的数量等监控指标
+     */
+    public static HllBuffer hllBuffer() {
+        if (hllBuffer == null) {
+            synchronized (RedisCache.class) {
+                if (hllBuffer == null) {
+                    hllBuffer = new HllBuffer(redis);
+                }
+            }
+        }
+        return hllBuffer;
+    }
+
     public static boolean setbit(String key, long offset, boolean value) {
-        return redis.setbit(key, offset, value);
+        boolean setbit = redis.setbit(key, offset, value);
+        chunkedBitcount.invalidate(key, offset);
+        return setbit;
     }
 
     public static boolean setbit(String key, long offset, String value) {
-        return redis.setbit(key, offset, value);
+        boolean setbit = redis.setbit(key, offset, value);
+        chunkedBitcount.invalidate(key, offset);
+        return setbit;
     }
 
     public static boolean getbit(String key, long offset) {
@@ -446,8 +826,26 @@ public class RedisCache {
         return redis.bitcount(key, start, end);
     }
 
+    /**
+     * 分段统计Bitmap中值为1的位的个数，结果与bitcount一致，适用于很大的Bitmap，统计期间不会长时间阻塞Redis
+     */
+    public static long bitcountChunked(String key) {
+        return chunkedBitcount.bitcount(key);
+    }
+
     public static Long bitop(BitOP op, String destKey, String... srcKeys) {
-        return redis.bitop(op, destKey, srcKeys);
+        Long bitop = redis.bitop(op, destKey, srcKeys);
+        chunkedBitcount.invalidate(destKey);
+        return bitop;
+    }
+
+    /**
+     * 执行位运算并保存到destKey，返回结果中值为1的位的个数，如多日活跃用户的交集人数
+     */
+    public static Long bitopcount(BitOP op, String destKey, String... srcKeys) {
+        Long bitopcount = redis.bitopcount(op, destKey, srcKeys);
+        chunkedBitcount.invalidate(destKey);
+        return bitopcount;
     }
 
     public static List<Long> bitfield(String key, String... arguments) {
@@ -462,8 +860,30 @@ public class RedisCache {
         return redis.bitpos(key, value, start, end);
     }
 
+    /**
+     * 分段查找第一个值为value的位的偏移量，结果与bitpos一致，适用于很大的Bitmap
+     */
+    public static long bitposChunked(String key, boolean value) {
+        return chunkedBitcount.bitpos(key, value);
+    }
+
+    /**
+     * 获取分段Bitmap，偏移量映射到多个固定大小的分段key上，只为写入过的分段分配内存，适用于偏移量很大的稀疏Bitmap
+     */
+    public static SegmentedBitmap segmentedBitmap(String key) {
+        return SEGMENTED_BITMAPS.computeIfAbsent(key, k -> new SegmentedBitmap(redis, k));
+    }
+
+    /**
+     * 获取压缩Bitmap存储，适用于值稀疏的集合（如几十亿范围内的几万个用户ID），只存储有值的容器
+     * 支持批量添加/判断，以及客户端计算的与/或/异或/取反/差集（不受分片/集群的跨节点限制），并发写入通过乐观锁保证不丢失
+     */
+    public static CompressedBitmapStore compressedBitmaps() {
+        return compressedBitmaps;
+    }
+
     public static <T> boolean bloomadd(String key, T value) {
-        boolean bloomadd = redis.bloomadd(key, value);
+        boolean bloomadd = BloomFilterRebuild.isRebuilding(redis, key) ? BloomFilterRebuild.bloomadd(redis, key, value) : redis.bloomadd(key, value);
         if (IS_MEMORY_ENABLE && bloomadd) {
             String valueStr;
             if (value instanceof String) {
@@ -489,16 +909,55 @@ public class RedisCache {
             if (BooleanUtils.isTrue(bloomcons)) {
                 return bloomcons;
             }
-            bloomcons = redis.bloomcons(key, value);
+            bloomcons = bloomconsRedis(key, value);
             if (bloomcons) {
                 memory.set(key + valueStr, bloomcons);
             }
             return bloomcons;
         } else {
-            return redis.bloomcons(key, value);
+            return bloomconsRedis(key, value);
         }
     }
 
+    private static <T> boolean bloomconsRedis(String key, T value) {
+        return BloomFilterRebuild.isRebuilding(redis, key) ? BloomFilterRebuild.bloomcons(redis, key, value) : redis.bloomcons(key, value);
+    }
+
+    /**
+     * 在后台重建bloomadd创建的BloomFilter，重建期间bloomadd同时写入新旧BloomFilter，bloomcons同时检查新旧BloomFilter，完成后原子替换
+     * @param source 数据源，需要包含所有应该存在的值，如数据库游标、文件、RedisCache.sscan
+     */
+    public static <T> BloomFilterRebuild bloomRebuild(String key, Iterator<T> source) {
+        return new BloomFilterRebuild(redis, key).start(source);
+    }
+
+    /**
+     * 获取计数BloomFilter，支持删除，适用于元素频繁增删的集合，不需要定期重建
+     * @param expectedInsertions 预期元素数量
+     * @param fpp 期望的误判率，如0.001
+     */
+    public static CountingBloomFilter countingBloomFilter(String key, long expectedInsertions, double fpp) {
+        return new CountingBloomFilter(redis, key, expectedInsertions, fpp);
+    }
+
+    /**
+     * 获取布谷鸟过滤器，支持删除，相同误判率下比计数BloomFilter占用空间更小
+     * @param capacity 预期元素数量
+     */
+    public static CuckooFilter cuckooFilter(String key, long capacity) {
+        return new CuckooFilter(redis, key, capacity);
+    }
+
+    /**
+     * 获取可扩容的BloomFilter，元素数量达到当前层的容量后自动添加新的一层，不需要预先估计元素数量
+     * 已有的bloomadd数据可以通过migrateLegacy接入
+     * @param initialCapacity 第一层的容量
+     * @param fpp 总误判率，如0.001
+     */
+    public static ScalableBloomFilter scalableBloomFilter(String key, long initialCapacity, double fpp) {
+        return new ScalableBloomFilter(redis, key, initialCapacity, fpp);
+    }
+
     public static Long pfadd(String key, String value, int seconds) {
         return redis.pfadd(key, value, seconds);
     }
@@ -510,4 +969,117 @@ public class RedisCache {
     public static boolean releaseDistributedLock(String lockKey, String requestId) {
         return redis.releaseDistributedLock(lockKey, requestId);
     }
+
+    /**
+     * 获取分布式锁对象（不会加锁），同一线程可重入，持有期间自动续期，等待时通过订阅释放通知唤醒
+     * @param name 锁名称
+     */
+    public static RedisLock lock(String name) {
+        return lockManager.getLock(name);
+    }
+
+    /**
+     * 获取多数派锁（在多个独立主节点上加锁，容忍少数节点故障和主从切换），获取失败返回null
+     * 返回的fencing token单调递增，下游写入时可据此拒绝已过期的持有者
+     * @param leaseMillis 锁的租期，不会自动续期
+     * @param waitMillis 最长等待时间，0表示不等待
+     */
+    public static FencedLock quorumLock(String name, long leaseMillis, long waitMillis) throws InterruptedException {
+        return quorumLock().tryLock(name, leaseMillis, waitMillis);
+    }
+
+    public static boolean quorumUnlock(FencedLock lock) {
+        return quorumLock().unlock(lock);
+    }
+
+    /**
+     * 多数派锁在首次使用时初始化，未配置cache.redis.lock.quorum.nodes且不使用时不连接节点
+     */
+    private static RedisQuorumLock quorumLock() {
+        if (quorumLock == null) {
+            synchronized (RedisCache.class) {
+                if (quorumLock == null) {
+                    quorumLock = new RedisQuorumLock();
+                }
+            }
+        }
+        return quorumLock;
+    }
+
+    /**
+     * 令牌桶限流，获取一个令牌
+     * @param permitsPerSecond 每秒生成的令牌数
+     * @param burst 允许的最大突发数量
+     */
+    public static boolean rateLimit(String key, double permitsPerSecond, long burst) {
+        return rateLimiter.tryAcquire(key, 1, permitsPerSecond, burst);
+    }
+
+    public static boolean rateLimit(String key, int permits, double permitsPerSecond, long burst) {
+        return rateLimiter.tryAcquire(key, permits, permitsPerSecond, burst);
+    }
+
+    /**
+     * 本地预分配的令牌桶限流，每次从Redis租用一批令牌（cache.redis.ratelimit.local.batch）在本地消费
+     */
+    public static boolean rateLimitLocal(String key, double permitsPerSecond, long burst) {
+        return rateLimiter.tryAcquireLocal(key, permitsPerSecond, burst);
+    }
+
+    /**
+     * 滑动窗口限流，任意windowMillis时间内最多limit次
+     */
+    public static boolean rateLimitSliding(String key, long limit, long windowMillis) {
+        return rateLimiter.tryAcquireSliding(key, 1, limit, windowMillis);
+    }
+
+    public static Object eval(String script, List<String> keys, List<String> args) {
+        return redis.eval(script, keys, args);
+    }
+
+    public static String xadd(String key, Map<String, String> fields, long maxLen) {
+        return stream.xadd(key, fields, maxLen);
+    }
+
+    public static List<String> xadd(String key, List<Map<String, String>> messages, long maxLen) {
+        return stream.xadd(key, messages, maxLen);
+    }
+
+    public static boolean xgroupCreate(String key, String group, String startId) {
+        return stream.xgroupCreate(key, group, startId);
+    }
+
+    public static List<StreamMessage> xreadgroup(String key, String group, String consumer, int count) {
+        return stream.xreadgroup(key, group, consumer, count);
+    }
+
+    public static long xack(String key, String group, List<String> ids) {
+        return stream.xack(key, group, ids);
+    }
+
+    public static List<StreamMessage> xclaim(String key, String group, String consumer, long minIdleMillis, int count) {
+        return stream.xclaim(key, group, consumer, minIdleMillis, count);
+    }
+
+    public static Long xlen(String key) {
+        return stream.xlen(key);
+    }
+
+    /**
+     * 启动Stream消费者，按批拉取消息交给工作线程处理，处理成功后批量确认，不再使用时调用close停止
+     * @param handler 消息处理器，抛出异常表示处理失败，消息会在超时后重新投递
+     */
+    public static StreamConsumer consume(String key, String group, String consumer, Consumer<List<StreamMessage>> handler) {
+        return new StreamConsumer(stream, key, group, consumer, handler).start();
+    }
+
+    private static class ZsetTop {
+        private long expireAt;
+        private LinkedHashMap<String, Double> scores;
+
+        ZsetTop(long expireAt, Map<String, Double> scores) {
+            this.expireAt = expireAt;
+            this.scores = new LinkedHashMap<>(scores);
+        }
+    }
 }
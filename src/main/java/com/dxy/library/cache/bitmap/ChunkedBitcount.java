@@ -0,0 +1,163 @@
+package com.dxy.library.cache.bitmap;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大Bitmap的分段统计，BITCOUNT/BITPOS按固定大小（cache.redis.bitcount.chunk.bytes）拆分为多个小范围命令
+ * 每轮在一个管道中执行cache.redis.bitcount.pipeline.chunks个分段，轮与轮之间Redis可以处理其他请求，不会被一个O(N)命令长时间阻塞
+ * 开启本地缓存（cache.redis.bitcount.local.enable）后缓存每个完整分段的计数，通过RedisCache写入的位会使对应分段的缓存失效，
+ * 全量统计只需要重新读取变化的分段，其他进程的写入在缓存过期（cache.redis.bitcount.local.expire.millis）后生效
+ * @author duanxinyuan
+ * 2019/3/22 15:10
+ */
+public class ChunkedBitcount {
+
+    private final IRedis redis;
+    private final long chunkBytes;
+    private final int pipelineChunks;
+    //key -> 分段计数，未开启本地缓存时为null
+    private final Cache<String, ChunkCounts> local;
+
+    public ChunkedBitcount(IRedis redis) {
+        this.redis = redis;
+        this.chunkBytes = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.bitcount.chunk.bytes"), 65536), 1);
+        this.pipelineChunks = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.bitcount.pipeline.chunks"), 64), 1);
+        if (BooleanUtils.toBoolean(ConfigUtils.getConfig("cache.redis.bitcount.local.enable", Boolean.class))) {
+            this.local = Caffeine.newBuilder()
+                    .maximumSize(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.bitcount.local.size"), 1000))
+                    .expireAfterWrite(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.bitcount.local.expire.millis"), 60000), TimeUnit.MILLISECONDS)
+                    .build();
+        } else {
+            this.local = null;
+        }
+    }
+
+    /**
+     * Bitmap中值为1的位的个数，与BITCOUNT key的结果一致
+     */
+    public long bitcount(String key) {
+        long length = redis.strlen(key);
+        long chunks = (length + chunkBytes - 1) / chunkBytes;
+        long count = 0;
+        for (long chunk = 0; chunk < chunks; chunk += pipelineChunks) {
+            for (long chunkCount : counts(key, length, chunk, (int) Math.min(pipelineChunks, chunks - chunk))) {
+                count += chunkCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 第一个值为value的位的偏移量，与BITPOS key value的结果一致：
+     * value为true且不存在时返回-1，value为false且所有位都为1时返回字符串末尾之后的第一个位
+     */
+    public long bitpos(String key, boolean value) {
+        long length = redis.strlen(key);
+        long chunks = (length + chunkBytes - 1) / chunkBytes;
+        for (long chunk = 0; chunk < chunks; chunk += pipelineChunks) {
+            long[] counts = counts(key, length, chunk, (int) Math.min(pipelineChunks, chunks - chunk));
+            for (int i = 0; i < counts.length; i++) {
+                long start = (chunk + i) * chunkBytes;
+                long end = Math.min(start + chunkBytes, length) - 1;
+                if (value ? counts[i] > 0 : counts[i] < (end - start + 1) * 8) {
+                    return redis.bitpos(key, value, start, end);
+                }
+            }
+        }
+        return value ? -1 : length * 8;
+    }
+
+    /**
+     * 写入位之后使对应分段的缓存失效
+     */
+    public void invalidate(String key, long offset) {
+        if (local != null) {
+            ChunkCounts counts = local.getIfPresent(key);
+            if (counts != null) {
+                synchronized (counts) {
+                    counts.version.incrementAndGet();
+                    counts.chunks.remove(offset / 8 / chunkBytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * 整个key被覆盖或删除之后使缓存失效
+     */
+    public void invalidate(String... keys) {
+        if (local != null) {
+            for (String key : keys) {
+                ChunkCounts counts = local.getIfPresent(key);
+                if (counts != null) {
+                    counts.version.incrementAndGet();
+                    local.invalidate(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取[fromChunk, fromChunk + size)分段的计数，缓存中没有的分段在一个管道中读取
+     */
+    private long[] counts(String key, long length, long fromChunk, int size) {
+        long[] counts = new long[size];
+        ChunkCounts cached = local == null ? null : local.get(key, k -> new ChunkCounts());
+        if (cached == null) {
+            List<Long> values = redis.bitcountChunks(key, chunkBytes, fromChunk, size);
+            for (int i = 0; i < size; i++) {
+                counts[i] = values.get(i);
+            }
+            return counts;
+        }
+        //读取之前记录版本号，读取期间有写入时不缓存读取结果
+        long version = cached.version.get();
+        int missingFrom = size;
+        int missingTo = -1;
+        for (int i = 0; i < size; i++) {
+            Long count = cached.chunks.get(fromChunk + i);
+            if (count == null) {
+                missingFrom = Math.min(missingFrom, i);
+                missingTo = i;
+            } else {
+                counts[i] = count;
+            }
+        }
+        if (missingTo < 0) {
+            return counts;
+        }
+        List<Long> values = redis.bitcountChunks(key, chunkBytes, fromChunk + missingFrom, missingTo - missingFrom + 1);
+        for (int i = missingFrom; i <= missingTo; i++) {
+            counts[i] = values.get(i - missingFrom);
+        }
+        synchronized (cached) {
+            if (cached.version.get() == version) {
+                for (int i = missingFrom; i <= missingTo; i++) {
+                    long chunk = fromChunk + i;
+                    //最后一个不完整的分段在字符串变长后计数会变化，不缓存
+                    if ((chunk + 1) * chunkBytes <= length) {
+                        cached.chunks.put(chunk, counts[i]);
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static class ChunkCounts {
+        private final AtomicLong version = new AtomicLong();
+        private final Map<Long, Long> chunks = new ConcurrentHashMap<>();
+    }
+
+}
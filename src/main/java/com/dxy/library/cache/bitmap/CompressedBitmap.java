@@ -0,0 +1,552 @@
+package com.dxy.library.cache.bitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 压缩Bitmap（Roaring Bitmap的简化实现），值的范围为[0, 2^32)
+ * 按值的高16位分为多个容器，容器内元素不超过4096个时使用有序数组（每个元素2字节），否则使用65536位的位图（8K）
+ * 稀疏数据占用的空间只与元素数量有关，与最大值无关
+ * @author duanxinyuan
+ * 2019/3/21 10:10
+ */
+public class CompressedBitmap {
+
+    public static final long MAX_VALUE = (1L << 32) - 1;
+
+    //数组容器的最大元素数量，超过后转为位图容器（两者占用空间相同）
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private static final byte TYPE_ARRAY = 0;
+    private static final byte TYPE_BITMAP = 1;
+
+    //高16位 -> 容器
+    private final TreeMap<Integer, Container> containers;
+
+    public CompressedBitmap() {
+        this.containers = new TreeMap<>();
+    }
+
+    private CompressedBitmap(TreeMap<Integer, Container> containers) {
+        this.containers = containers;
+    }
+
+    public static CompressedBitmap of(long... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (long value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 添加值，返回false表示已经存在
+     */
+    public boolean add(long value) {
+        check(value);
+        int high = high(value);
+        Container container = containers.get(high);
+        if (container == null) {
+            containers.put(high, new ArrayContainer().add(low(value)));
+            return true;
+        }
+        int cardinality = container.cardinality();
+        Container added = container.add(low(value));
+        containers.put(high, added);
+        return added.cardinality() > cardinality;
+    }
+
+    /**
+     * 移除值，返回false表示不存在
+     */
+    public boolean remove(long value) {
+        check(value);
+        int high = high(value);
+        Container container = containers.get(high);
+        if (container == null || !container.contains(low(value))) {
+            return false;
+        }
+        Container removed = container.remove(low(value));
+        if (removed.cardinality() == 0) {
+            containers.remove(high);
+        } else {
+            containers.put(high, removed);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value < 0 || value > MAX_VALUE) {
+            return false;
+        }
+        Container container = containers.get(high(value));
+        return container != null && container.contains(low(value));
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (Container container : containers.values()) {
+            cardinality += container.cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return containers.isEmpty();
+    }
+
+    /**
+     * 最大值，为空时返回-1
+     */
+    public long last() {
+        if (containers.isEmpty()) {
+            return -1;
+        }
+        Map.Entry<Integer, Container> entry = containers.lastEntry();
+        return ((long) entry.getKey() << 16) | entry.getValue().last();
+    }
+
+    /**
+     * 复制，容器不可变，只复制容器索引
+     */
+    public CompressedBitmap copy() {
+        return new CompressedBitmap(new TreeMap<>(containers));
+    }
+
+    public CompressedBitmap and(CompressedBitmap other) {
+        TreeMap<Integer, Container> result = new TreeMap<>();
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            Container otherContainer = other.containers.get(entry.getKey());
+            if (otherContainer != null) {
+                put(result, entry.getKey(), entry.getValue().and(otherContainer));
+            }
+        }
+        return new CompressedBitmap(result);
+    }
+
+    public CompressedBitmap or(CompressedBitmap other) {
+        TreeMap<Integer, Container> result = new TreeMap<>(containers);
+        other.containers.forEach((high, container) -> {
+            Container current = result.get(high);
+            result.put(high, current == null ? container : current.or(container));
+        });
+        return new CompressedBitmap(result);
+    }
+
+    public CompressedBitmap xor(CompressedBitmap other) {
+        TreeMap<Integer, Container> result = new TreeMap<>(containers);
+        other.containers.forEach((high, container) -> {
+            Container current = result.remove(high);
+            put(result, high, current == null ? container : current.xor(container));
+        });
+        return new CompressedBitmap(result);
+    }
+
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        TreeMap<Integer, Container> result = new TreeMap<>();
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            Container otherContainer = other.containers.get(entry.getKey());
+            put(result, entry.getKey(), otherContainer == null ? entry.getValue() : entry.getValue().andNot(otherContainer));
+        }
+        return new CompressedBitmap(result);
+    }
+
+    /**
+     * 对[0, end)范围内的值取反
+     */
+    public CompressedBitmap flip(long end) {
+        TreeMap<Integer, Container> result = new TreeMap<>();
+        if (end <= 0) {
+            return new CompressedBitmap(result);
+        }
+        end = Math.min(end, MAX_VALUE + 1);
+        int lastHigh = high(end - 1);
+        for (int high = 0; high <= lastHigh; high++) {
+            BitmapContainer range = BitmapContainer.range(high == lastHigh ? (int) ((end - 1) & 0xFFFF) + 1 : 1 << 16);
+            Container container = containers.get(high);
+            put(result, high, container == null ? range.normalize() : range.andNot(container));
+        }
+        return new CompressedBitmap(result);
+    }
+
+    public void forEach(LongConsumer consumer) {
+        containers.forEach((high, container) -> container.forEach(low -> consumer.accept(((long) high << 16) | low)));
+    }
+
+    public long[] toArray() {
+        long[] values = new long[(int) cardinality()];
+        int[] index = {0};
+        forEach(value -> values[index[0]++] = value);
+        return values;
+    }
+
+    /**
+     * 序列化的容器，高16位 -> 容器数据
+     */
+    Map<Integer, byte[]> serializeContainers() {
+        Map<Integer, byte[]> serialized = new TreeMap<>();
+        containers.forEach((high, container) -> serialized.put(high, container.serialize()));
+        return serialized;
+    }
+
+    /**
+     * 序列化指定的容器，容器不存在（为空）时返回null
+     */
+    byte[] serializeContainer(int high) {
+        Container container = containers.get(high);
+        return container == null ? null : container.serialize();
+    }
+
+    /**
+     * 从序列化的容器恢复，值为null的容器忽略
+     */
+    static CompressedBitmap deserialize(Map<Integer, byte[]> serialized) {
+        TreeMap<Integer, Container> containers = new TreeMap<>();
+        serialized.forEach((high, bytes) -> {
+            if (bytes != null && bytes.length > 0) {
+                put(containers, high, Container.deserialize(bytes));
+            }
+        });
+        return new CompressedBitmap(containers);
+    }
+
+    static int high(long value) {
+        return (int) (value >>> 16);
+    }
+
+    private static int low(long value) {
+        return (int) (value & 0xFFFF);
+    }
+
+    private static void check(long value) {
+        if (value < 0 || value > MAX_VALUE) {
+            throw new IllegalArgumentException("compressed bitmap value out of range [0, 2^32), value: " + value);
+        }
+    }
+
+    private static void put(TreeMap<Integer, Container> containers, int high, Container container) {
+        if (container.cardinality() > 0) {
+            containers.put(high, container);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompressedBitmap)) {
+            return false;
+        }
+        return Arrays.equals(toArray(), ((CompressedBitmap) o).toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedBitmap{cardinality=" + cardinality() + ", containers=" + containers.size() + '}';
+    }
+
+    /**
+     * 容器，写操作返回新的容器（可能转换类型），不修改原容器，因此多个Bitmap之间可以共享容器
+     */
+    private abstract static class Container {
+
+        abstract Container add(int low);
+
+        abstract Container remove(int low);
+
+        abstract boolean contains(int low);
+
+        abstract int cardinality();
+
+        abstract int last();
+
+        abstract long[] words();
+
+        abstract void forEach(IntConsumer consumer);
+
+        abstract byte[] serialize();
+
+        Container and(Container other) {
+            long[] a = words();
+            long[] b = other.words();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                a[i] &= b[i];
+            }
+            return new BitmapContainer(a).normalize();
+        }
+
+        Container or(Container other) {
+            long[] a = words();
+            long[] b = other.words();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                a[i] |= b[i];
+            }
+            return new BitmapContainer(a).normalize();
+        }
+
+        Container xor(Container other) {
+            long[] a = words();
+            long[] b = other.words();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                a[i] ^= b[i];
+            }
+            return new BitmapContainer(a).normalize();
+        }
+
+        Container andNot(Container other) {
+            long[] a = words();
+            long[] b = other.words();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                a[i] &= ~b[i];
+            }
+            return new BitmapContainer(a).normalize();
+        }
+
+        static Container deserialize(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            byte type = buffer.get();
+            if (type == TYPE_ARRAY) {
+                int size = buffer.getShort() & 0xFFFF;
+                char[] values = new char[size];
+                buffer.asCharBuffer().get(values);
+                return new ArrayContainer(values, size);
+            }
+            long[] words = new long[BITMAP_WORDS];
+            buffer.asLongBuffer().get(words);
+            return new BitmapContainer(words);
+        }
+    }
+
+    /**
+     * 有序数组容器
+     */
+    private static class ArrayContainer extends Container {
+        private final char[] values;
+        private final int size;
+
+        ArrayContainer() {
+            this(new char[0], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        Container add(int low) {
+            int index = Arrays.binarySearch(values, 0, size, (char) low);
+            if (index >= 0) {
+                return this;
+            }
+            if (size >= ARRAY_MAX_SIZE) {
+                long[] words = words();
+                words[low >>> 6] |= 1L << low;
+                return new BitmapContainer(words);
+            }
+            int insert = -index - 1;
+            char[] added = new char[size + 1];
+            System.arraycopy(values, 0, added, 0, insert);
+            added[insert] = (char) low;
+            System.arraycopy(values, insert, added, insert + 1, size - insert);
+            return new ArrayContainer(added, size + 1);
+        }
+
+        @Override
+        Container remove(int low) {
+            int index = Arrays.binarySearch(values, 0, size, (char) low);
+            if (index < 0) {
+                return this;
+            }
+            char[] removed = new char[size - 1];
+            System.arraycopy(values, 0, removed, 0, index);
+            System.arraycopy(values, index + 1, removed, index, size - index - 1);
+            return new ArrayContainer(removed, size - 1);
+        }
+
+        @Override
+        boolean contains(int low) {
+            return Arrays.binarySearch(values, 0, size, (char) low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        int last() {
+            return values[size - 1];
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < size; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (!(other instanceof ArrayContainer)) {
+                return super.and(other);
+            }
+            ArrayContainer that = (ArrayContainer) other;
+            char[] result = new char[Math.min(size, that.size)];
+            int count = 0;
+            for (int i = 0, j = 0; i < size && j < that.size; ) {
+                if (values[i] == that.values[j]) {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                } else if (values[i] < that.values[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(values[i]);
+            }
+        }
+
+        @Override
+        byte[] serialize() {
+            ByteBuffer buffer = ByteBuffer.allocate(3 + size * 2);
+            buffer.put(TYPE_ARRAY);
+            buffer.putShort((short) size);
+            for (int i = 0; i < size; i++) {
+                buffer.putChar(values[i]);
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * 位图容器
+     */
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private final int cardinality;
+
+        BitmapContainer(long[] words) {
+            this.words = words;
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            this.cardinality = count;
+        }
+
+        /**
+         * [0, end)范围内全部为1的容器
+         */
+        static BitmapContainer range(int end) {
+            long[] words = new long[BITMAP_WORDS];
+            int full = end >>> 6;
+            Arrays.fill(words, 0, full, -1L);
+            if ((end & 63) != 0) {
+                words[full] = (1L << end) - 1;
+            }
+            return new BitmapContainer(words);
+        }
+
+        @Override
+        Container add(int low) {
+            if (contains(low)) {
+                return this;
+            }
+            long[] added = words.clone();
+            added[low >>> 6] |= 1L << low;
+            return new BitmapContainer(added);
+        }
+
+        @Override
+        Container remove(int low) {
+            if (!contains(low)) {
+                return this;
+            }
+            long[] removed = words.clone();
+            removed[low >>> 6] &= ~(1L << low);
+            return new BitmapContainer(removed).normalize();
+        }
+
+        @Override
+        boolean contains(int low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int last() {
+            for (int i = BITMAP_WORDS - 1; i >= 0; i--) {
+                if (words[i] != 0) {
+                    return i * 64 + 63 - Long.numberOfLeadingZeros(words[i]);
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        long[] words() {
+            return words.clone();
+        }
+
+        /**
+         * 元素数量不超过数组容器上限时转为数组容器
+         */
+        Container normalize() {
+            if (cardinality > ARRAY_MAX_SIZE) {
+                return this;
+            }
+            char[] values = new char[cardinality];
+            int[] index = {0};
+            forEach(low -> values[index[0]++] = (char) low);
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        byte[] serialize() {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + BITMAP_WORDS * 8);
+            buffer.put(TYPE_BITMAP);
+            for (long word : words) {
+                buffer.putLong(word);
+            }
+            return buffer.array();
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+package com.dxy.library.cache.bitmap;
+
+import com.dxy.library.cache.exception.RedisCacheException;
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.BitOP;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压缩Bitmap的Redis存储，适用于值稀疏（如30亿用户中的几万个）的集合，占用空间与元素数量相关，与最大值无关
+ * 每个key存储为一个hash，field为容器编号（值的高16位），value为序列化的容器，读写只访问涉及的容器
+ * 批量写入为读取-修改-写回，写回时通过Lua脚本比较容器的SHA1，容器已被其他写入修改时重新读取后重试（乐观锁）
+ * 整个Bitmap的读取结果在本地缓存cache.redis.roaring.local.expire.millis，本进程的写入会使缓存失效
+ * @author duanxinyuan
+ * 2019/3/21 11:30
+ */
+public class CompressedBitmapStore {
+
+    //ARGV每3个一组：容器编号、原容器的SHA1（不存在时为空串）、新容器的16进制编码（为空串时删除），任一容器已被修改时不写入并返回0
+    //Lua脚本的参数按字符串传递，二进制的容器编码为16进制，在脚本中还原
+    private static final String CAS_SCRIPT = "for i = 1, #ARGV, 3 do "
+            + "local old = redis.call('HGET', KEYS[1], ARGV[i]) "
+            + "local sha = old and redis.sha1hex(old) or '' "
+            + "if sha ~= ARGV[i + 1] then return 0 end end "
+            + "for i = 1, #ARGV, 3 do "
+            + "if ARGV[i + 2] == '' then redis.call('HDEL', KEYS[1], ARGV[i]) "
+            + "else redis.call('HSET', KEYS[1], ARGV[i], (string.gsub(ARGV[i + 2], '..', function(c) return string.char(tonumber(c, 16)) end))) end end "
+            + "return 1";
+
+    //写回冲突时的最大重试次数
+    private static final int MAX_RETRIES = 16;
+
+    private final IRedis redis;
+    private final Cache<String, CompressedBitmap> local;
+
+    public CompressedBitmapStore(IRedis redis) {
+        this.redis = redis;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.roaring.local.size"), 1000))
+                .expireAfterWrite(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.roaring.local.expire.millis"), 60000), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 批量添加值，一次读取涉及的容器、一次写回，返回新添加的值的数量
+     */
+    public long add(String key, long... values) {
+        return update(key, values, true);
+    }
+
+    /**
+     * 批量移除值，容器为空时删除对应的field，返回移除的值的数量
+     */
+    public long remove(String key, long... values) {
+        return update(key, values, false);
+    }
+
+    /**
+     * 批量判断值是否存在，返回的结果与values顺序一致
+     * 本地有缓存时使用缓存，否则一次请求读取涉及的容器
+     */
+    public boolean[] contains(String key, long... values) {
+        CompressedBitmap bitmap = local.getIfPresent(key);
+        if (bitmap == null) {
+            bitmap = load(key, containerKeys(values));
+        }
+        boolean[] contains = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            contains[i] = bitmap.contains(values[i]);
+        }
+        return contains;
+    }
+
+    public boolean contains(String key, long value) {
+        return contains(key, new long[]{value})[0];
+    }
+
+    /**
+     * 获取整个Bitmap（优先使用本地缓存），返回的是副本，修改不影响缓存
+     */
+    public CompressedBitmap get(String key) {
+        return local.get(key, this::load).copy();
+    }
+
+    /**
+     * 值的数量
+     */
+    public long cardinality(String key) {
+        return local.get(key, this::load).cardinality();
+    }
+
+    /**
+     * 多个Bitmap的交集，在本进程中计算，不写回Redis
+     */
+    public CompressedBitmap and(String... keys) {
+        CompressedBitmap result = null;
+        for (String key : keys) {
+            CompressedBitmap bitmap = local.get(key, this::load);
+            result = result == null ? bitmap : result.and(bitmap);
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result == null ? new CompressedBitmap() : result.copy();
+    }
+
+    /**
+     * 多个Bitmap的并集，在本进程中计算，不写回Redis
+     */
+    public CompressedBitmap or(String... keys) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (String key : keys) {
+            result = result.or(local.get(key, this::load));
+        }
+        return result;
+    }
+
+    /**
+     * 第一个Bitmap与其余Bitmap的差集（在第一个中但不在其余任何一个中），在本进程中计算，不写回Redis
+     */
+    public CompressedBitmap andNot(String key, String... excludeKeys) {
+        CompressedBitmap result = local.get(key, this::load);
+        for (String excludeKey : excludeKeys) {
+            if (result.isEmpty()) {
+                break;
+            }
+            result = result.andNot(local.get(excludeKey, this::load));
+        }
+        return result.copy();
+    }
+
+    /**
+     * 第一个源Bitmap与其余源Bitmap的差集，在客户端计算后写入destKey（覆盖原值），Jedis的BitOP没有ANDNOT
+     * 源key从Redis重新读取，不使用本地缓存，返回结果的值的数量
+     */
+    public long bitopAndNot(String destKey, String srcKey, String... excludeKeys) {
+        CompressedBitmap result = load(srcKey);
+        for (String excludeKey : excludeKeys) {
+            result = result.andNot(load(excludeKey));
+        }
+        redis.del(destKey);
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        result.serializeContainers().forEach((high, bytes) -> fields.put(String.valueOf(high), bytes));
+        redis.hsetBytes(destKey, fields);
+        local.invalidate(destKey);
+        return result.cardinality();
+    }
+
+    /**
+     * 与Redis BITOP语义一致的位运算，在客户端计算后写入destKey（覆盖原值），不受分片/集群的跨节点限制
+     * NOT只能有一个源key，取反的范围为源Bitmap占用的字节数（与Redis字符串长度一致）
+     * 源key从Redis重新读取，不使用本地缓存，返回结果对应的Redis字符串长度（最长的源Bitmap的字节数）
+     */
+    public long bitop(BitOP op, String destKey, String... srcKeys) {
+        if (srcKeys == null || srcKeys.length == 0) {
+            throw new IllegalArgumentException("bitop requires at least one source key");
+        }
+        if (op == BitOP.NOT && srcKeys.length != 1) {
+            throw new IllegalArgumentException("bitop NOT requires exactly one source key");
+        }
+        long length = 0;
+        CompressedBitmap result = null;
+        for (String srcKey : srcKeys) {
+            CompressedBitmap bitmap = load(srcKey);
+            length = Math.max(length, (bitmap.last() + 8) / 8);
+            if (result == null) {
+                result = bitmap;
+                continue;
+            }
+            switch (op) {
+                case AND:
+                    result = result.and(bitmap);
+                    break;
+                case OR:
+                    result = result.or(bitmap);
+                    break;
+                case XOR:
+                    result = result.xor(bitmap);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported bitop: " + op);
+            }
+        }
+        if (op == BitOP.NOT) {
+            result = result.flip(length * 8);
+        }
+        redis.del(destKey);
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        result.serializeContainers().forEach((high, bytes) -> fields.put(String.valueOf(high), bytes));
+        redis.hsetBytes(destKey, fields);
+        local.invalidate(destKey);
+        return length;
+    }
+
+    /**
+     * 删除Bitmap
+     */
+    public void del(String key) {
+        redis.unlink(key);
+        local.invalidate(key);
+    }
+
+    private long update(String key, long[] values, boolean add) {
+        if (values == null || values.length == 0) {
+            return 0;
+        }
+        Set<Integer> highs = containerKeys(values);
+        for (int retry = 0; retry < MAX_RETRIES; retry++) {
+            Map<Integer, byte[]> containers = loadContainers(key, highs);
+            CompressedBitmap bitmap = CompressedBitmap.deserialize(containers);
+            long changed = 0;
+            for (long value : values) {
+                if (add ? bitmap.add(value) : bitmap.remove(value)) {
+                    changed++;
+                }
+            }
+            if (changed == 0) {
+                return 0;
+            }
+            List<String> args = new ArrayList<>();
+            for (Integer high : highs) {
+                byte[] old = containers.get(high);
+                byte[] bytes = bitmap.serializeContainer(high);
+                if (!Arrays.equals(old, bytes)) {
+                    args.add(String.valueOf(high));
+                    args.add(old == null ? "" : sha1(old));
+                    args.add(bytes == null ? "" : hex(bytes));
+                }
+            }
+            if (Long.valueOf(1).equals(redis.eval(CAS_SCRIPT, Collections.singletonList(key), args))) {
+                local.invalidate(key);
+                return changed;
+            }
+        }
+        throw new RedisCacheException("compressed bitmap update conflict, retries exhausted, key: " + key);
+    }
+
+    private Set<Integer> containerKeys(long[] values) {
+        Set<Integer> highs = new TreeSet<>();
+        for (long value : values) {
+            if (value >= 0 && value <= CompressedBitmap.MAX_VALUE) {
+                highs.add(CompressedBitmap.high(value));
+            }
+        }
+        return highs;
+    }
+
+    /**
+     * 读取整个Bitmap
+     */
+    private CompressedBitmap load(String key) {
+        Map<String, byte[]> fields = redis.hgetAllBytes(key);
+        Map<Integer, byte[]> containers = new HashMap<>();
+        if (fields != null) {
+            fields.forEach((field, bytes) -> containers.put(Integer.parseInt(field), bytes));
+        }
+        return CompressedBitmap.deserialize(containers);
+    }
+
+    /**
+     * 只读取指定的容器
+     */
+    private CompressedBitmap load(String key, Set<Integer> highs) {
+        return CompressedBitmap.deserialize(loadContainers(key, highs));
+    }
+
+    /**
+     * 读取指定容器的序列化结果，不存在的容器为null
+     */
+    private Map<Integer, byte[]> loadContainers(String key, Set<Integer> highs) {
+        if (highs.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<Integer> highList = new ArrayList<>(highs);
+        String[] fields = new String[highList.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = String.valueOf(highList.get(i));
+        }
+        List<byte[]> values = redis.hmgetBytes(key, fields);
+        Map<Integer, byte[]> containers = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            containers.put(highList.get(i), values.get(i));
+        }
+        return containers;
+    }
+
+    private static String sha1(byte[] bytes) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RedisCacheException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+}
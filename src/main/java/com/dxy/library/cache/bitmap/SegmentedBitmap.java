@@ -0,0 +1,264 @@
+package com.dxy.library.cache.bitmap;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.dxy.library.cache.redis.util.ParallelUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+/**
+ * 分段Bitmap，偏移量按固定大小（cache.redis.bitmap.chunk.bits）映射到多个分段key上，只有写入过的分段才会分配内存
+ * 解决大偏移量（如用户ID为30亿）时Redis为单个key分配整个字符串（最大512M）的问题，集群模式下分段分布在不同节点
+ * 写入过的分段记录在索引集合（key:chunks）中，bitcount/bitpos等聚合操作只访问索引中的分段，并按节点并行执行
+ * @author duanxinyuan
+ * 2019/3/20 10:20
+ */
+public class SegmentedBitmap {
+
+    //ARGV[1]为设置的值（0/1），ARGV[2..]为分段内的偏移量，返回各偏移量的原值
+    //设置为0时不创建不存在的分段，否则会分配不在索引中的分段，del和bitcount都访问不到
+    private static final String SETBITS_SCRIPT = "local old = {} "
+            + "if ARGV[1] == '0' and redis.call('EXISTS', KEYS[1]) == 0 then "
+            + "for i = 2, #ARGV do old[i - 1] = 0 end return old end "
+            + "for i = 2, #ARGV do old[i - 1] = redis.call('SETBIT', KEYS[1], ARGV[i], ARGV[1]) end "
+            + "return old";
+
+    //ARGV为分段内的偏移量，返回各偏移量的值
+    private static final String GETBITS_SCRIPT = "local bits = {} "
+            + "for i = 1, #ARGV do bits[i] = redis.call('GETBIT', KEYS[1], ARGV[i]) end "
+            + "return bits";
+
+    //读取索引，脚本总是在主节点执行，删除时不受读从节点（哨兵模式）的复制延迟影响
+    private static final String CHUNKS_SCRIPT = "return redis.call('SMEMBERS', KEYS[1])";
+
+    private final IRedis redis;
+    private final String key;
+    private final String indexKey;
+    private final long chunkBits;
+
+    public SegmentedBitmap(IRedis redis, String key) {
+        this.redis = redis;
+        this.key = key;
+        this.indexKey = key + ":chunks";
+        //分段大小按字节对齐，默认65536位（8K）
+        long bits = NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.bitmap.chunk.bits"), 65536);
+        this.chunkBits = Math.max(bits / 8 * 8, 8);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getChunkBits() {
+        return chunkBits;
+    }
+
+    /**
+     * 设置偏移量的值，返回原值
+     */
+    public boolean setbit(long offset, boolean value) {
+        return setbits(new long[]{offset}, value)[0];
+    }
+
+    /**
+     * 批量设置偏移量的值，按分段分组后并行执行，每个分段一次请求，返回各偏移量的原值
+     */
+    public boolean[] setbits(long[] offsets, boolean value) {
+        Map<Long, List<Integer>> chunkPositions = groupByChunk(offsets);
+        if (value) {
+            index(chunkPositions.keySet());
+        }
+        return execute(chunkPositions, offsets, SETBITS_SCRIPT, value ? "1" : "0");
+    }
+
+    public boolean getbit(long offset) {
+        return getbits(new long[]{offset})[0];
+    }
+
+    /**
+     * 批量获取偏移量的值，按分段分组后并行执行
+     */
+    public boolean[] getbits(long[] offsets) {
+        return execute(groupByChunk(offsets), offsets, GETBITS_SCRIPT, null);
+    }
+
+    /**
+     * 值为1的位的个数，所有分段一次管道请求完成
+     */
+    public long bitcount() {
+        long count = 0;
+        for (Long chunkCount : chunkCounts().values()) {
+            count += chunkCount;
+        }
+        return count;
+    }
+
+    /**
+     * 第一个值为value的位的偏移量，value为true且不存在时返回-1
+     */
+    public long bitpos(boolean value) {
+        TreeMap<Long, Long> counts = chunkCounts();
+        if (value) {
+            for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+                if (entry.getValue() > 0) {
+                    return entry.getKey() * chunkBits + redis.bitpos(chunkKey(entry.getKey()), true);
+                }
+            }
+            return -1;
+        }
+        //第一个未写入或未写满的分段
+        long chunk = 0;
+        for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+            if (entry.getKey() != chunk) {
+                return chunk * chunkBits;
+            }
+            if (entry.getValue() < chunkBits) {
+                return chunk * chunkBits + redis.bitpos(chunkKey(chunk), false);
+            }
+            chunk++;
+        }
+        return chunk * chunkBits;
+    }
+
+    /**
+     * 已分配的分段数量
+     */
+    public int chunkCount() {
+        return chunks().size();
+    }
+
+    /**
+     * 添加值到BloomFilter中，使用与bloomadd相同的Hash，但位数组分散在多个分段上，返回false表示已经存在
+     */
+    public <T> boolean bloomadd(T value) {
+        boolean[] old = setbits(BitHashUtil.getBitOffsets(value), true);
+        for (boolean bit : old) {
+            if (!bit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断值在BloomFilter中是否已经存在
+     */
+    public <T> boolean bloomcons(T value) {
+        for (boolean bit : getbits(BitHashUtil.getBitOffsets(value))) {
+            if (!bit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 删除所有分段和索引
+     */
+    @SuppressWarnings("unchecked")
+    public void del() {
+        List<String> keys = new ArrayList<>();
+        Object members = redis.eval(CHUNKS_SCRIPT, Collections.singletonList(indexKey), Collections.emptyList());
+        for (Long chunk : toChunks(members instanceof List ? (List<String>) members : null)) {
+            keys.add(chunkKey(chunk));
+        }
+        keys.add(indexKey);
+        redis.unlink(keys.toArray(new String[0]));
+    }
+
+    private TreeMap<Long, Long> chunkCounts() {
+        List<Long> chunks = new ArrayList<>(chunks());
+        TreeMap<Long, Long> counts = new TreeMap<>();
+        if (chunks.isEmpty()) {
+            return counts;
+        }
+        String[] keys = new String[chunks.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = chunkKey(chunks.get(i));
+        }
+        List<Long> chunkCounts = redis.bitcount(keys);
+        for (int i = 0; i < keys.length; i++) {
+            Long count = chunkCounts.get(i);
+            counts.put(chunks.get(i), count == null ? 0 : count);
+        }
+        return counts;
+    }
+
+    private Set<Long> chunks() {
+        return toChunks(redis.smembers(indexKey));
+    }
+
+    private static Set<Long> toChunks(Collection<String> members) {
+        Set<Long> chunks = new TreeSet<>();
+        if (members != null) {
+            for (String member : members) {
+                chunks.add(Long.parseLong(member));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * 写入分段前先加入索引，SADD是幂等的，每次都写入，其他进程del之后新写入的分段仍然在索引中
+     */
+    private void index(Set<Long> chunks) {
+        String[] members = new String[chunks.size()];
+        int i = 0;
+        for (Long chunk : chunks) {
+            members[i++] = String.valueOf(chunk);
+        }
+        redis.sadd(indexKey, members);
+    }
+
+    private Map<Long, List<Integer>> groupByChunk(long[] offsets) {
+        Map<Long, List<Integer>> chunkPositions = new TreeMap<>();
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < 0) {
+                throw new IllegalArgumentException("bitmap offset must not be negative, offset: " + offsets[i]);
+            }
+            chunkPositions.computeIfAbsent(offsets[i] / chunkBits, chunk -> new ArrayList<>()).add(i);
+        }
+        return chunkPositions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean[] execute(Map<Long, List<Integer>> chunkPositions, long[] offsets, String script, String value) {
+        List<Long> chunks = new ArrayList<>(chunkPositions.keySet());
+        List<Callable<List<Object>>> tasks = new ArrayList<>(chunks.size());
+        for (Long chunk : chunks) {
+            List<String> args = new ArrayList<>();
+            if (value != null) {
+                args.add(value);
+            }
+            for (Integer position : chunkPositions.get(chunk)) {
+                args.add(String.valueOf(offsets[position] % chunkBits));
+            }
+            tasks.add(() -> (List<Object>) redis.eval(script, Collections.singletonList(chunkKey(chunk)), args));
+        }
+        List<List<Object>> results = ParallelUtil.invokeAll(tasks);
+        boolean[] bits = new boolean[offsets.length];
+        for (int i = 0; i < chunks.size(); i++) {
+            List<Integer> positions = chunkPositions.get(chunks.get(i));
+            List<Object> chunkResult = results.get(i);
+            for (int j = 0; j < positions.size(); j++) {
+                bits[positions.get(j)] = Long.valueOf(1).equals(chunkResult.get(j));
+            }
+        }
+        return bits;
+    }
+
+    private String chunkKey(long chunk) {
+        return key + ":" + chunk;
+    }
+
+}
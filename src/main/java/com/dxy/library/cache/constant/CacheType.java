@@ -13,6 +13,12 @@ public interface CacheType {
         String guava = "guava";
 
         String caffeine = "caffeine";
+
+        //堆外内存
+        String offheap = "offheap";
+
+        //内存映射文件，重启后可用
+        String mapped = "mapped";
     }
 
     /**
@@ -0,0 +1,297 @@
+package com.dxy.library.cache.filter;
+
+import com.dxy.library.cache.exception.RedisCacheException;
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.dxy.library.cache.redis.util.ParallelUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在线重建bloomadd创建的BloomFilter，用于清除已删除的值、降低饱和的BloomFilter的误判率，重建期间不影响读写
+ * 重建过程：
+ * 1. 写入重建状态（{key}:rebuild，带租期）并登记到重建列表（bloom:rebuilding），各进程每cache.redis.bloom.rebuild.check.millis读取一次重建列表，
+ * RedisCache.bloomadd同时写入新旧两个BloomFilter，RedisCache.bloomcons同时检查新旧两个BloomFilter
+ * 2. 后台线程从数据源读取全部的值，按批次（cache.redis.bloom.rebuild.batch.size）并行写入新的BloomFilter（{key}:rebuild:target），
+ * 写入速度不超过cache.redis.bloom.rebuild.rate（每秒的值的数量），避免影响线上请求
+ * 3. 通过Lua脚本原子地将新的BloomFilter RENAME为key并删除重建状态
+ * 新的BloomFilter与重建状态使用相同的租期，重建进程异常退出时随重建状态一起过期
+ * 固定布局的BloomFilter已经是Redis字符串的最大长度（2的32次方位），重建不改变布局；需要扩容时使用ScalableBloomFilter
+ * 所有key使用同一个hash tag，所有脚本以key路由，集群/分片模式下位于同一节点
+ * @author duanxinyuan
+ * 2019/3/27 10:20
+ */
+@Slf4j
+public class BloomFilterRebuild {
+
+    //KEYS[1]为key，KEYS[2]为重建状态，KEYS[3]为新的BloomFilter；ARGV[1]为重建标识，ARGV[2]为租期（毫秒），已经在重建时返回0
+    private static final String START_SCRIPT = "if redis.call('SET', KEYS[2], ARGV[1], 'NX', 'PX', ARGV[2]) then "
+            + "redis.call('DEL', KEYS[3]) return 1 end return 0";
+
+    //ARGV[1]为重建标识，ARGV[2]为租期（毫秒），ARGV[3..]为offset，重建状态已经不属于自己（过期或被取消）时返回-1
+    private static final String FILL_SCRIPT = "if redis.call('GET', KEYS[2]) ~= ARGV[1] then return -1 end "
+            + "redis.call('PEXPIRE', KEYS[2], ARGV[2]) "
+            + "for i = 3, #ARGV do redis.call('SETBIT', KEYS[3], ARGV[i], 1) end "
+            + "redis.call('PEXPIRE', KEYS[3], ARGV[2]) "
+            + "return #ARGV - 2";
+
+    //ARGV[1]为重建标识，新的BloomFilter不存在（数据源为空）时删除key，RENAME会保留过期时间，替换前先去掉租期
+    private static final String SWAP_SCRIPT = "if redis.call('GET', KEYS[2]) ~= ARGV[1] then return 0 end "
+            + "if redis.call('EXISTS', KEYS[3]) == 1 then redis.call('PERSIST', KEYS[3]) redis.call('RENAME', KEYS[3], KEYS[1]) "
+            + "else redis.call('DEL', KEYS[1]) end "
+            + "redis.call('DEL', KEYS[2]) return 1";
+
+    //ARGV[1]为重建标识，取消重建时删除新的BloomFilter
+    private static final String CANCEL_SCRIPT = "if redis.call('GET', KEYS[2]) ~= ARGV[1] then return 0 end "
+            + "redis.call('DEL', KEYS[2], KEYS[3]) return 1";
+
+    //KEYS[1]为重建列表，ARGV[1]为当前时间（毫秒），删除租期已过的key后返回正在重建的key
+    private static final String LIST_SCRIPT = "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[1]) "
+            + "return redis.call('ZRANGE', KEYS[1], 0, -1)";
+
+    //ARGV为offset，写入key，重建期间同时写入新的BloomFilter（过期时间与重建状态一致），返回添加前是否不存在
+    private static final String ADD_SCRIPT = "local added = 0 "
+            + "for i = 1, #ARGV do if redis.call('SETBIT', KEYS[1], ARGV[i], 1) == 0 then added = 1 end end "
+            + "local ttl = redis.call('PTTL', KEYS[2]) "
+            + "if ttl > 0 then for i = 1, #ARGV do redis.call('SETBIT', KEYS[3], ARGV[i], 1) end "
+            + "redis.call('PEXPIRE', KEYS[3], ttl) end "
+            + "return added";
+
+    //ARGV为offset，key中不存在时，重建期间再检查新的BloomFilter
+    private static final String CONS_SCRIPT = "local function all(key) "
+            + "for i = 1, #ARGV do if redis.call('GETBIT', key, ARGV[i]) == 0 then return false end end return true end "
+            + "if all(KEYS[1]) then return 1 end "
+            + "if redis.call('EXISTS', KEYS[2]) == 1 and all(KEYS[3]) then return 1 end "
+            + "return 0";
+
+    private static final long CHECK_MILLIS = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.bloom.rebuild.check.millis"), 1000), 1);
+
+    //重建列表，member为key，score为租期到期时间（毫秒），重建线程每批写入后续期
+    private static final String REGISTRY_KEY = "bloom:rebuilding";
+
+    //本进程已知的正在重建的key，每cache.redis.bloom.rebuild.check.millis从重建列表刷新一次，不论key的数量每次只需一个请求
+    private static volatile Set<String> rebuilding = Collections.emptySet();
+    private static volatile long refreshedAt;
+    private static final AtomicBoolean REFRESHING = new AtomicBoolean();
+
+    private final IRedis redis;
+    private final String key;
+    private final List<String> keys;
+    private final String token = UUID.randomUUID().toString();
+    private final int batchSize;
+    private final int parallelism;
+    private final long leaseMillis;
+    private final RateLimiter rateLimiter;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean cancelled;
+    private volatile boolean succeeded;
+    private volatile Throwable error;
+
+    public BloomFilterRebuild(IRedis redis, String key) {
+        this.redis = redis;
+        this.key = key;
+        this.keys = keys(key);
+        this.batchSize = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.bloom.rebuild.batch.size"), 1000), 1);
+        this.parallelism = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.bloom.rebuild.parallelism"), 4), 1);
+        this.leaseMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.bloom.rebuild.lease.millis"), 60000), CHECK_MILLIS * 3);
+        double rate = NumberUtils.toDouble(ConfigUtils.getConfig("cache.redis.bloom.rebuild.rate"), 100000);
+        this.rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+    }
+
+    /**
+     * 开始后台重建，数据源需要包含所有应该存在的值，只在后台线程中读取
+     * @param source 数据源，如数据库游标、文件、RedisCache.sscan
+     * @throws RedisCacheException 该BloomFilter正在重建
+     */
+    public <T> BloomFilterRebuild start(Iterator<T> source) {
+        Object started = redis.eval(START_SCRIPT, keys, Arrays.asList(token, String.valueOf(leaseMillis)));
+        if (!Long.valueOf(1).equals(started)) {
+            throw new RedisCacheException("bloom filter is rebuilding, key: " + key);
+        }
+        register();
+        markRebuilding(key, true);
+        Thread thread = new Thread(() -> run(source), "cache-bloom-rebuild-" + key);
+        thread.setDaemon(true);
+        thread.start();
+        log.info("bloom filter rebuild started, key: {}", key);
+        return this;
+    }
+
+    /**
+     * 取消重建，保留原BloomFilter
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 等待重建完成，返回是否成功替换
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit) && succeeded;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * 重建失败的原因
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * 已经写入新BloomFilter的值的数量
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    private <T> void run(Iterator<T> source) {
+        try {
+            //等待所有进程感知到重建、开始双写之后再读取数据源，避免期间添加的值丢失
+            Thread.sleep(CHECK_MILLIS * 2);
+            while (!cancelled && source.hasNext()) {
+                List<Callable<Long>> tasks = new ArrayList<>(parallelism);
+                while (tasks.size() < parallelism && source.hasNext()) {
+                    List<String> args = new ArrayList<>();
+                    args.add(token);
+                    args.add(String.valueOf(leaseMillis));
+                    int count = 0;
+                    while (count < batchSize && source.hasNext()) {
+                        for (long offset : BitHashUtil.getBitOffsets(source.next())) {
+                            args.add(String.valueOf(offset));
+                        }
+                        count++;
+                    }
+                    if (rateLimiter != null) {
+                        rateLimiter.acquire(count);
+                    }
+                    int batchCount = count;
+                    tasks.add(() -> {
+                        Object result = redis.eval(FILL_SCRIPT, keys, args);
+                        if (!(result instanceof Long) || (Long) result < 0) {
+                            throw new RedisCacheException("bloom filter rebuild lease lost, key: " + key);
+                        }
+                        return (long) batchCount;
+                    });
+                }
+                for (Long count : ParallelUtil.invokeAll(tasks)) {
+                    processed.addAndGet(count);
+                }
+                register();
+            }
+            if (cancelled) {
+                redis.eval(CANCEL_SCRIPT, keys, Collections.singletonList(token));
+                log.info("bloom filter rebuild cancelled, key: {}, processed: {}", key, processed.get());
+                return;
+            }
+            succeeded = Long.valueOf(1).equals(redis.eval(SWAP_SCRIPT, keys, Collections.singletonList(token)));
+            log.info("bloom filter rebuild finished, key: {}, processed: {}, swapped: {}", key, processed.get(), succeeded);
+        } catch (Throwable e) {
+            error = e;
+            log.error("bloom filter rebuild error, key: {}, processed: {}", key, processed.get(), e);
+            try {
+                redis.eval(CANCEL_SCRIPT, keys, Collections.singletonList(token));
+            } catch (Exception ce) {
+                log.error("bloom filter rebuild cancel error, key: {}", key, ce);
+            }
+        } finally {
+            try {
+                redis.zrem(REGISTRY_KEY, key);
+            } catch (Exception e) {
+                log.error("bloom filter rebuild unregister error, key: {}", key, e);
+            }
+            markRebuilding(key, false);
+            done.countDown();
+        }
+    }
+
+    /**
+     * 登记或续期重建列表中的key
+     */
+    private void register() {
+        redis.zadd(REGISTRY_KEY, System.currentTimeMillis() + leaseMillis, key);
+    }
+
+    private static synchronized void markRebuilding(String key, boolean value) {
+        Set<String> keys = new HashSet<>(rebuilding);
+        if (value ? keys.add(key) : keys.remove(key)) {
+            rebuilding = keys;
+        }
+    }
+
+    /**
+     * 是否正在重建，重建列表在本进程缓存cache.redis.bloom.rebuild.check.millis，过期后由一个线程刷新，其余线程使用旧的结果
+     * 重建列表只用于选择是否走双写/双查的脚本，脚本在服务端检查重建状态，列表短暂过期不影响正确性
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean isRebuilding(IRedis redis, String key) {
+        if (System.currentTimeMillis() - refreshedAt >= CHECK_MILLIS && REFRESHING.compareAndSet(false, true)) {
+            try {
+                Object result = redis.eval(LIST_SCRIPT, Collections.singletonList(REGISTRY_KEY),
+                        Collections.singletonList(String.valueOf(System.currentTimeMillis())));
+                rebuilding = result instanceof List ? new HashSet<>((List<String>) result) : Collections.emptySet();
+            } catch (Exception e) {
+                //读取失败时保留旧的结果，下次调用重试
+                log.error("bloom filter rebuild list refresh error", e);
+            } finally {
+                refreshedAt = System.currentTimeMillis();
+                REFRESHING.set(false);
+            }
+        }
+        return rebuilding.contains(key);
+    }
+
+    /**
+     * 添加值，重建期间同时写入新的BloomFilter，一次请求完成，返回false表示已经存在
+     */
+    public static <T> boolean bloomadd(IRedis redis, String key, T value) {
+        return Long.valueOf(1).equals(redis.eval(ADD_SCRIPT, keys(key), offsets(value)));
+    }
+
+    /**
+     * 判断值是否存在，重建期间同时检查新的BloomFilter，一次请求完成
+     */
+    public static <T> boolean bloomcons(IRedis redis, String key, T value) {
+        return Long.valueOf(1).equals(redis.eval(CONS_SCRIPT, keys(key), offsets(value)));
+    }
+
+    private static List<String> keys(String key) {
+        return Arrays.asList(key, "{" + key + "}:rebuild", "{" + key + "}:rebuild:target");
+    }
+
+    private static <T> List<String> offsets(T value) {
+        long[] offsets = BitHashUtil.getBitOffsets(value);
+        List<String> args = new ArrayList<>(offsets.length);
+        for (long offset : offsets) {
+            args.add(String.valueOf(offset));
+        }
+        return args;
+    }
+
+}
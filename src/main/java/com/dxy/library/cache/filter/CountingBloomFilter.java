@@ -0,0 +1,165 @@
+package com.dxy.library.cache.filter;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 计数BloomFilter，每个位置是一个4位的计数器（BITFIELD u4），支持删除，适用于元素频繁增删的集合（如在线会话）
+ * 计数器达到上限（15）后不再增减，避免删除时出现漏判
+ * 计数器的数量和Hash次数由预期元素数量和误判率计算，计数器存储在一个字符串中，占用空间为普通BloomFilter的4倍
+ * 添加、删除、判断以及批量操作都通过一次Lua脚本完成
+ * @author duanxinyuan
+ * 2019/3/25 10:20
+ */
+public class CountingBloomFilter {
+
+    //ARGV[1]为Hash次数k，之后每k个为一个值的计数器位置，返回每个值是否为新添加（添加前有计数器为0）
+    private static final String ADD_SCRIPT = "local k = tonumber(ARGV[1]) local result = {} "
+            + "for i = 2, #ARGV, k do "
+            + "local args = {'OVERFLOW', 'SAT'} "
+            + "for j = i, i + k - 1 do args[#args + 1] = 'INCRBY' args[#args + 1] = 'u4' args[#args + 1] = '#' .. ARGV[j] args[#args + 1] = 1 end "
+            + "local added = 0 "
+            + "for _, counter in ipairs(redis.call('BITFIELD', KEYS[1], unpack(args))) do if counter == 1 then added = 1 end end "
+            + "result[#result + 1] = added "
+            + "end return result";
+
+    //参数同上，只删除存在的值（所有计数器都大于0），已达到上限的计数器不减少，返回每个值是否删除
+    private static final String REMOVE_SCRIPT = "local k = tonumber(ARGV[1]) local result = {} "
+            + "for i = 2, #ARGV, k do "
+            + "local get = {} "
+            + "for j = i, i + k - 1 do get[#get + 1] = 'GET' get[#get + 1] = 'u4' get[#get + 1] = '#' .. ARGV[j] end "
+            + "local counters = redis.call('BITFIELD', KEYS[1], unpack(get)) "
+            + "local present = 1 "
+            + "for _, counter in ipairs(counters) do if counter == 0 then present = 0 end end "
+            + "if present == 1 then "
+            + "local args = {'OVERFLOW', 'SAT'} "
+            + "for j = i, i + k - 1 do if counters[j - i + 1] < 15 then args[#args + 1] = 'INCRBY' args[#args + 1] = 'u4' args[#args + 1] = '#' .. ARGV[j] args[#args + 1] = -1 end end "
+            + "if #args > 2 then redis.call('BITFIELD', KEYS[1], unpack(args)) end "
+            + "end "
+            + "result[#result + 1] = present "
+            + "end return result";
+
+    //参数同上，返回每个值是否存在
+    private static final String CONTAINS_SCRIPT = "local k = tonumber(ARGV[1]) local result = {} "
+            + "for i = 2, #ARGV, k do "
+            + "local get = {} "
+            + "for j = i, i + k - 1 do get[#get + 1] = 'GET' get[#get + 1] = 'u4' get[#get + 1] = '#' .. ARGV[j] end "
+            + "local present = 1 "
+            + "for _, counter in ipairs(redis.call('BITFIELD', KEYS[1], unpack(get))) do if counter == 0 then present = 0 end end "
+            + "result[#result + 1] = present "
+            + "end return result";
+
+    //Redis字符串最大512M，最多2的30次方个4位计数器
+    private static final long MAX_COUNTERS = 1L << 30;
+
+    //批量操作时单次脚本处理的值的数量，避免一次脚本执行时间过长
+    private static final int BATCH_SIZE = 1000;
+
+    private final IRedis redis;
+    private final String key;
+    private final long counters;
+    private final int hashFunctions;
+
+    /**
+     * @param expectedInsertions 预期元素数量
+     * @param fpp 期望的误判率，如0.001
+     */
+    public CountingBloomFilter(IRedis redis, String key, long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("counting bloom filter expectedInsertions must be positive and fpp must be in (0, 1), key: " + key);
+        }
+        this.redis = redis;
+        this.key = key;
+        long optimal = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.counters = Math.min(Math.max(optimal, 1), MAX_COUNTERS);
+        this.hashFunctions = Math.max((int) Math.round((double) counters / expectedInsertions * Math.log(2)), 1);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCounters() {
+        return counters;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * 添加值，同一个值可以添加多次（需要删除相同次数），返回false表示添加前已经存在（或误判为存在）
+     */
+    public <T> boolean add(T value) {
+        return add(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量添加值，返回的结果与values顺序一致
+     */
+    public <T> boolean[] add(List<T> values) {
+        return execute(ADD_SCRIPT, values);
+    }
+
+    /**
+     * 删除值，只删除存在的值，返回false表示不存在
+     * 只能删除添加过的值，删除误判为存在的值会导致其他值漏判
+     */
+    public <T> boolean remove(T value) {
+        return remove(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量删除值，返回的结果与values顺序一致
+     */
+    public <T> boolean[] remove(List<T> values) {
+        return execute(REMOVE_SCRIPT, values);
+    }
+
+    /**
+     * 判断值是否存在
+     */
+    public <T> boolean contains(T value) {
+        return contains(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量判断值是否存在，返回的结果与values顺序一致
+     */
+    public <T> boolean[] contains(List<T> values) {
+        return execute(CONTAINS_SCRIPT, values);
+    }
+
+    /**
+     * 删除整个过滤器
+     */
+    public void del() {
+        redis.unlink(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> boolean[] execute(String script, List<T> values) {
+        boolean[] result = new boolean[values.size()];
+        int index = 0;
+        for (List<T> batch : Lists.partition(values, BATCH_SIZE)) {
+            List<String> args = new ArrayList<>(batch.size() * hashFunctions + 1);
+            args.add(String.valueOf(hashFunctions));
+            for (T value : batch) {
+                for (long offset : BitHashUtil.murmurHash(value, hashFunctions, counters)) {
+                    args.add(String.valueOf(offset));
+                }
+            }
+            List<Long> batchResult = (List<Long>) redis.eval(script, Collections.singletonList(key), args);
+            for (Long present : batchResult) {
+                result[index++] = Long.valueOf(1).equals(present);
+            }
+        }
+        return result;
+    }
+
+}
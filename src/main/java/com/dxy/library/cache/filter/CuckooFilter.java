@@ -0,0 +1,183 @@
+package com.dxy.library.cache.filter;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 布谷鸟过滤器，存储每个值的16位指纹，支持删除，相同误判率下比计数BloomFilter占用空间更小
+ * 每个值有两个候选桶（每桶4个指纹），第二个桶由第一个桶和指纹计算，两个桶都满时随机踢出已有的指纹到它的另一个桶
+ * 桶存储在一个字符串中（BITFIELD u16），添加、删除、判断以及批量操作都通过一次Lua脚本完成，踢出失败时回滚，不会丢失已有的值
+ * @author duanxinyuan
+ * 2019/3/25 14:30
+ */
+public class CuckooFilter {
+
+    //ARGV[1]为桶数量（2的幂），ARGV[2]为最大踢出次数，之后每两个为一个值的第一个桶和指纹
+    private static final String FUNCTIONS = "local nb = tonumber(ARGV[1]) "
+            + "local function alt(b, fp) return bit.bxor(b, (fp * 1540483477) % nb) end "
+            + "local function slot(b, j) return '#' .. (b * 4 + j) end "
+            + "local function find(b, fp) "
+            + "local slots = redis.call('BITFIELD', KEYS[1], 'GET', 'u16', slot(b, 0), 'GET', 'u16', slot(b, 1), 'GET', 'u16', slot(b, 2), 'GET', 'u16', slot(b, 3)) "
+            + "for j = 1, 4 do if slots[j] == fp then return j - 1 end end return -1 end "
+            + "local function set(b, j, fp) return redis.call('BITFIELD', KEYS[1], 'SET', 'u16', slot(b, j), fp)[1] end ";
+
+    //返回每个值是否添加成功，失败表示过滤器已满
+    private static final String ADD_SCRIPT = FUNCTIONS
+            + "local function insert(b1, fp, kicks) "
+            + "local b2 = alt(b1, fp) "
+            + "local j = find(b1, 0) if j >= 0 then set(b1, j, fp) return 1 end "
+            + "j = find(b2, 0) if j >= 0 then set(b2, j, fp) return 1 end "
+            + "local b = b1 if math.random(2) == 2 then b = b2 end "
+            + "local undo = {} "
+            + "for n = 1, kicks do "
+            + "j = math.random(4) - 1 "
+            + "local old = set(b, j, fp) "
+            + "undo[#undo + 1] = {b, j, old} "
+            + "fp = old b = alt(b, fp) "
+            + "local empty = find(b, 0) if empty >= 0 then set(b, empty, fp) return 1 end "
+            + "end "
+            + "for n = #undo, 1, -1 do set(undo[n][1], undo[n][2], undo[n][3]) end "
+            + "return 0 end "
+            + "local result = {} "
+            + "for i = 3, #ARGV, 2 do result[#result + 1] = insert(tonumber(ARGV[i]), tonumber(ARGV[i + 1]), tonumber(ARGV[2])) end "
+            + "return result";
+
+    //返回每个值是否删除
+    private static final String REMOVE_SCRIPT = FUNCTIONS
+            + "local result = {} "
+            + "for i = 3, #ARGV, 2 do "
+            + "local b1 = tonumber(ARGV[i]) local fp = tonumber(ARGV[i + 1]) local removed = 0 "
+            + "for _, b in ipairs({b1, alt(b1, fp)}) do "
+            + "local j = find(b, fp) if j >= 0 then set(b, j, 0) removed = 1 break end "
+            + "end "
+            + "result[#result + 1] = removed "
+            + "end return result";
+
+    //返回每个值是否存在
+    private static final String CONTAINS_SCRIPT = FUNCTIONS
+            + "local result = {} "
+            + "for i = 3, #ARGV, 2 do "
+            + "local b1 = tonumber(ARGV[i]) local fp = tonumber(ARGV[i + 1]) local present = 0 "
+            + "if find(b1, fp) >= 0 or find(alt(b1, fp), fp) >= 0 then present = 1 end "
+            + "result[#result + 1] = present "
+            + "end return result";
+
+    private static final int BUCKET_SIZE = 4;
+
+    //Redis字符串最大512M，最多2的26次方个桶（每桶4个16位指纹）
+    private static final long MAX_BUCKETS = 1L << 26;
+
+    //桶的平均负载率，超过后添加失败的概率明显上升
+    private static final double LOAD_FACTOR = 0.95;
+
+    //批量操作时单次脚本处理的值的数量，避免一次脚本执行时间过长
+    private static final int BATCH_SIZE = 1000;
+
+    private final IRedis redis;
+    private final String key;
+    private final long buckets;
+    private final int maxKicks;
+
+    /**
+     * @param capacity 预期元素数量
+     */
+    public CuckooFilter(IRedis redis, String key, long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("cuckoo filter capacity must be positive, key: " + key);
+        }
+        this.redis = redis;
+        this.key = key;
+        long required = (long) Math.ceil(capacity / (double) BUCKET_SIZE / LOAD_FACTOR);
+        //桶数量为2的幂，保证两个候选桶可以互相计算
+        this.buckets = Math.min(Long.highestOneBit(Math.max(required - 1, 1)) << 1, MAX_BUCKETS);
+        this.maxKicks = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.cuckoo.max.kicks"), 500), 1);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * 添加值，同一个值添加多次会存储多个指纹（需要删除相同次数），返回false表示过滤器已满、没有添加
+     */
+    public <T> boolean add(T value) {
+        return add(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量添加值，返回的结果与values顺序一致
+     */
+    public <T> boolean[] add(List<T> values) {
+        return execute(ADD_SCRIPT, values);
+    }
+
+    /**
+     * 删除值，返回false表示不存在
+     * 只能删除添加过的值，删除误判为存在的值会导致其他值漏判
+     */
+    public <T> boolean remove(T value) {
+        return remove(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量删除值，返回的结果与values顺序一致
+     */
+    public <T> boolean[] remove(List<T> values) {
+        return execute(REMOVE_SCRIPT, values);
+    }
+
+    /**
+     * 判断值是否存在
+     */
+    public <T> boolean contains(T value) {
+        return contains(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量判断值是否存在，返回的结果与values顺序一致
+     */
+    public <T> boolean[] contains(List<T> values) {
+        return execute(CONTAINS_SCRIPT, values);
+    }
+
+    /**
+     * 删除整个过滤器
+     */
+    public void del() {
+        redis.unlink(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> boolean[] execute(String script, List<T> values) {
+        boolean[] result = new boolean[values.size()];
+        int index = 0;
+        for (List<T> batch : Lists.partition(values, BATCH_SIZE)) {
+            List<String> args = new ArrayList<>(batch.size() * 2 + 2);
+            args.add(String.valueOf(buckets));
+            args.add(String.valueOf(maxKicks));
+            for (T value : batch) {
+                long[] hashes = BitHashUtil.murmurHash(value, 2, 1L << 32);
+                //第一个桶和指纹，指纹为0表示空位，取值范围为[1, 65535]
+                args.add(String.valueOf(hashes[0] & (buckets - 1)));
+                args.add(String.valueOf(hashes[1] % 65535 + 1));
+            }
+            List<Long> batchResult = (List<Long>) redis.eval(script, Collections.singletonList(key), args);
+            for (Long success : batchResult) {
+                result[index++] = Long.valueOf(1).equals(success);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.dxy.library.cache.filter;
+
+import com.dxy.library.cache.bitmap.ChunkedBitcount;
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 可扩容的BloomFilter，由多层BloomFilter组成，当前层的元素数量达到容量后自动添加新的一层
+ * 新一层的容量为上一层的cache.redis.bloom.scalable.growth倍，误判率为上一层的cache.redis.bloom.scalable.tightening倍，
+ * 总误判率不超过创建时指定的误判率，不需要预先估计元素数量
+ * 每层的位数、Hash次数、容量、误判率和元素数量记录在元数据hash（{key}:meta）中，添加和判断都通过一次Lua脚本检查所有层
+ * 所有层的key使用同一个hash tag，集群模式下位于同一slot；脚本以key路由，分片模式下位于同一分片
+ * 已有的固定布局BloomFilter（bloomadd/bloomcons）可以通过migrateLegacy作为第一层接入，不需要重新写入
+ * @author duanxinyuan
+ * 2019/3/26 10:30
+ */
+public class ScalableBloomFilter {
+
+    //KEYS[1]为key（固定布局的BloomFilter），KEYS[2]为元数据，ARGV[1]为层key的前缀，读取所有层并定义offset的计算（与BitHashUtil一致）
+    private static final String LAYERS = "local prefix = ARGV[1] "
+            + "local meta = {} local raw = redis.call('HGETALL', KEYS[2]) "
+            + "for i = 1, #raw, 2 do meta[raw[i]] = raw[i + 1] end "
+            + "local layers = {} "
+            + "for i = 0, tonumber(meta['layers'] or '0') - 1 do "
+            + "local key = prefix .. i if i == 0 and meta['legacy'] == '1' then key = KEYS[1] end "
+            + "layers[i + 1] = {key = key, bits = tonumber(meta['bits:' .. i]), hashes = tonumber(meta['hashes:' .. i]), "
+            + "capacity = tonumber(meta['capacity:' .. i]), fpp = tonumber(meta['error:' .. i])} "
+            + "end "
+            + "local function offset(h1, h2, i, bits) "
+            + "local x = (h1 + i * h2) % 4294967296 if x >= 2147483648 then x = x - 4294967296 end "
+            + "return math.abs(math.fmod(x, bits)) end "
+            + "local function exists(h1, h2) "
+            + "for l = #layers, 1, -1 do "
+            + "local layer = layers[l] local all = true "
+            + "for i = 0, layer.hashes - 1 do if redis.call('GETBIT', layer.key, offset(h1, h2, i, layer.bits)) == 0 then all = false break end end "
+            + "if all then return true end "
+            + "end return false end ";
+
+    //ARGV[2]为第一层的容量，ARGV[3]为第一层的误判率，ARGV[4]为容量增长倍数，ARGV[5]为误判率收紧比例，之后每两个为一个值的基础Hash
+    //返回每个值是否为新添加；offset由int运算得到，不超过2的31次方，每层的位数最多为2的31次方
+    private static final String ADD_SCRIPT = LAYERS
+            + "local function addLayer(capacity, fpp) "
+            + "local i = #layers "
+            + "local bits = math.min(math.ceil(-capacity * math.log(fpp) / (math.log(2) ^ 2)), 2147483648) "
+            + "local hashes = math.max(math.floor(math.log(2) * bits / capacity + 0.5), 1) "
+            + "redis.call('HMSET', KEYS[2], 'layers', i + 1, 'bits:' .. i, bits, 'hashes:' .. i, hashes, "
+            + "'capacity:' .. i, capacity, 'error:' .. i, fpp, 'count:' .. i, 0) "
+            + "layers[i + 1] = {key = prefix .. i, bits = bits, hashes = hashes, capacity = capacity, fpp = fpp} "
+            + "end "
+            + "if #layers == 0 then addLayer(tonumber(ARGV[2]), tonumber(ARGV[3])) end "
+            + "local result = {} "
+            + "for j = 6, #ARGV, 2 do "
+            + "local h1 = tonumber(ARGV[j]) local h2 = tonumber(ARGV[j + 1]) "
+            + "if exists(h1, h2) then result[#result + 1] = 0 else "
+            + "local i = #layers - 1 local layer = layers[#layers] "
+            + "for k = 0, layer.hashes - 1 do redis.call('SETBIT', layer.key, offset(h1, h2, k, layer.bits), 1) end "
+            + "if redis.call('HINCRBY', KEYS[2], 'count:' .. i, 1) >= layer.capacity then "
+            + "addLayer(math.floor(layer.capacity * tonumber(ARGV[4])), layer.fpp * tonumber(ARGV[5])) end "
+            + "result[#result + 1] = 1 "
+            + "end end return result";
+
+    //ARGV[2..]每两个为一个值的基础Hash，返回每个值是否存在
+    private static final String CONTAINS_SCRIPT = LAYERS
+            + "local result = {} "
+            + "for j = 2, #ARGV, 2 do "
+            + "if exists(tonumber(ARGV[j]), tonumber(ARGV[j + 1])) then result[#result + 1] = 1 else result[#result + 1] = 0 end "
+            + "end return result";
+
+    //把固定布局的BloomFilter登记为第一层，已经有层时不处理，ARGV为位数、Hash次数、容量、误判率、估算的元素数量
+    private static final String MIGRATE_SCRIPT = "if redis.call('HEXISTS', KEYS[2], 'layers') == 1 then return 0 end "
+            + "redis.call('HMSET', KEYS[2], 'layers', 1, 'legacy', 1, 'bits:0', ARGV[1], 'hashes:0', ARGV[2], "
+            + "'capacity:0', ARGV[3], 'error:0', ARGV[4], 'count:0', ARGV[5]) "
+            + "return 1";
+
+    private static final String INFO_SCRIPT = "return redis.call('HGETALL', KEYS[2])";
+
+    //ARGV[1]为层key的前缀，删除所有层、元数据和固定布局的BloomFilter，服务端不支持UNLINK时使用DEL
+    private static final String DEL_SCRIPT = "local function remove(key) if not pcall(redis.call, 'UNLINK', key) then redis.call('DEL', key) end end "
+            + "for i = 0, tonumber(redis.call('HGET', KEYS[2], 'layers') or '0') - 1 do remove(ARGV[1] .. i) end "
+            + "remove(KEYS[1]) remove(KEYS[2]) "
+            + "return 1";
+
+    //批量操作时单次脚本处理的值的数量，避免一次脚本执行时间过长
+    private static final int BATCH_SIZE = 1000;
+
+    private final IRedis redis;
+    private final String key;
+    private final String metaKey;
+    private final String layerPrefix;
+    private final long initialCapacity;
+    private final double initialFpp;
+    private final double growth;
+    private final double tightening;
+
+    /**
+     * @param initialCapacity 第一层的容量
+     * @param fpp 总误判率，如0.001
+     */
+    public ScalableBloomFilter(IRedis redis, String key, long initialCapacity, double fpp) {
+        if (initialCapacity <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("scalable bloom filter initialCapacity must be positive and fpp must be in (0, 1), key: " + key);
+        }
+        this.redis = redis;
+        this.key = key;
+        this.metaKey = "{" + key + "}:meta";
+        this.layerPrefix = "{" + key + "}:layer:";
+        this.initialCapacity = initialCapacity;
+        this.growth = Math.max(NumberUtils.toDouble(ConfigUtils.getConfig("cache.redis.bloom.scalable.growth"), 2), 1);
+        double ratio = NumberUtils.toDouble(ConfigUtils.getConfig("cache.redis.bloom.scalable.tightening"), 0.5);
+        this.tightening = ratio > 0 && ratio < 1 ? ratio : 0.5;
+        //各层误判率为等比数列，第一层取fpp * (1 - tightening)时总和不超过fpp
+        this.initialFpp = fpp * (1 - tightening);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 添加值，返回false表示已经存在（或误判为存在）
+     */
+    public <T> boolean add(T value) {
+        return add(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量添加值，返回的结果与values顺序一致
+     */
+    public <T> boolean[] add(List<T> values) {
+        return execute(ADD_SCRIPT, values, Arrays.asList(layerPrefix, String.valueOf(initialCapacity), String.valueOf(initialFpp),
+                String.valueOf(growth), String.valueOf(tightening)));
+    }
+
+    /**
+     * 判断值是否存在
+     */
+    public <T> boolean contains(T value) {
+        return contains(Collections.singletonList(value))[0];
+    }
+
+    /**
+     * 批量判断值是否存在，返回的结果与values顺序一致
+     */
+    public <T> boolean[] contains(List<T> values) {
+        return execute(CONTAINS_SCRIPT, values, Collections.singletonList(layerPrefix));
+    }
+
+    /**
+     * 把同名的固定布局BloomFilter（bloomadd/bloomcons，2的32次方位、8次Hash）登记为第一层，之后的添加写入新的层
+     * 已有元素的数量按值为1的位的数量估算（分段统计，不阻塞Redis），估算值达到容量时下一次添加就会创建新的一层
+     * 迁移之后应该只通过本过滤器添加，继续使用bloomadd写入的值本过滤器仍然可以判断，但不计入容量
+     * @param capacity 固定布局BloomFilter的容量，如4亿
+     * @param fpp 固定布局BloomFilter在该容量下的误判率，如0.0005
+     * @return false表示已经有层，不需要迁移
+     */
+    public boolean migrateLegacy(long capacity, double fpp) {
+        long bits = BitHashUtil.MAX_BIT_COUNT;
+        int hashes = BitHashUtil.HASH_FUNCTION_COUNT;
+        long ones = new ChunkedBitcount(redis).bitcount(key);
+        //offset为abs(int % 2^32)，只会落在前2的31次方位，估算时按实际可用的位数计算，登记的bits仍为2的32次方以保证offset的计算不变
+        long effectiveBits = bits / 2;
+        //已有元素的数量：n = -m / k * ln(1 - X / m)
+        long count = ones >= effectiveBits ? capacity
+                : (long) (-(double) effectiveBits / hashes * Math.log(1 - (double) ones / effectiveBits));
+        Object result = redis.eval(MIGRATE_SCRIPT, Arrays.asList(key, metaKey), Arrays.asList(String.valueOf(bits), String.valueOf(hashes),
+                String.valueOf(capacity), String.valueOf(fpp), String.valueOf(count)));
+        return Long.valueOf(1).equals(result);
+    }
+
+    /**
+     * 元数据：layers为层数，每层的bits、hashes、capacity、error、count以“:层号”为后缀
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> info() {
+        //分片模式下元数据与key位于同一分片，通过以key路由的脚本读取
+        List<String> fields = (List<String>) redis.eval(INFO_SCRIPT, Arrays.asList(key, metaKey), Collections.emptyList());
+        Map<String, String> info = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            info.put(fields.get(i), fields.get(i + 1));
+        }
+        return info;
+    }
+
+    /**
+     * 删除所有层和元数据，迁移过的固定布局BloomFilter也会被删除
+     */
+    public void del() {
+        redis.eval(DEL_SCRIPT, Arrays.asList(key, metaKey), Collections.singletonList(layerPrefix));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> boolean[] execute(String script, List<T> values, List<String> params) {
+        boolean[] result = new boolean[values.size()];
+        int index = 0;
+        for (List<T> batch : Lists.partition(values, BATCH_SIZE)) {
+            List<String> args = new ArrayList<>(params.size() + batch.size() * 2);
+            args.addAll(params);
+            for (T value : batch) {
+                int[] hashes = BitHashUtil.baseHashes(value);
+                args.add(String.valueOf(hashes[0]));
+                args.add(String.valueOf(hashes[1]));
+            }
+            List<Long> batchResult = (List<Long>) redis.eval(script, Arrays.asList(key, metaKey), args);
+            for (Long present : batchResult) {
+                result[index++] = Long.valueOf(1).equals(present);
+            }
+        }
+        return result;
+    }
+
+}
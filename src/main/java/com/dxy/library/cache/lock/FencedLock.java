@@ -0,0 +1,52 @@
+package com.dxy.library.cache.lock;
+
+/**
+ * 多数派锁的持有凭证
+ * fencingToken随每次加锁单调递增，下游写入时携带该值，拒绝小于已见过最大值的写入，即可拒绝已过期的持有者
+ * @author duanxinyuan
+ * 2019/3/13 10:10
+ */
+public class FencedLock {
+
+    private final String name;
+    //持有者标识，释放锁时校验
+    private final String token;
+    private final long fencingToken;
+    //锁的有效截止时间（本地时间，已扣除加锁耗时和时钟漂移）
+    private final long validUntil;
+
+    FencedLock(String name, String token, long fencingToken, long validUntil) {
+        this.name = name;
+        this.token = token;
+        this.fencingToken = fencingToken;
+        this.validUntil = validUntil;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    public long getValidUntil() {
+        return validUntil;
+    }
+
+    /**
+     * 锁是否仍在有效期内，超过有效期后其他客户端可能已获取到锁
+     */
+    public boolean isValid() {
+        return System.currentTimeMillis() < validUntil;
+    }
+
+    @Override
+    public String toString() {
+        return "FencedLock{name='" + name + "', fencingToken=" + fencingToken + ", validUntil=" + validUntil + '}';
+    }
+}
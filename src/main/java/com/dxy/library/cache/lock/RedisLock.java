@@ -0,0 +1,86 @@
+package com.dxy.library.cache.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 可重入的分布式锁，持有期间自动续期，释放时通知等待的线程
+ * 使用方式与ReentrantLock一致：lock.lock(); try { ... } finally { lock.unlock(); }
+ * @author duanxinyuan
+ * 2019/3/12 10:05
+ */
+public class RedisLock implements Lock {
+
+    private final RedisLockManager manager;
+    private final String name;
+
+    RedisLock(RedisLockManager manager, String name) {
+        this.manager = manager;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void lock() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                manager.tryLock(name, -1);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        manager.tryLock(name, -1);
+    }
+
+    @Override
+    public boolean tryLock() {
+        try {
+            return manager.tryLock(name, 0);
+        } catch (InterruptedException e) {
+            //不等待时不会被中断
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return manager.tryLock(name, Math.max(unit.toMillis(time), 0));
+    }
+
+    @Override
+    public void unlock() {
+        manager.unlock(name);
+    }
+
+    /**
+     * 当前线程是否持有该锁
+     */
+    public boolean isHeldByCurrentThread() {
+        return manager.isHeldByCurrentThread(name);
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException("redis lock does not support condition");
+    }
+}
@@ -0,0 +1,242 @@
+package com.dxy.library.cache.lock;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁管理器，同一进程内同名的锁共享持有状态
+ * 持有锁期间由看门狗定期续期，释放锁时发布通知，等待锁的线程收到通知（或锁过期）后才重试，不轮询Redis
+ * @author duanxinyuan
+ * 2019/3/12 10:20
+ */
+@Slf4j
+public class RedisLockManager {
+
+    private static final String KEY_PREFIX = "lock:";
+    private static final String CHANNEL = "redis-cache:lock:unlock";
+
+    //获取锁，成功返回-1，失败返回锁的剩余时间（毫秒）
+    private static final String ACQUIRE_SCRIPT = "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return -1 end "
+            + "return redis.call('pttl', KEYS[1])";
+
+    //续期，只有锁仍被自己持有时才续期
+    private static final String RENEW_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end "
+            + "return 0";
+
+    private final IRedis redis;
+    //进程标识，与线程ID组成锁的持有者标识
+    private final String clientId = UUID.randomUUID().toString();
+    private final long leaseMillis;
+    private final ScheduledExecutorService watchdog;
+
+    //锁名称 -> 本进程内的持有状态
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+    //锁名称 -> 本进程内等待该锁的线程
+    private final Map<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    private final CountDownLatch subscribed = new CountDownLatch(1);
+    private volatile Thread subscriber;
+
+    public RedisLockManager(IRedis redis) {
+        this.redis = redis;
+        this.leaseMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.lock.lease.millis"), 30000), 3);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("cache-lock-watchdog-%d").setDaemon(true).build());
+    }
+
+    public RedisLock getLock(String name) {
+        return new RedisLock(this, name);
+    }
+
+    /**
+     * 获取锁，同一线程可重入
+     * @param waitMillis 最长等待时间，小于0表示一直等待，0表示不等待
+     */
+    boolean tryLock(String name, long waitMillis) throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        Holder holder = holders.get(name);
+        if (holder != null && holder.thread == thread) {
+            holder.count++;
+            return true;
+        }
+        String token = clientId + ":" + thread.getId();
+        long ttl = acquire(name, token);
+        if (ttl < 0 || waitMillis == 0) {
+            return ttl < 0;
+        }
+
+        long deadline = waitMillis > 0 ? System.currentTimeMillis() + waitMillis : Long.MAX_VALUE;
+        subscribe();
+        Waiters lockWaiters = waiters.compute(name, (key, value) -> {
+            Waiters w = value == null ? new Waiters() : value;
+            w.count++;
+            return w;
+        });
+        try {
+            while (true) {
+                long version;
+                synchronized (lockWaiters) {
+                    version = lockWaiters.version;
+                }
+                ttl = acquire(name, token);
+                if (ttl < 0) {
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                synchronized (lockWaiters) {
+                    //获取锁失败之后收到了释放通知，立即重试
+                    if (lockWaiters.version == version) {
+                        //没有过期时间（ttl为-1）的锁只能等待释放通知
+                        lockWaiters.wait(ttl > 0 ? Math.min(ttl, remaining) : Math.min(leaseMillis, remaining));
+                    }
+                }
+            }
+        } finally {
+            waiters.computeIfPresent(name, (key, value) -> --value.count == 0 ? null : value);
+        }
+    }
+
+    /**
+     * 释放锁，重入多次时需要释放相同次数
+     */
+    void unlock(String name) {
+        Holder holder = holders.get(name);
+        if (holder == null || holder.thread != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("lock not held by current thread, name: " + name);
+        }
+        if (--holder.count > 0) {
+            return;
+        }
+        holders.remove(name);
+        holder.renewal.cancel(false);
+        if (redis.releaseDistributedLock(KEY_PREFIX + name, holder.token)) {
+            //先唤醒本进程内的等待线程，再通知其他进程
+            wake(name);
+            redis.publish(CHANNEL, name);
+        } else {
+            log.warn("lock release failed, lock expired or held by others, name: {}", name);
+        }
+    }
+
+    boolean isHeldByCurrentThread(String name) {
+        Holder holder = holders.get(name);
+        return holder != null && holder.thread == Thread.currentThread();
+    }
+
+    private long acquire(String name, String token) {
+        Object result = redis.eval(ACQUIRE_SCRIPT, Collections.singletonList(KEY_PREFIX + name), Arrays.asList(token, String.valueOf(leaseMillis)));
+        long ttl = result instanceof Long ? (Long) result : 0;
+        if (ttl == -1) {
+            Holder holder = new Holder(Thread.currentThread(), token);
+            long period = leaseMillis / 3;
+            holder.renewal = watchdog.scheduleAtFixedRate(() -> renew(name, holder), period, period, TimeUnit.MILLISECONDS);
+            holders.put(name, holder);
+            return -1;
+        }
+        //锁没有设置过期时间时pttl返回-1，与获取成功区分
+        return ttl < 0 ? 0 : ttl;
+    }
+
+    private void renew(String name, Holder holder) {
+        try {
+            Object result = redis.eval(RENEW_SCRIPT, Collections.singletonList(KEY_PREFIX + name), Arrays.asList(holder.token, String.valueOf(leaseMillis)));
+            if (!Long.valueOf(1).equals(result)) {
+                log.warn("lock renew failed, lock expired or held by others, name: {}", name);
+                holder.renewal.cancel(false);
+            }
+        } catch (Exception e) {
+            //续期失败时等待下次续期，续期间隔为租期的1/3，可以容忍一次失败
+            log.error("lock renew error, name: {}", name, e);
+        }
+    }
+
+    private void wake(String name) {
+        Waiters lockWaiters = waiters.get(name);
+        if (lockWaiters != null) {
+            synchronized (lockWaiters) {
+                //每次释放只有一个线程能获取到锁，只唤醒一个等待线程，避免本进程内的所有等待线程同时请求Redis
+                lockWaiters.version++;
+                lockWaiters.notify();
+            }
+        }
+    }
+
+    /**
+     * 启动订阅线程接收锁释放通知，连接断开后自动重新订阅
+     */
+    private void subscribe() throws InterruptedException {
+        if (subscriber == null) {
+            synchronized (this) {
+                if (subscriber == null) {
+                    subscriber = new Thread(() -> {
+                        while (true) {
+                            try {
+                                redis.subscribe(new JedisPubSub() {
+                                    @Override
+                                    public void onMessage(String channel, String message) {
+                                        wake(message);
+                                    }
+
+                                    @Override
+                                    public void onSubscribe(String channel, int subscribedChannels) {
+                                        subscribed.countDown();
+                                    }
+                                }, CHANNEL);
+                            } catch (Exception e) {
+                                log.error("lock channel subscribe error, retry after 1 second", e);
+                            }
+                            try {
+                                Thread.sleep(1000);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    }, "cache-lock-subscriber");
+                    subscriber.setDaemon(true);
+                    subscriber.start();
+                }
+            }
+        }
+        //首次订阅完成前发布的通知会丢失，等待订阅完成，订阅失败时依靠锁过期时间唤醒
+        subscribed.await(1, TimeUnit.SECONDS);
+    }
+
+    private static class Holder {
+        private final Thread thread;
+        private final String token;
+        //重入次数，只由持有锁的线程修改
+        private int count = 1;
+        private volatile ScheduledFuture<?> renewal;
+
+        Holder(Thread thread, String token) {
+            this.thread = thread;
+            this.token = token;
+        }
+    }
+
+    private static class Waiters {
+        //等待的线程数量
+        private int count;
+        //收到的释放通知次数
+        private long version;
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.dxy.library.cache.lock;
+
+import com.dxy.library.cache.constant.CacheType;
+import com.dxy.library.cache.redis.util.ParallelUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * 多数派锁（Redlock），在多个相互独立的Redis主节点上并行加锁，超过半数节点加锁成功且未超过有效期时才算获取成功
+ * 单个节点故障或主从切换不会导致两个客户端同时持有锁，每次加锁返回单调递增的fencing token
+ * 节点取自cache.redis.lock.quorum.nodes，未配置时单机/分片模式使用cache.redis.nodes（哨兵和集群模式的节点不是独立主节点，必须单独配置）
+ * @author duanxinyuan
+ * 2019/3/13 10:30
+ */
+@Slf4j
+public class RedisQuorumLock {
+
+    private static final String KEY_PREFIX = "lock:quorum:";
+    private static final String FENCE_KEY_PREFIX = "lock:quorum:fence:";
+
+    //加锁成功时对fencing计数器自增并返回，失败返回0
+    private static final String ACQUIRE_SCRIPT = "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return redis.call('incr', KEYS[2]) end "
+            + "return 0";
+
+    //仍持有锁时把fencing计数器提升到各节点的最大值，保证之后任意多数派中至少有一个节点的计数器不小于该值
+    private static final String FENCE_SCRIPT = "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end "
+            + "if tonumber(redis.call('get', KEYS[2]) or '0') < tonumber(ARGV[2]) then redis.call('set', KEYS[2], ARGV[2]) end "
+            + "return 1";
+
+    private static final String RELEASE_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+    //时钟漂移系数，有效期需要扣除租期的1%再加2毫秒
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+
+    private final List<String> nodes = new ArrayList<>();
+    private final List<JedisPool> pools = new ArrayList<>();
+    private final int quorum;
+    private final long retryMillis;
+
+    public RedisQuorumLock() {
+        String hostsStr = ConfigUtils.getConfig("cache.redis.lock.quorum.nodes");
+        if (StringUtils.isEmpty(hostsStr)) {
+            String redisType = ConfigUtils.getConfig("cache.redis.type");
+            if (CacheType.Redis.single.equals(redisType) || CacheType.Redis.sharded.equals(redisType)) {
+                hostsStr = ConfigUtils.getConfig("cache.redis.nodes");
+            }
+        }
+        if (StringUtils.isEmpty(hostsStr)) {
+            log.error("redis quorum lock init failed, nodes not configured");
+            this.quorum = 0;
+            this.retryMillis = 0;
+            return;
+        }
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.connection.max.total"), 100));
+        config.setMaxIdle(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.connection.max.idle"), 50));
+        config.setMaxWaitMillis(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.max.wait.millis"), 5000));
+        config.setTestOnBorrow(true);
+        //单个节点的超时时间需要远小于租期，避免在故障节点上耗尽有效期
+        int timeout = NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.lock.quorum.timeout.millis"), 200);
+        String password = ConfigUtils.getConfig("cache.redis.password");
+
+        //同一个节点配置多次不会增加独立性，去重后再计算多数派
+        Set<String> hostPorts = new LinkedHashSet<>();
+        for (String hostPort : hostsStr.split(",")) {
+            hostPorts.add(hostPort.trim());
+        }
+        for (String hostPort : hostPorts) {
+            String[] strings = hostPort.split(":");
+            String host = strings[0];
+            int port = strings.length > 1 ? NumberUtils.toInt(strings[1].trim(), 6379) : 6379;
+            nodes.add(hostPort);
+            pools.add(new JedisPool(config, host, port, timeout, StringUtils.isEmpty(password) ? null : password));
+        }
+        this.quorum = pools.size() / 2 + 1;
+        this.retryMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.lock.quorum.retry.millis"), 200), 1);
+    }
+
+    /**
+     * 获取多数派锁，获取失败返回null
+     * @param leaseMillis 锁的租期，不会自动续期，需要在有效期（FencedLock.getValidUntil）内完成操作
+     * @param waitMillis 最长等待时间，0表示不等待
+     */
+    public FencedLock tryLock(String name, long leaseMillis, long waitMillis) throws InterruptedException {
+        if (StringUtils.isEmpty(name) || leaseMillis <= 0 || pools.isEmpty()) {
+            return null;
+        }
+        String key = KEY_PREFIX + name;
+        String fenceKey = FENCE_KEY_PREFIX + name;
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + Math.max(waitMillis, 0);
+        while (true) {
+            long start = System.currentTimeMillis();
+            List<Long> fences = all(jedis -> (Long) jedis.eval(ACQUIRE_SCRIPT, Arrays.asList(key, fenceKey), Arrays.asList(token, String.valueOf(leaseMillis))));
+            long fencingToken = 0;
+            int acquired = 0;
+            for (Long fence : fences) {
+                if (fence != null && fence > 0) {
+                    acquired++;
+                    fencingToken = Math.max(fencingToken, fence);
+                }
+            }
+            if (acquired >= quorum) {
+                String fence = String.valueOf(fencingToken);
+                List<Long> fenced = all(jedis -> (Long) jedis.eval(FENCE_SCRIPT, Arrays.asList(key, fenceKey), Arrays.asList(token, fence)));
+                long drift = (long) (leaseMillis * CLOCK_DRIFT_FACTOR) + 2;
+                long validity = leaseMillis - (System.currentTimeMillis() - start) - drift;
+                if (count(fenced) >= quorum && validity > 0) {
+                    return new FencedLock(name, token, fencingToken, System.currentTimeMillis() + validity);
+                }
+            }
+            //未达到多数派，释放所有节点（包括响应超时但实际加锁成功的节点）
+            release(key, token);
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            //随机等待，避免多个客户端同时重试再次互相分票
+            Thread.sleep(Math.min(ThreadLocalRandom.current().nextLong(retryMillis / 2, retryMillis + 1), remaining));
+        }
+    }
+
+    /**
+     * 释放多数派锁，返回true表示超过半数节点释放成功
+     */
+    public boolean unlock(FencedLock lock) {
+        if (lock == null) {
+            return false;
+        }
+        return release(KEY_PREFIX + lock.getName(), lock.getToken()) >= quorum;
+    }
+
+    private int release(String key, String token) {
+        return count(all(jedis -> (Long) jedis.eval(RELEASE_SCRIPT, Collections.singletonList(key), Collections.singletonList(token))));
+    }
+
+    /**
+     * 在所有节点上并行执行，单个节点失败视为该节点返回null
+     */
+    private List<Long> all(Function<Jedis, Long> function) {
+        List<Callable<Long>> tasks = new ArrayList<>(pools.size());
+        for (int i = 0; i < pools.size(); i++) {
+            String node = nodes.get(i);
+            JedisPool pool = pools.get(i);
+            tasks.add(() -> {
+                try (Jedis jedis = pool.getResource()) {
+                    return function.apply(jedis);
+                } catch (Exception e) {
+                    log.warn("quorum lock node error, node: {}", node, e);
+                    return null;
+                }
+            });
+        }
+        return ParallelUtil.invokeAll(tasks);
+    }
+
+    private static int count(List<Long> results) {
+        int count = 0;
+        for (Long result : results) {
+            if (result != null && result > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
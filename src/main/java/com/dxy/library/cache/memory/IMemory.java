@@ -15,4 +15,10 @@ public interface IMemory {
     void del(String key);
 
     void del(String... keys);
+
+    /**
+     * 删除匹配的key
+     * @param pattern Redis的glob匹配模式，如user:*
+     */
+    void delByPattern(String pattern);
 }
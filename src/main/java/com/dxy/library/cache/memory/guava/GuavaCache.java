@@ -1,6 +1,7 @@
 package com.dxy.library.cache.memory.guava;
 
 import com.dxy.library.cache.memory.IMemory;
+import com.dxy.library.cache.memory.util.GlobUtil;
 import com.dxy.library.util.common.config.ConfigUtils;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -14,6 +15,7 @@ import org.apache.commons.lang3.math.NumberUtils;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 /**
  * 基于guava的内存缓存器
@@ -85,4 +87,13 @@ public class GuavaCache implements IMemory {
         cache.invalidateAll(Lists.newArrayList(keys));
     }
 
+    @Override
+    public void delByPattern(String pattern) {
+        if (StringUtils.isEmpty(pattern)) {
+            return;
+        }
+        Pattern regex = GlobUtil.compile(pattern);
+        cache.asMap().keySet().removeIf(key -> regex.matcher(key).matches());
+    }
+
 }
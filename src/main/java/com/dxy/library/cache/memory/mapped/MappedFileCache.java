@@ -0,0 +1,333 @@
+package com.dxy.library.cache.memory.mapped;
+
+import com.dxy.library.cache.exception.RedisCacheException;
+import com.dxy.library.cache.memory.IMemory;
+import com.dxy.library.cache.memory.util.GlobUtil;
+import com.dxy.library.cache.memory.util.MemoryValueUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 基于内存映射文件的内存缓存器，进程重启后缓存依然可用，避免发布后本地缓存为空导致Redis压力突增
+ * 文件格式：文件头 + 追加写入的记录日志，启动时顺序扫描日志重建索引，已过期的记录直接跳过
+ * 文件写满时进行压缩，只保留未过期且未被覆盖/删除的记录，压缩后仍超过一半容量时按写入顺序淘汰最早的记录
+ * @author duanxinyuan
+ * 2019/3/5 14:20
+ */
+@Slf4j
+public class MappedFileCache implements IMemory {
+
+    //文件头：magic(4) + version(4) + writePosition(8) + 保留(16)
+    private static final int MAGIC = 0x52434D46;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int OFFSET_WRITE_POSITION = 8;
+
+    //记录头：recordSize(4) + op(1) + type(1) + expireAt(8) + keyLength(4) + valueLength(4)
+    private static final int RECORD_HEADER_SIZE = 22;
+    private static final byte OP_DELETE = 0;
+    private static final byte OP_PUT = 1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final File file;
+    private final int capacity;
+    private final long expireMillis;
+
+    //Key -> 记录在文件中的偏移量
+    private final Map<String, Integer> index = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private int writePosition;
+
+    public MappedFileCache() {
+        String path = ConfigUtils.getConfig("cache.memory.mapped.file");
+        if (StringUtils.isEmpty(path)) {
+            path = System.getProperty("java.io.tmpdir") + File.separator + "redis-cache.mapped";
+        }
+        file = new File(path);
+        capacity = (int) Math.min(NumberUtils.toLong(ConfigUtils.getConfig("cache.memory.mapped.capacity.bytes"), 256L * 1024 * 1024), Integer.MAX_VALUE);
+        int defaultExpireSeconds = NumberUtils.toInt(ConfigUtils.getConfig("cache.memory.expire.seconds.after.write"), 300);
+        expireMillis = TimeUnit.SECONDS.toMillis(NumberUtils.toInt(ConfigUtils.getConfig("cache.memory.mapped.expire.seconds"), defaultExpireSeconds));
+        try {
+            buffer = map(file, capacity);
+            load();
+        } catch (IOException e) {
+            log.error("mapped cache init failed, file: {}", file, e);
+            throw new RedisCacheException(e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+        log.info("mapped cache init success, file: {}, capacity: {}, keys: {}", file, capacity, index.size());
+    }
+
+    @Override
+    public <T> void set(String key, T value) {
+        if (StringUtils.isEmpty(key) || value == null) {
+            return;
+        }
+        long expireAt = expireMillis > 0 ? System.currentTimeMillis() + expireMillis : 0;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = MemoryValueUtil.encode(value);
+        lock.lock();
+        try {
+            int position = append(OP_PUT, MemoryValueUtil.type(value), expireAt, keyBytes, valueBytes);
+            if (position > 0) {
+                index.put(key, position);
+            } else if (index.remove(key) != null) {
+                //新值没有缓存时写入删除记录，避免重启后读到旧值
+                append(OP_DELETE, MemoryValueUtil.TYPE_STRING, 0, keyBytes, new byte[0]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public <T> T get(String key) {
+        if (null == key) {
+            return null;
+        }
+        byte type;
+        byte[] valueBytes;
+        lock.lock();
+        try {
+            Integer position = index.get(key);
+            if (position == null) {
+                return null;
+            }
+            long expireAt = buffer.getLong(position + 6);
+            if (expireAt > 0 && System.currentTimeMillis() >= expireAt) {
+                index.remove(key);
+                return null;
+            }
+            type = buffer.get(position + 5);
+            int keyLength = buffer.getInt(position + 14);
+            valueBytes = new byte[buffer.getInt(position + 18)];
+            buffer.position(position + RECORD_HEADER_SIZE + keyLength);
+            buffer.get(valueBytes);
+        } finally {
+            lock.unlock();
+        }
+        return MemoryValueUtil.decode(type, valueBytes);
+    }
+
+    @Override
+    public void del(String key) {
+        if (key == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            //写入删除记录，保证重启后不会读到已删除的数据
+            if (index.remove(key) != null) {
+                append(OP_DELETE, MemoryValueUtil.TYPE_STRING, 0, key.getBytes(StandardCharsets.UTF_8), new byte[0]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void del(String... keys) {
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            del(key);
+        }
+    }
+
+    @Override
+    public void delByPattern(String pattern) {
+        if (StringUtils.isEmpty(pattern)) {
+            return;
+        }
+        Pattern regex = GlobUtil.compile(pattern);
+        lock.lock();
+        try {
+            for (String key : new ArrayList<>(index.keySet())) {
+                if (regex.matcher(key).matches()) {
+                    del(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将映射内存中的修改刷到磁盘
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            buffer.force();
+        } catch (Exception e) {
+            log.error("mapped cache flush error, file: {}", file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 追加一条记录，返回记录的偏移量，记录超过容量时返回-1
+     */
+    private int append(byte op, byte type, long expireAt, byte[] keyBytes, byte[] valueBytes) {
+        int size = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        //超过容量1/4的值不缓存，避免一次写入触发大量淘汰
+        if (size > (capacity - FILE_HEADER_SIZE) / 4) {
+            return -1;
+        }
+        if (writePosition + size > capacity) {
+            compact();
+        }
+        int position = writePosition;
+        buffer.position(position);
+        buffer.putInt(size)
+                .put(op)
+                .put(type)
+                .putLong(expireAt)
+                .putInt(keyBytes.length)
+                .putInt(valueBytes.length)
+                .put(keyBytes)
+                .put(valueBytes);
+        writePosition += size;
+        buffer.putLong(OFFSET_WRITE_POSITION, writePosition);
+        return position;
+    }
+
+    /**
+     * 顺序扫描日志重建索引，文件头不合法时清空文件
+     */
+    private void load() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            reset();
+            return;
+        }
+        long end = buffer.getLong(OFFSET_WRITE_POSITION);
+        if (end < FILE_HEADER_SIZE || end > capacity) {
+            reset();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int position = FILE_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= end) {
+            int size = buffer.getInt(position);
+            int keyLength = buffer.getInt(position + 14);
+            if (size < RECORD_HEADER_SIZE || position + size > end || keyLength < 0 || keyLength > size - RECORD_HEADER_SIZE) {
+                //记录损坏（如写入过程中进程退出），丢弃之后的数据
+                log.warn("mapped cache record broken, file: {}, position: {}", file, position);
+                break;
+            }
+            String key = readKey(position, keyLength);
+            long expireAt = buffer.getLong(position + 6);
+            if (buffer.get(position + 4) == OP_PUT && (expireAt <= 0 || now < expireAt)) {
+                index.put(key, position);
+            } else {
+                index.remove(key);
+            }
+            position += size;
+        }
+        writePosition = position;
+        buffer.putLong(OFFSET_WRITE_POSITION, writePosition);
+    }
+
+    /**
+     * 压缩日志，将有效记录写入临时文件后替换原文件
+     */
+    private void compact() {
+        long now = System.currentTimeMillis();
+        //按偏移量排序即按写入顺序排序
+        List<Integer> positions = new ArrayList<>();
+        long liveSize = 0;
+        for (Integer position : new ArrayList<>(index.values())) {
+            long expireAt = buffer.getLong(position + 6);
+            if (expireAt <= 0 || now < expireAt) {
+                positions.add(position);
+                liveSize += buffer.getInt(position);
+            }
+        }
+        positions.sort(Integer::compareTo);
+        long limit = (capacity - FILE_HEADER_SIZE) / 2;
+
+        File compactFile = new File(file.getPath() + ".compact");
+        try {
+            MappedByteBuffer target = map(compactFile, capacity);
+            Map<String, Integer> compactIndex = new HashMap<>();
+            int targetPosition = FILE_HEADER_SIZE;
+            for (Integer position : positions) {
+                int size = buffer.getInt(position);
+                if (liveSize > limit) {
+                    //淘汰最早写入的记录
+                    liveSize -= size;
+                    continue;
+                }
+                byte[] record = new byte[size];
+                buffer.position(position);
+                buffer.get(record);
+                target.position(targetPosition);
+                target.put(record);
+                compactIndex.put(readKey(position, buffer.getInt(position + 14)), targetPosition);
+                targetPosition += size;
+            }
+            target.putInt(0, MAGIC);
+            target.putInt(4, VERSION);
+            target.putLong(OFFSET_WRITE_POSITION, targetPosition);
+            target.force();
+            Files.move(compactFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            buffer = target;
+            writePosition = targetPosition;
+            index.clear();
+            index.putAll(compactIndex);
+            log.info("mapped cache compact success, file: {}, keys: {}, size: {}", file, index.size(), writePosition);
+        } catch (IOException e) {
+            log.error("mapped cache compact failed, file: {}", file, e);
+            index.clear();
+            reset();
+        }
+    }
+
+    private void reset() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        writePosition = FILE_HEADER_SIZE;
+        buffer.putLong(OFFSET_WRITE_POSITION, writePosition);
+    }
+
+    private String readKey(int position, int keyLength) {
+        byte[] keyBytes = new byte[keyLength];
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.get(keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("mkdirs failed: " + parent);
+        }
+        //映射完成后即可关闭文件，映射在MappedByteBuffer被回收前一直有效
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+package com.dxy.library.cache.memory.offheap;
+
+import com.dxy.library.cache.memory.IMemory;
+import com.dxy.library.cache.memory.util.GlobUtil;
+import com.dxy.library.cache.memory.util.MemoryValueUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 基于堆外内存的内存缓存器，适用于GB级别的本地缓存，值不占用堆内存，不影响GC
+ * 按Key的Hash分段加锁，每个分段是一块DirectByteBuffer组成的环形缓冲区，写入时追加到尾部，
+ * 空间不足时从头部淘汰（Clock算法，被访问过的条目获得一次重新追加到尾部的机会）
+ * @author duanxinyuan
+ * 2019/3/4 10:30
+ */
+@Slf4j
+public class OffHeapCache implements IMemory {
+
+    //条目头：keyLength(4) + valueLength(4) + type(1) + accessed(1) + expireAt(8) + accessAt(8)
+    private static final int HEADER_SIZE = 26;
+    private static final int OFFSET_TYPE = 8;
+    private static final int OFFSET_ACCESSED = 9;
+    private static final int OFFSET_EXPIRE_AT = 10;
+    private static final int OFFSET_ACCESS_AT = 18;
+
+    //单次写入时最多给予二次机会的条目数，防止所有条目均被访问过时写入耗时过长
+    private static final int MAX_SECOND_CHANCE = 8;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final long expireAfterWriteMillis;
+
+    public OffHeapCache() {
+        long capacity = NumberUtils.toLong(ConfigUtils.getConfig("cache.memory.offheap.capacity.bytes"), 256L * 1024 * 1024);
+        int segmentCount = tableSizeFor(NumberUtils.toInt(ConfigUtils.getConfig("cache.memory.offheap.segments"), 16));
+        int maxKeys = NumberUtils.toInt(ConfigUtils.getConfig("cache.memory.key.capacity.max"), 5_0000);
+        expireAfterWriteMillis = TimeUnit.SECONDS.toMillis(NumberUtils.toInt(ConfigUtils.getConfig("cache.memory.expire.seconds.after.write"), 300));
+        long expireAfterAccessMillis = TimeUnit.SECONDS.toMillis(NumberUtils.toInt(ConfigUtils.getConfig("cache.memory.expire.seconds.after.access"), 300));
+
+        //单个ByteBuffer最大为2G
+        int segmentCapacity = (int) Math.min(capacity / segmentCount, Integer.MAX_VALUE);
+        int segmentMaxKeys = Math.max(maxKeys / segmentCount, 1);
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity, segmentMaxKeys, expireAfterAccessMillis);
+        }
+        segmentMask = segmentCount - 1;
+        log.info("offheap cache init success, capacity: {}, segments: {}", capacity, segmentCount);
+    }
+
+    @Override
+    public <T> void set(String key, T value) {
+        if (StringUtils.isEmpty(key) || value == null) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = MemoryValueUtil.encode(value);
+        long now = System.currentTimeMillis();
+        long expireAt = expireAfterWriteMillis > 0 ? now + expireAfterWriteMillis : 0;
+        segmentFor(key).put(key, MemoryValueUtil.type(value), keyBytes, valueBytes, expireAt, now);
+    }
+
+    @Override
+    public <T> T get(String key) {
+        if (null == key) {
+            return null;
+        }
+        return segmentFor(key).get(key, System.currentTimeMillis());
+    }
+
+    @Override
+    public void del(String key) {
+        if (key == null) {
+            return;
+        }
+        segmentFor(key).remove(key);
+    }
+
+    @Override
+    public void del(String... keys) {
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            del(key);
+        }
+    }
+
+    @Override
+    public void delByPattern(String pattern) {
+        if (StringUtils.isEmpty(pattern)) {
+            return;
+        }
+        Pattern regex = GlobUtil.compile(pattern);
+        for (Segment segment : segments) {
+            segment.removeIf(key -> regex.matcher(key).matches());
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+
+    private static int tableSizeFor(int size) {
+        int n = 1;
+        while (n < size && n < (1 << 16)) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * 缓存分段，索引在堆内（Key -> 条目在环形缓冲区中的位置），条目数据在堆外
+     */
+    private static class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final int maxKeys;
+        private final long expireAfterAccessMillis;
+        private final Map<String, Long> index = new HashMap<>();
+
+        //环形缓冲区的头尾位置，只增不减，对capacity取模后为实际偏移量
+        private long head;
+        private long tail;
+
+        Segment(int capacity, int maxKeys, long expireAfterAccessMillis) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+            this.capacity = capacity;
+            this.maxKeys = maxKeys;
+            this.expireAfterAccessMillis = expireAfterAccessMillis;
+        }
+
+        void put(String key, byte type, byte[] keyBytes, byte[] valueBytes, long expireAt, long now) {
+            int size = HEADER_SIZE + keyBytes.length + valueBytes.length;
+            lock.lock();
+            try {
+                //旧条目不再被索引引用，等待从头部淘汰时回收空间
+                index.remove(key);
+                //超过分段1/4的值不缓存，避免一次写入淘汰掉大量条目
+                if (size > capacity / 4) {
+                    return;
+                }
+                int secondChance = MAX_SECOND_CHANCE;
+                while (tail > head && (capacity - (tail - head) < size || index.size() >= maxKeys)) {
+                    if (evictHead(now, secondChance > 0)) {
+                        secondChance--;
+                    }
+                }
+                ByteBuffer entry = ByteBuffer.allocate(size);
+                entry.putInt(keyBytes.length)
+                        .putInt(valueBytes.length)
+                        .put(type)
+                        .put((byte) 0)
+                        .putLong(expireAt)
+                        .putLong(now)
+                        .put(keyBytes)
+                        .put(valueBytes);
+                write(tail, entry.array(), size);
+                index.put(key, tail);
+                tail += size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        <T> T get(String key, long now) {
+            byte type;
+            byte[] valueBytes;
+            lock.lock();
+            try {
+                Long position = index.get(key);
+                if (position == null) {
+                    return null;
+                }
+                if (isExpired(position, now)) {
+                    index.remove(key);
+                    return null;
+                }
+                buffer.put(offset(position + OFFSET_ACCESSED), (byte) 1);
+                writeLong(position + OFFSET_ACCESS_AT, now);
+                type = buffer.get(offset(position + OFFSET_TYPE));
+                int keyLength = readInt(position);
+                valueBytes = read(position + HEADER_SIZE + keyLength, readInt(position + 4));
+            } finally {
+                lock.unlock();
+            }
+            return MemoryValueUtil.decode(type, valueBytes);
+        }
+
+        void remove(String key) {
+            lock.lock();
+            try {
+                index.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeIf(Predicate<String> predicate) {
+            lock.lock();
+            try {
+                index.keySet().removeIf(predicate);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 淘汰头部条目，返回true表示该条目获得了二次机会（被重新追加到尾部）
+         */
+        private boolean evictHead(long now, boolean allowSecondChance) {
+            int keyLength = readInt(head);
+            int size = HEADER_SIZE + keyLength + readInt(head + 4);
+            String key = new String(read(head + HEADER_SIZE, keyLength), StandardCharsets.UTF_8);
+            Long position = index.get(key);
+            if (position != null && position == head) {
+                if (allowSecondChance && buffer.get(offset(head + OFFSET_ACCESSED)) == 1 && !isExpired(head, now)) {
+                    byte[] entry = read(head, size);
+                    entry[OFFSET_ACCESSED] = 0;
+                    head += size;
+                    write(tail, entry, size);
+                    index.put(key, tail);
+                    tail += size;
+                    return true;
+                }
+                index.remove(key);
+            }
+            head += size;
+            return false;
+        }
+
+        private boolean isExpired(long position, long now) {
+            long expireAt = readLong(position + OFFSET_EXPIRE_AT);
+            if (expireAt > 0 && now >= expireAt) {
+                return true;
+            }
+            return expireAfterAccessMillis > 0 && now - readLong(position + OFFSET_ACCESS_AT) >= expireAfterAccessMillis;
+        }
+
+        private int offset(long position) {
+            return (int) (position % capacity);
+        }
+
+        private void write(long position, byte[] bytes, int length) {
+            int offset = offset(position);
+            int first = Math.min(length, capacity - offset);
+            buffer.position(offset);
+            buffer.put(bytes, 0, first);
+            if (first < length) {
+                buffer.position(0);
+                buffer.put(bytes, first, length - first);
+            }
+        }
+
+        private byte[] read(long position, int length) {
+            byte[] bytes = new byte[length];
+            int offset = offset(position);
+            int first = Math.min(length, capacity - offset);
+            buffer.position(offset);
+            buffer.get(bytes, 0, first);
+            if (first < length) {
+                buffer.position(0);
+                buffer.get(bytes, first, length - first);
+            }
+            return bytes;
+        }
+
+        private int readInt(long position) {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (buffer.get(offset(position + i)) & 0xFF);
+            }
+            return value;
+        }
+
+        private long readLong(long position) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer.get(offset(position + i)) & 0xFF);
+            }
+            return value;
+        }
+
+        private void writeLong(long position, long value) {
+            for (int i = 7; i >= 0; i--) {
+                buffer.put(offset(position + i), (byte) value);
+                value >>>= 8;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.dxy.library.cache.memory.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Redis的glob匹配模式（KEYS/SCAN的MATCH参数）转换工具类
+ * 支持*、?、[abc]、[^a]、[a-z]以及\转义
+ * @author duanxinyuan
+ * 2019/3/9 10:30
+ */
+public class GlobUtil {
+
+    /**
+     * 将glob匹配模式编译为正则表达式
+     */
+    public static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    regex.append(c);
+                } else if (c == '[' || c == '&') {
+                    regex.append('\\').append(c);
+                } else {
+                    regex.append(c);
+                }
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                inClass = true;
+                regex.append(c);
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.dxy.library.cache.memory.util;
+
+import com.dxy.library.json.gson.GsonUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 内存缓存值的编解码工具类，供堆外/文件等需要字节序列化的内存缓存器使用
+ * String按UTF-8存储，Boolean按单字节存储，其它类型序列化为Json字符串存储（读取时返回Json字符串）
+ * @author duanxinyuan
+ * 2019/3/4 10:12
+ */
+public class MemoryValueUtil {
+
+    public static final byte TYPE_STRING = 0;
+
+    public static final byte TYPE_BOOLEAN = 1;
+
+    public static final byte TYPE_JSON = 2;
+
+    /**
+     * 获取值的类型标识
+     */
+    public static <T> byte type(T value) {
+        if (value instanceof String) {
+            return TYPE_STRING;
+        } else if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        } else {
+            return TYPE_JSON;
+        }
+    }
+
+    /**
+     * 将值编码为字节数组
+     */
+    public static <T> byte[] encode(T value) {
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        } else if (value instanceof Boolean) {
+            return new byte[]{(byte) ((Boolean) value ? 1 : 0)};
+        } else {
+            return GsonUtil.to(value).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 按类型标识将字节数组解码为值
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(byte type, byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (type == TYPE_BOOLEAN) {
+            return (T) Boolean.valueOf(bytes.length > 0 && bytes[0] == 1);
+        }
+        return (T) new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.dxy.library.cache.ratelimit;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分布式限流器，每次检查只执行一个Lua脚本，计数和过期时间在脚本中原子设置
+ * 令牌桶：按速率生成令牌，最多积累burst个，允许突发流量
+ * 滑动日志：任意windowMillis时间窗口内最多limit次，没有固定窗口边界处的双倍流量问题
+ * 本地预分配：每个JVM一次从令牌桶中租用一批令牌，大部分检查不需要访问Redis
+ * 脚本使用Redis服务器时间，不受各客户端时钟偏差影响
+ * @author duanxinyuan
+ * 2019/3/14 10:20
+ */
+public class RedisRateLimiter {
+
+    private static final String KEY_PREFIX = "ratelimit:";
+
+    //写操作之前调用TIME需要按命令复制（Redis 3.2+，5.0起为默认行为）
+    private static final String NOW = "if redis.replicate_commands then redis.replicate_commands() end "
+            + "local time = redis.call('TIME') "
+            + "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) ";
+
+    //参数：每秒令牌数、桶容量、请求的令牌数、最少需要的令牌数，返回获取到的令牌数（不足最少数量时不扣减，返回0）
+    private static final String TOKEN_BUCKET_SCRIPT = NOW
+            + "local rate = tonumber(ARGV[1]) local capacity = tonumber(ARGV[2]) "
+            + "local requested = tonumber(ARGV[3]) local min = tonumber(ARGV[4]) "
+            + "local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts') "
+            + "local tokens = tonumber(state[1]) or capacity local ts = tonumber(state[2]) or now "
+            + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000) "
+            + "local granted = math.min(requested, math.floor(tokens)) "
+            + "if granted < min then granted = 0 end "
+            + "redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens - granted), 'ts', now) "
+            //桶填满之后状态与不存在时相同，可以过期
+            + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate) + 1000) "
+            + "return granted";
+
+    //参数：窗口毫秒数、窗口内最大次数、本次次数、请求ID，返回1表示通过
+    private static final String SLIDING_LOG_SCRIPT = NOW
+            + "local window = tonumber(ARGV[1]) local limit = tonumber(ARGV[2]) local permits = tonumber(ARGV[3]) "
+            + "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window) "
+            + "if redis.call('ZCARD', KEYS[1]) + permits > limit then return 0 end "
+            + "for i = 1, permits do redis.call('ZADD', KEYS[1], now, ARGV[4] .. ':' .. i) end "
+            + "redis.call('PEXPIRE', KEYS[1], window) "
+            + "return 1";
+
+    private final IRedis redis;
+    //本地预分配时每次租用的令牌数量，以及租用的令牌在本地的有效时间
+    private final long localBatch;
+    private final long localLeaseMillis;
+    //租用的令牌过期后本地状态没有作用，按最后访问时间淘汰，并限制key的数量
+    private final Cache<String, LocalPermits> locals;
+
+    public RedisRateLimiter(IRedis redis) {
+        this.redis = redis;
+        this.localBatch = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.ratelimit.local.batch"), 100), 1);
+        this.localLeaseMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.ratelimit.local.lease.millis"), 1000), 1);
+        this.locals = Caffeine.newBuilder()
+                .maximumSize(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.ratelimit.local.size"), 10000))
+                .expireAfterAccess(localLeaseMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 令牌桶限流，返回true表示获取到permits个令牌
+     * @param permitsPerSecond 每秒生成的令牌数
+     * @param burst 桶容量，即允许的最大突发数量
+     */
+    public boolean tryAcquire(String key, int permits, double permitsPerSecond, long burst) {
+        if (StringUtils.isEmpty(key) || permits <= 0 || permitsPerSecond <= 0 || burst < permits) {
+            return false;
+        }
+        return acquire(key, permits, permits, permitsPerSecond, burst) > 0;
+    }
+
+    /**
+     * 本地预分配的令牌桶限流，每次从Redis租用一批令牌在本地消费，租用的令牌超过有效时间后作废
+     * 各JVM租用的令牌会暂时闲置，适用于高QPS、可以接受少量误差的场景
+     */
+    public boolean tryAcquireLocal(String key, double permitsPerSecond, long burst) {
+        if (StringUtils.isEmpty(key) || permitsPerSecond <= 0 || burst <= 0) {
+            return false;
+        }
+        LocalPermits local = locals.get(key, k -> new LocalPermits());
+        while (true) {
+            long now = System.currentTimeMillis();
+            long permits = local.permits.get();
+            if (permits > 0 && now < local.expireAt) {
+                if (local.permits.compareAndSet(permits, permits - 1)) {
+                    return true;
+                }
+                continue;
+            }
+            if (now < local.deniedUntil) {
+                return false;
+            }
+            synchronized (local) {
+                //其他线程已经租用到令牌
+                if (local.permits.get() > 0 && System.currentTimeMillis() < local.expireAt) {
+                    continue;
+                }
+                long granted = acquire(key, Math.min(localBatch, burst), 1, permitsPerSecond, burst);
+                now = System.currentTimeMillis();
+                if (granted <= 0) {
+                    //令牌耗尽时，生成下一个令牌之前不再访问Redis
+                    local.deniedUntil = now + Math.max((long) Math.ceil(1000 / permitsPerSecond), 1);
+                    return false;
+                }
+                local.expireAt = now + localLeaseMillis;
+                local.permits.set(granted - 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 滑动日志限流，返回true表示任意windowMillis时间窗口内的次数（包含本次）不超过limit
+     * 每次请求在zset中记录一个元素，适用于limit不大的场景
+     */
+    public boolean tryAcquireSliding(String key, int permits, long limit, long windowMillis) {
+        if (StringUtils.isEmpty(key) || permits <= 0 || limit < permits || windowMillis <= 0) {
+            return false;
+        }
+        Object result = redis.eval(SLIDING_LOG_SCRIPT, Collections.singletonList(KEY_PREFIX + key),
+                Arrays.asList(String.valueOf(windowMillis), String.valueOf(limit), String.valueOf(permits), UUID.randomUUID().toString()));
+        return Long.valueOf(1).equals(result);
+    }
+
+    private long acquire(String key, long requested, long min, double permitsPerSecond, long burst) {
+        Object result = redis.eval(TOKEN_BUCKET_SCRIPT, Collections.singletonList(KEY_PREFIX + key),
+                Arrays.asList(String.valueOf(permitsPerSecond), String.valueOf(burst), String.valueOf(requested), String.valueOf(min)));
+        return result instanceof Long ? (Long) result : 0;
+    }
+
+    private static class LocalPermits {
+        private final AtomicLong permits = new AtomicLong();
+        private volatile long expireAt;
+        private volatile long deniedUntil;
+    }
+
+}
@@ -2,10 +2,14 @@ package com.dxy.library.cache.redis;
 
 import com.google.gson.reflect.TypeToken;
 import redis.clients.jedis.BitOP;
+import redis.clients.jedis.JedisPubSub;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.LongConsumer;
 
 /**
  * Redis缓存器
@@ -24,6 +28,13 @@ public interface IRedis {
      */
     <T> String set(String key, T value, int seconds);
 
+    /**
+     * 批量设置键值对和过期时间，一次管道请求完成
+     * @param values key -> 值
+     * @param seconds 过期时间（秒），0表示不过期
+     */
+    void mset(Map<String, String> values, int seconds);
+
     /**
      * 设置键值对（不存在才设置，原子方法），返回1表示成功
      */
@@ -49,6 +60,11 @@ public interface IRedis {
      */
     <T> T get(String key, TypeToken<T> typeToken);
 
+    /**
+     * 批量获取值，返回的列表与keys顺序一致，不存在的key对应null
+     */
+    List<String> mget(String... keys);
+
     /**
      * 对数值增加指定值，返回修改后的数值
      */
@@ -69,11 +85,23 @@ public interface IRedis {
      */
     Long decr(String key, Integer value, int seconds);
 
+    /**
+     * 批量对数值增加指定值，一次管道请求完成，不返回修改后的数值
+     * 返回每个key的执行结果，只有{@link WriteResult#NOT_SENT}的key可以安全重试
+     * @param deltas key -> 增加的值
+     */
+    Map<String, WriteResult> incr(Map<String, Long> deltas);
+
     /**
      * 设置键过期时间，返回1表示设置成功
      */
     Long expire(String key, int seconds);
 
+    /**
+     * 批量设置键过期时间
+     */
+    void expire(int seconds, String... keys);
+
     /**
      * 清除设置的过期时间，将Key设置为永久有效，返回1表示设置成功
      */
@@ -84,6 +112,11 @@ public interface IRedis {
      */
     boolean exist(String key);
 
+    /**
+     * 批量判断key是否存在，返回的列表与keys顺序一致
+     */
+    List<Boolean> exist(String... keys);
+
     /**
      * 删除key，返回1表示设置成功
      */
@@ -94,6 +127,30 @@ public interface IRedis {
      */
     void del(String... keys);
 
+    /**
+     * 非阻塞删除key，返回删除的key数量
+     * 服务端支持UNLINK时由Redis在后台释放内存，不支持时大Key分段删除
+     */
+    Long unlink(String key);
+
+    /**
+     * 批量非阻塞删除key，返回删除的key数量
+     */
+    Long unlink(String... keys);
+
+    /**
+     * 遍历匹配的key（SCAN），按页获取，不会阻塞Redis，集群/分片模式下并行遍历所有节点
+     * @param pattern 匹配模式，如user:*
+     */
+    Iterator<String> scanKeys(String pattern);
+
+    /**
+     * 删除匹配的key，在所有节点上并行SCAN后批量UNLINK，按节点限速，返回删除的key数量
+     * @param pattern 匹配模式，如user:*
+     * @param progress 每删除一批key后回调已删除的总数，可以为null
+     */
+    Long delByPattern(String pattern, LongConsumer progress);
+
     /********** 一下为list相关操作 ************/
 
     /**
@@ -176,6 +233,11 @@ public interface IRedis {
      */
     <T> List<T> lrangePage(String key, int pageNo, int pageSize, Class<T> c);
 
+    /**
+     * 按页遍历整个List，避免一次获取大List
+     */
+    Iterator<String> lrangeStream(String key);
+
     /**
      * 获取list中第index个元素
      */
@@ -270,6 +332,85 @@ public interface IRedis {
      */
     Set<String> smembers(String key);
 
+    /**
+     * 遍历整个set（SSCAN），按页获取，不会阻塞Redis
+     */
+    Iterator<String> sscan(String key);
+
+    /********** 一下为zset相关操作 ************/
+
+    /**
+     * 添加元素到zset，元素已存在时更新分数，返回新添加的元素数量
+     */
+    Long zadd(String key, double score, String member);
+
+    /**
+     * 批量添加元素到zset，返回新添加的元素数量
+     * @param scoreMembers 元素 -> 分数
+     */
+    Long zadd(String key, Map<String, Double> scoreMembers);
+
+    /**
+     * 增加元素的分数，元素不存在时添加，返回增加后的分数
+     */
+    Double zincrby(String key, double increment, String member);
+
+    /**
+     * 批量增加元素的分数，一次请求完成，返回元素 -> 增加后的分数
+     * @param increments 元素 -> 增加的分数
+     */
+    Map<String, Double> zincrby(String key, Map<String, Double> increments);
+
+    /**
+     * 获取元素的分数，元素不存在时返回null
+     */
+    Double zscore(String key, String member);
+
+    /**
+     * 批量获取元素的分数，一次请求完成，返回的列表与members顺序一致，不存在的元素对应null
+     */
+    List<Double> zscore(String key, String... members);
+
+    /**
+     * 获取元素按分数从小到大的排名（从0开始），元素不存在时返回null
+     */
+    Long zrank(String key, String member);
+
+    /**
+     * 获取元素按分数从大到小的排名（从0开始），元素不存在时返回null
+     */
+    Long zrevrank(String key, String member);
+
+    /**
+     * 按分数从小到大获取排名在start到end之间的元素
+     */
+    Set<String> zrange(String key, long start, long end);
+
+    /**
+     * 按分数从大到小获取排名在start到end之间的元素
+     */
+    Set<String> zrevrange(String key, long start, long end);
+
+    /**
+     * 按分数从小到大获取排名在start到end之间的元素及分数，返回的Map按排名有序
+     */
+    Map<String, Double> zrangeWithScores(String key, long start, long end);
+
+    /**
+     * 按分数从大到小获取排名在start到end之间的元素及分数，返回的Map按排名有序
+     */
+    Map<String, Double> zrevrangeWithScores(String key, long start, long end);
+
+    /**
+     * 删除元素，返回删除的元素数量
+     */
+    Long zrem(String key, String... members);
+
+    /**
+     * 获取zset的元素数量
+     */
+    Long zcard(String key);
+
 
     /********** 一下为map相关操作 ************/
 
@@ -293,6 +434,13 @@ public interface IRedis {
      */
     String hmset(String key, int seconds, String... values);
 
+    /**
+     * 批量设置多个map的字段和过期时间，一次管道请求完成
+     * @param values key -> (field -> 值)
+     * @param seconds 过期时间（秒），0表示不过期
+     */
+    void hmset(Map<String, Map<String, String>> values, int seconds);
+
     /**
      * 获取map中的某个键
      */
@@ -318,11 +466,39 @@ public interface IRedis {
      */
     Long hdecr(String key, String field, Integer value);
 
+    /**
+     * 批量增加map的数值，一次管道请求完成
+     * 返回每个field的执行结果，只有{@link WriteResult#NOT_SENT}的field可以安全重试
+     * @param deltas key -> (field -> 增加的值)
+     */
+    Map<String, Map<String, WriteResult>> hincr(Map<String, Map<String, Long>> deltas);
+
     /**
      * 获取整个map
      */
     Map<String, String> hgetAll(String key);
 
+    /**
+     * 批量获取map中的二进制值，返回的列表与fields顺序一致，不存在的field对应null
+     */
+    List<byte[]> hmgetBytes(String key, String... fields);
+
+    /**
+     * 获取整个map，值为二进制
+     */
+    Map<String, byte[]> hgetAllBytes(String key);
+
+    /**
+     * 批量设置map中的二进制值，一次请求完成
+     * @param values field -> 值，值为null表示删除该field
+     */
+    void hsetBytes(String key, Map<String, byte[]> values);
+
+    /**
+     * 遍历整个map（HSCAN），按页获取，不会阻塞Redis
+     */
+    Iterator<Map.Entry<String, String>> hscan(String key);
+
     /********** 一下为hyperloglog相关操作 ************/
 
     /**
@@ -340,6 +516,19 @@ public interface IRedis {
      */
     Long pfcount(String key);
 
+    /**
+     * 获取多个hyperloglog合并之后的元素数量（如多个时间窗口的UV），不修改原有的key
+     * 分片/集群模式下key不在同一节点时，读取各节点的hyperloglog后在一个节点上计算
+     */
+    Long pfcount(String... keys);
+
+    /**
+     * 批量添加值，每个key的值通过一个（超过1000个时拆分为多个）PFADD命令添加，一次管道请求完成
+     * @param values key -> 值
+     * @param seconds 过期时间（秒），0表示不过期
+     */
+    void pfadd(Map<String, Collection<String>> values, int seconds);
+
     /********** 一下为Bitmap相关操作 ************/
     /**
      * 使用Bitmap算法设置值，返回修改之前该偏移量所在位置的值
@@ -373,6 +562,25 @@ public interface IRedis {
      */
     Long bitcount(String key, long start, long end);
 
+    /**
+     * 批量获取多个Bitmap中值为 1 的位的个数，返回的列表与keys顺序一致，一次管道请求完成
+     */
+    List<Long> bitcount(String... keys);
+
+    /**
+     * 按固定大小分段获取Bitmap中值为 1 的位的个数，每段一个BITCOUNT start end命令，在一个管道中执行
+     * 返回的列表与分段顺序一致
+     * @param chunkBytes 每段的字节数
+     * @param fromChunk 起始分段序号
+     * @param chunks 分段数量
+     */
+    List<Long> bitcountChunks(String key, long chunkBytes, long fromChunk, int chunks);
+
+    /**
+     * 获取字符串值的长度（字节数），key不存在时返回0
+     */
+    Long strlen(String key);
+
     /**
      * 对一个或多个保存二进制位的字符串 key 进行位元操作，并将结果保存到 destkey 上
      * 返回保存到 destkey 的字符串的长度（和输入 key 中最长的字符串长度相等）
@@ -386,6 +594,12 @@ public interface IRedis {
      */
     Long bitop(BitOP op, String destKey, String... srcKeys);
 
+    /**
+     * 执行位运算并保存到destKey，返回结果中值为1的位的个数
+     * 分片/集群模式下源key不在同一个分片/slot上时，在客户端分段计算（见BitOpUtil）
+     */
+    Long bitopcount(BitOP op, String destKey, String... srcKeys);
+
     /**
      * 对多个位范围进行子操作，返回子操作集合的结果列表
      * @param arguments 子操作集合，支持的子命令如下：
@@ -442,4 +656,25 @@ public interface IRedis {
      * @param requestId requestId
      */
     boolean releaseDistributedLock(String lockKey, String requestId);
+
+    /********** 一下为发布订阅相关操作 ************/
+
+    /**
+     * 发布消息，返回收到消息的订阅者数量
+     */
+    Long publish(String channel, String message);
+
+    /**
+     * 订阅频道，会阻塞当前线程，直到调用listener.unsubscribe()取消订阅，分片模式下按第一个频道路由
+     */
+    void subscribe(JedisPubSub listener, String... channels);
+
+    /********** 一下为脚本相关操作 ************/
+
+    /**
+     * 执行Lua脚本，优先使用EVALSHA，分片/集群模式下所有key必须在同一个分片/slot上
+     * @param keys 脚本中的KEYS，至少包含一个key，分片/集群模式下按第一个key路由
+     * @param args 脚本中的ARGV
+     */
+    Object eval(String script, List<String> keys, List<String> args);
 }
@@ -0,0 +1,45 @@
+package com.dxy.library.cache.redis;
+
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * 批量写入（如incr/hincr）中单个命令的执行结果，用于非幂等的命令决定是否可以重试
+ * @author duanxinyuan
+ * 2019/3/15 11:20
+ */
+public enum WriteResult {
+
+    /**
+     * 已执行
+     */
+    APPLIED,
+
+    /**
+     * 命令没有发送（如获取连接失败），可以重试
+     */
+    NOT_SENT,
+
+    /**
+     * 服务端返回错误（如WRONGTYPE），命令没有执行，重试也会失败
+     */
+    REJECTED,
+
+    /**
+     * 命令已发送但没有收到结果（如连接断开），可能已执行也可能没有执行，重试可能重复执行
+     */
+    UNKNOWN;
+
+    /**
+     * 管道同步成功后获取单个命令的结果
+     */
+    public static WriteResult of(Response<?> response) {
+        try {
+            response.get();
+            return APPLIED;
+        } catch (JedisDataException e) {
+            return REJECTED;
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.dxy.library.cache.redis.cluster;
+
+import com.dxy.library.cache.exception.RedisCacheException;
+import com.dxy.library.cache.redis.util.ParallelUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 集群节点路由，维护slot到主节点的映射，将多Key操作按slot拆分后，按节点用管道并行执行
+ * 管道执行失败（如slot迁移、节点下线）时刷新映射，失败的slot改由JedisCluster逐个执行（自动处理重定向）
+ * @author duanxinyuan
+ * 2019/3/7 15:40
+ */
+@Slf4j
+class ClusterNodeRouter {
+
+    private static final int SLOT_COUNT = 16384;
+
+    private final JedisCluster jedisCluster;
+    private final GenericObjectPoolConfig config;
+    private final String password;
+
+    //节点（host:port） -> 连接池
+    private final Map<String, JedisPool> pools = new ConcurrentHashMap<>();
+    //slot -> 主节点（host:port）
+    private volatile String[] slotNodes;
+
+    ClusterNodeRouter(JedisCluster jedisCluster, GenericObjectPoolConfig config, String password) {
+        this.jedisCluster = jedisCluster;
+        this.config = config;
+        this.password = StringUtils.isEmpty(password) ? null : password;
+    }
+
+    /**
+     * 按slot分组，同一slot内保持key的原有顺序
+     */
+    static Map<Integer, List<String>> groupBySlot(String... keys) {
+        Map<Integer, List<String>> slotKeys = new LinkedHashMap<>();
+        for (String key : keys) {
+            slotKeys.computeIfAbsent(JedisClusterCRC16.getSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        return slotKeys;
+    }
+
+    /**
+     * 按slot执行多Key命令，同一节点上的slot使用一个管道，不同节点并行执行，返回slot -> 结果
+     * @param slotKeys slot -> 该slot上的key
+     * @param pipelined 在管道中执行命令，返回管道同步后获取结果的方法
+     * @param fallback 管道执行失败时，使用JedisCluster执行命令
+     */
+    <R> Map<Integer, R> execute(Map<Integer, List<String>> slotKeys,
+                                BiFunction<Pipeline, String[], Supplier<R>> pipelined,
+                                Function<String[], R> fallback) {
+        String[] nodes = slotNodes();
+        Map<String, List<Integer>> nodeSlots = new HashMap<>();
+        List<Integer> failedSlots = new ArrayList<>();
+        for (Integer slot : slotKeys.keySet()) {
+            if (nodes[slot] == null) {
+                failedSlots.add(slot);
+            } else {
+                nodeSlots.computeIfAbsent(nodes[slot], node -> new ArrayList<>()).add(slot);
+            }
+        }
+
+        List<Callable<Map<Integer, R>>> tasks = new ArrayList<>(nodeSlots.size());
+        nodeSlots.forEach((node, slots) -> tasks.add(() -> pipeline(node, slots, slotKeys, pipelined)));
+        Map<Integer, R> results = new HashMap<>(slotKeys.size());
+        for (Map<Integer, R> nodeResults : ParallelUtil.invokeAll(tasks)) {
+            results.putAll(nodeResults);
+        }
+        for (Integer slot : slotKeys.keySet()) {
+            if (!results.containsKey(slot) && !failedSlots.contains(slot)) {
+                failedSlots.add(slot);
+            }
+        }
+
+        if (!failedSlots.isEmpty()) {
+            refresh();
+            for (Integer slot : failedSlots) {
+                List<String> keys = slotKeys.get(slot);
+                results.put(slot, fallback.apply(keys.toArray(new String[0])));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 管道同步后逐个获取结果，管道同步不会因为命令返回错误而抛出异常，不获取结果时MOVED/ASK等错误会被忽略
+     * 任一命令返回错误时抛出异常，该slot交由fallback重新执行，只适用于幂等的命令
+     */
+    static Supplier<Void> await(List<Response<?>> responses) {
+        return () -> {
+            for (Response<?> response : responses) {
+                response.get();
+            }
+            return null;
+        };
+    }
+
+    /**
+     * 所有主节点（host:port）
+     */
+    Set<String> masters() {
+        Set<String> masters = new LinkedHashSet<>();
+        for (String node : slotNodes()) {
+            if (node != null) {
+                masters.add(node);
+            }
+        }
+        return masters;
+    }
+
+    /**
+     * 获取节点的连接池
+     */
+    JedisPool getPool(String node) {
+        return pools.computeIfAbsent(node, n -> {
+            JedisPool pool = jedisCluster.getClusterNodes().get(n);
+            if (pool != null) {
+                return pool;
+            }
+            int index = n.lastIndexOf(':');
+            return new JedisPool(config, n.substring(0, index), Integer.parseInt(n.substring(index + 1)), 2000, password);
+        });
+    }
+
+    /**
+     * 从任一可用节点重新获取slot分布
+     */
+    @SuppressWarnings("unchecked")
+    synchronized void refresh() {
+        for (JedisPool pool : jedisCluster.getClusterNodes().values()) {
+            try (Jedis jedis = pool.getResource()) {
+                String[] nodes = new String[SLOT_COUNT];
+                for (Object slotInfo : jedis.clusterSlots()) {
+                    List<Object> info = (List<Object>) slotInfo;
+                    if (info.size() <= 2) {
+                        continue;
+                    }
+                    List<Object> master = (List<Object>) info.get(2);
+                    String host = SafeEncoder.encode((byte[]) master.get(0));
+                    if (StringUtils.isEmpty(host)) {
+                        host = jedis.getClient().getHost();
+                    }
+                    String node = host + ":" + ((Long) master.get(1)).intValue();
+                    int end = ((Long) info.get(1)).intValue();
+                    for (int slot = ((Long) info.get(0)).intValue(); slot <= end; slot++) {
+                        nodes[slot] = node;
+                    }
+                }
+                slotNodes = nodes;
+                return;
+            } catch (Exception e) {
+                log.warn("cluster slots refresh failed, try next node", e);
+            }
+        }
+        throw new RedisCacheException("cluster slots refresh failed, no node available");
+    }
+
+    private String[] slotNodes() {
+        if (slotNodes == null) {
+            refresh();
+        }
+        return slotNodes;
+    }
+
+    /**
+     * 在一个节点上用管道执行多个slot的命令，执行失败的slot不放入结果
+     */
+    private <R> Map<Integer, R> pipeline(String node, List<Integer> slots, Map<Integer, List<String>> slotKeys,
+                                         BiFunction<Pipeline, String[], Supplier<R>> pipelined) {
+        Map<Integer, Supplier<R>> responses = new HashMap<>(slots.size());
+        try (Jedis jedis = getPool(node).getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (Integer slot : slots) {
+                responses.put(slot, pipelined.apply(pipeline, slotKeys.get(slot).toArray(new String[0])));
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            log.warn("cluster pipeline failed, node: {}", node, e);
+            return Collections.emptyMap();
+        }
+        Map<Integer, R> results = new HashMap<>(slots.size());
+        responses.forEach((slot, response) -> {
+            try {
+                results.put(slot, response.get());
+            } catch (Exception e) {
+                //slot迁移时返回MOVED/ASK，交由JedisCluster重试
+                log.warn("cluster pipeline response failed, node: {}, slot: {}", node, slot, e);
+            }
+        });
+        return results;
+    }
+
+}
@@ -2,8 +2,17 @@ package com.dxy.library.cache.redis.cluster;
 
 import com.google.common.collect.Lists;
 import com.google.gson.reflect.TypeToken;
+import com.dxy.library.cache.exception.RedisCacheException;
 import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.WriteResult;
 import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.dxy.library.cache.redis.util.BitOpUtil;
+import com.dxy.library.cache.redis.util.HllUtil;
+import com.dxy.library.cache.redis.util.ParallelUtil;
+import com.dxy.library.cache.redis.util.PatternDeleteUtil;
+import com.dxy.library.cache.redis.util.ScanIterator;
+import com.dxy.library.cache.redis.util.ScriptUtil;
+import com.dxy.library.cache.redis.util.UnlinkUtil;
 import com.dxy.library.json.gson.GsonUtil;
 import com.dxy.library.util.common.ListUtils;
 import com.dxy.library.util.common.config.ConfigUtils;
@@ -12,8 +21,17 @@ import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * Redis集群模式缓存器
@@ -29,6 +47,7 @@ public class RedisClusterCache implements IRedis {
     private static final Long RELEASE_SUCCESS = 1L;
 
     private JedisCluster jedisCluster;
+    private ClusterNodeRouter router;
 
     public RedisClusterCache() {
         JedisPoolConfig config = new JedisPoolConfig();
@@ -55,6 +74,7 @@ public class RedisClusterCache implements IRedis {
         } else {
             jedisCluster = new JedisCluster(hostSet, 2000, 2000, 5, password, config);
         }
+        router = new ClusterNodeRouter(jedisCluster, config, password);
     }
 
     @Override
@@ -79,6 +99,33 @@ public class RedisClusterCache implements IRedis {
         return result;
     }
 
+    @Override
+    public void mset(Map<String, String> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        router.execute(ClusterNodeRouter.groupBySlot(values.keySet().toArray(new String[0])), (pipeline, slotKeys) -> {
+            List<Response<?>> responses = new ArrayList<>(slotKeys.length);
+            for (String key : slotKeys) {
+                if (seconds > 0) {
+                    responses.add(pipeline.setex(key, seconds, values.get(key)));
+                } else {
+                    responses.add(pipeline.set(key, values.get(key)));
+                }
+            }
+            return ClusterNodeRouter.await(responses);
+        }, slotKeys -> {
+            for (String key : slotKeys) {
+                if (seconds > 0) {
+                    jedisCluster.setex(key, seconds, values.get(key));
+                } else {
+                    jedisCluster.set(key, values.get(key));
+                }
+            }
+            return null;
+        });
+    }
+
     @Override
     public <T> Long setnx(String key, T value) {
         return setnx(key, value, 0);
@@ -130,6 +177,17 @@ public class RedisClusterCache implements IRedis {
         return GsonUtil.from(get(key), typeToken);
     }
 
+    @Override
+    public List<String> mget(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        //集群模式下mget的key必须在同一个slot，按slot拆分后各节点并行获取
+        Map<Integer, List<String>> slotValues = router.execute(ClusterNodeRouter.groupBySlot(keys),
+                (pipeline, slotKeys) -> pipeline.mget(slotKeys)::get, jedisCluster::mget);
+        return merge(keys, slotValues);
+    }
+
     @Override
     public Long incr(String key, Integer value, int seconds) {
         if (StringUtils.isEmpty(key) || value == null || value == 0 || seconds < 0) {
@@ -164,11 +222,43 @@ public class RedisClusterCache implements IRedis {
         return total;
     }
 
+    @Override
+    public Map<String, WriteResult> incr(Map<String, Long> deltas) {
+        Map<String, WriteResult> results = new HashMap<>();
+        if (deltas == null || deltas.isEmpty()) {
+            return results;
+        }
+        List<Increment> increments = new ArrayList<>(deltas.size());
+        deltas.forEach((key, delta) -> increments.add(new Increment(key, null, delta)));
+        increment(increments);
+        increments.forEach(increment -> results.put(increment.key, increment.result));
+        return results;
+    }
+
     @Override
     public Long expire(String key, int seconds) {
         return jedisCluster.expire(key, seconds);
     }
 
+    @Override
+    public void expire(int seconds, String... keys) {
+        if (keys == null || keys.length == 0 || seconds < 0) {
+            return;
+        }
+        router.execute(ClusterNodeRouter.groupBySlot(keys), (pipeline, slotKeys) -> {
+            List<Response<?>> responses = new ArrayList<>(slotKeys.length);
+            for (String key : slotKeys) {
+                responses.add(pipeline.expire(key, seconds));
+            }
+            return ClusterNodeRouter.await(responses);
+        }, slotKeys -> {
+            for (String key : slotKeys) {
+                jedisCluster.expire(key, seconds);
+            }
+            return null;
+        });
+    }
+
     @Override
     public Long persist(String key) {
         return jedisCluster.persist(key);
@@ -179,6 +269,31 @@ public class RedisClusterCache implements IRedis {
         return jedisCluster.exists(key);
     }
 
+    @Override
+    public List<Boolean> exist(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        Map<Integer, List<Boolean>> slotExists = router.execute(ClusterNodeRouter.groupBySlot(keys), (pipeline, slotKeys) -> {
+            List<Response<Boolean>> responses = new ArrayList<>(slotKeys.length);
+            for (String key : slotKeys) {
+                responses.add(pipeline.exists(key));
+            }
+            return () -> {
+                List<Boolean> exists = new ArrayList<>(responses.size());
+                responses.forEach(response -> exists.add(response.get()));
+                return exists;
+            };
+        }, slotKeys -> {
+            List<Boolean> exists = new ArrayList<>(slotKeys.length);
+            for (String key : slotKeys) {
+                exists.add(jedisCluster.exists(key));
+            }
+            return exists;
+        });
+        return merge(keys, slotExists);
+    }
+
     @Override
     public Long del(String key) {
         return jedisCluster.del(key);
@@ -186,7 +301,93 @@ public class RedisClusterCache implements IRedis {
 
     @Override
     public void del(String... keys) {
-        jedisCluster.del(keys);
+        if (keys == null || keys.length == 0) {
+            return;
+        }
+        //集群模式下del的key必须在同一个slot，按slot拆分后各节点并行删除
+        router.execute(ClusterNodeRouter.groupBySlot(keys), (pipeline, slotKeys) -> pipeline.del(slotKeys)::get, jedisCluster::del);
+    }
+
+    @Override
+    public Long unlink(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return UnlinkUtil.unlink(jedisCluster, Collections.singletonList(key));
+    }
+
+    @Override
+    public Long unlink(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        Map<Integer, List<String>> slotKeys = ClusterNodeRouter.groupBySlot(keys);
+        if (!UnlinkUtil.isSupported()) {
+            long count = 0;
+            for (List<String> keyList : slotKeys.values()) {
+                count += UnlinkUtil.unlink(jedisCluster, keyList);
+            }
+            return count;
+        }
+        Map<Integer, Long> slotCounts = router.execute(slotKeys, (pipeline, keyArray) -> {
+            List<Response<Object>> responses = new ArrayList<>();
+            for (List<String> batch : Lists.partition(Arrays.asList(keyArray), UnlinkUtil.UNLINK_BATCH_SIZE)) {
+                List<byte[]> keyBytes = new ArrayList<>(batch.size());
+                batch.forEach(key -> keyBytes.add(SafeEncoder.encode(key)));
+                responses.add(pipeline.eval(UnlinkUtil.UNLINK_SCRIPT_BYTES, keyBytes, Collections.emptyList()));
+            }
+            return () -> {
+                long count = 0;
+                for (Response<Object> response : responses) {
+                    count += UnlinkUtil.count(response.get());
+                }
+                return count;
+            };
+        }, keyArray -> UnlinkUtil.unlink(jedisCluster, Arrays.asList(keyArray)));
+        long count = 0;
+        for (Long slotCount : slotCounts.values()) {
+            count += slotCount;
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<String> scanKeys(String pattern) {
+        ScanParams params = new ScanParams().match(StringUtils.defaultIfEmpty(pattern, "*")).count(ScanIterator.PAGE_SIZE);
+        List<Function<String, ScanResult<String>>> sources = new ArrayList<>();
+        for (String node : router.masters()) {
+            sources.add(cursor -> {
+                try (Jedis jedis = router.getPool(node).getResource()) {
+                    return jedis.scan(cursor, params);
+                } catch (Exception e) {
+                    log.error("scan error, node: {}, pattern: {}, cursor: {}", node, pattern, cursor, e);
+                    throw new RedisCacheException(e);
+                }
+            });
+        }
+        return new ScanIterator<>(sources);
+    }
+
+    @Override
+    public Long delByPattern(String pattern, LongConsumer progress) {
+        if (StringUtils.isEmpty(pattern)) {
+            return null;
+        }
+        LongConsumer total = PatternDeleteUtil.total(progress);
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (String node : router.masters()) {
+            tasks.add(() -> {
+                try (Jedis jedis = router.getPool(node).getResource()) {
+                    //同一条UNLINK命令中的key必须在同一个slot上
+                    return PatternDeleteUtil.delete(jedis, pattern, keys -> ClusterNodeRouter.groupBySlot(keys.toArray(new String[0])).values(), total);
+                }
+            });
+        }
+        long count = 0;
+        for (Long nodeCount : ParallelUtil.invokeAll(tasks)) {
+            count += nodeCount;
+        }
+        return count;
     }
 
     @Override
@@ -343,6 +544,14 @@ public class RedisClusterCache implements IRedis {
         return lrange(key, pageNo * pageSize, (pageNo + 1) * pageSize, c);
     }
 
+    @Override
+    public Iterator<String> lrangeStream(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return new ScanIterator<>(ScanIterator.range((start, end) -> lrange(key, start, end)));
+    }
+
     @Override
     public String lindex(String key, int index) {
         if (StringUtils.isEmpty(key) || index < 0) {
@@ -377,12 +586,8 @@ public class RedisClusterCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return;
         }
-        Long llen = llen(key);
-        if (llen != null && llen > 0) {
-            for (long i = 0; i < llen; i++) {
-                lpop(key);
-            }
-        }
+        //直接删除整个List，大List由unlink在后台释放内存
+        unlink(key);
     }
 
     @Override
@@ -477,6 +682,153 @@ public class RedisClusterCache implements IRedis {
         return jedisCluster.smembers(key);
     }
 
+    @Override
+    public Iterator<String> sscan(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(ScanIterator.PAGE_SIZE);
+        return new ScanIterator<>(cursor -> jedisCluster.sscan(key, cursor, params));
+    }
+
+    @Override
+    public Long zadd(String key, double score, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        return jedisCluster.zadd(key, score, member);
+    }
+
+    @Override
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        if (StringUtils.isEmpty(key) || scoreMembers == null || scoreMembers.isEmpty()) {
+            return null;
+        }
+        return jedisCluster.zadd(key, scoreMembers);
+    }
+
+    @Override
+    public Double zincrby(String key, double increment, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        return jedisCluster.zincrby(key, increment, member);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Double> zincrby(String key, Map<String, Double> increments) {
+        if (StringUtils.isEmpty(key) || increments == null || increments.isEmpty()) {
+            return null;
+        }
+        //集群模式下使用Lua脚本一次完成，重定向重试时不会重复增加
+        List<String> members = new ArrayList<>(increments.keySet());
+        List<String> args = new ArrayList<>(members.size() * 2);
+        members.forEach(member -> {
+            args.add(String.valueOf(increments.get(member)));
+            args.add(member);
+        });
+        String script = "local scores = {} for i = 1, #ARGV, 2 do scores[#scores + 1] = redis.call('zincrby', KEYS[1], ARGV[i], ARGV[i + 1]) end return scores";
+        List<Object> results = (List<Object>) jedisCluster.eval(script, Collections.singletonList(key), args);
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (int i = 0; i < members.size(); i++) {
+            scores.put(members.get(i), Double.valueOf((String) results.get(i)));
+        }
+        return scores;
+    }
+
+    @Override
+    public Double zscore(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        return jedisCluster.zscore(key, member);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Double> zscore(String key, String... members) {
+        if (StringUtils.isEmpty(key) || members == null || members.length == 0) {
+            return null;
+        }
+        String script = "local scores = {} for i = 1, #ARGV do scores[i] = redis.call('zscore', KEYS[1], ARGV[i]) end return scores";
+        List<Object> results = (List<Object>) jedisCluster.eval(script, Collections.singletonList(key), Arrays.asList(members));
+        List<Double> scores = new ArrayList<>(members.length);
+        for (int i = 0; i < members.length; i++) {
+            Object score = i < results.size() ? results.get(i) : null;
+            scores.add(score == null ? null : Double.valueOf((String) score));
+        }
+        return scores;
+    }
+
+    @Override
+    public Long zrank(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        return jedisCluster.zrank(key, member);
+    }
+
+    @Override
+    public Long zrevrank(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        return jedisCluster.zrevrank(key, member);
+    }
+
+    @Override
+    public Set<String> zrange(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return jedisCluster.zrange(key, start, end);
+    }
+
+    @Override
+    public Set<String> zrevrange(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return jedisCluster.zrevrange(key, start, end);
+    }
+
+    @Override
+    public Map<String, Double> zrangeWithScores(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        Map<String, Double> scores = new LinkedHashMap<>();
+        jedisCluster.zrangeWithScores(key, start, end).forEach(tuple -> scores.put(tuple.getElement(), tuple.getScore()));
+        return scores;
+    }
+
+    @Override
+    public Map<String, Double> zrevrangeWithScores(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        Map<String, Double> scores = new LinkedHashMap<>();
+        jedisCluster.zrevrangeWithScores(key, start, end).forEach(tuple -> scores.put(tuple.getElement(), tuple.getScore()));
+        return scores;
+    }
+
+    @Override
+    public Long zrem(String key, String... members) {
+        if (StringUtils.isEmpty(key) || members == null || members.length == 0) {
+            return null;
+        }
+        return jedisCluster.zrem(key, members);
+    }
+
+    @Override
+    public Long zcard(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return jedisCluster.zcard(key);
+    }
+
     @Override
     public <T> Long hset(String key, String field, T value) {
         if (StringUtils.isEmpty(key) || field == null || value == null) {
@@ -530,6 +882,31 @@ public class RedisClusterCache implements IRedis {
         return hmset;
     }
 
+    @Override
+    public void hmset(Map<String, Map<String, String>> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        router.execute(ClusterNodeRouter.groupBySlot(values.keySet().toArray(new String[0])), (pipeline, slotKeys) -> {
+            List<Response<?>> responses = new ArrayList<>(slotKeys.length * 2);
+            for (String key : slotKeys) {
+                responses.add(pipeline.hmset(key, values.get(key)));
+                if (seconds > 0) {
+                    responses.add(pipeline.expire(key, seconds));
+                }
+            }
+            return ClusterNodeRouter.await(responses);
+        }, slotKeys -> {
+            for (String key : slotKeys) {
+                jedisCluster.hmset(key, values.get(key));
+                if (seconds > 0) {
+                    jedisCluster.expire(key, seconds);
+                }
+            }
+            return null;
+        });
+    }
+
     @Override
     public String hget(String key, String field) {
         if (StringUtils.isEmpty(key) || field == null) {
@@ -566,6 +943,19 @@ public class RedisClusterCache implements IRedis {
         return jedisCluster.hincrBy(key, field, -value);
     }
 
+    @Override
+    public Map<String, Map<String, WriteResult>> hincr(Map<String, Map<String, Long>> deltas) {
+        Map<String, Map<String, WriteResult>> results = new HashMap<>();
+        if (deltas == null || deltas.isEmpty()) {
+            return results;
+        }
+        List<Increment> increments = new ArrayList<>();
+        deltas.forEach((key, fields) -> fields.forEach((field, delta) -> increments.add(new Increment(key, field, delta))));
+        increment(increments);
+        increments.forEach(increment -> results.computeIfAbsent(increment.key, key -> new HashMap<>()).put(increment.field, increment.result));
+        return results;
+    }
+
     @Override
     public Map<String, String> hgetAll(String key) {
         if (StringUtils.isEmpty(key)) {
@@ -574,6 +964,57 @@ public class RedisClusterCache implements IRedis {
         return jedisCluster.hgetAll(key);
     }
 
+    @Override
+    public List<byte[]> hmgetBytes(String key, String... fields) {
+        if (StringUtils.isEmpty(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        return jedisCluster.hmget(SafeEncoder.encode(key), SafeEncoder.encodeMany(fields));
+    }
+
+    @Override
+    public Map<String, byte[]> hgetAllBytes(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        Map<byte[], byte[]> values = jedisCluster.hgetAll(SafeEncoder.encode(key));
+        Map<String, byte[]> result = new HashMap<>(values.size());
+        values.forEach((field, value) -> result.put(SafeEncoder.encode(field), value));
+        return result;
+    }
+
+    @Override
+    public void hsetBytes(String key, Map<String, byte[]> values) {
+        if (StringUtils.isEmpty(key) || values == null || values.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> sets = new HashMap<>();
+        List<byte[]> dels = new ArrayList<>();
+        values.forEach((field, value) -> {
+            if (value == null) {
+                dels.add(SafeEncoder.encode(field));
+            } else {
+                sets.put(SafeEncoder.encode(field), value);
+            }
+        });
+        byte[] keyBytes = SafeEncoder.encode(key);
+        if (!sets.isEmpty()) {
+            jedisCluster.hmset(keyBytes, sets);
+        }
+        if (!dels.isEmpty()) {
+            jedisCluster.hdel(keyBytes, dels.toArray(new byte[0][]));
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> hscan(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(ScanIterator.PAGE_SIZE);
+        return new ScanIterator<>(cursor -> jedisCluster.hscan(key, cursor, params));
+    }
+
     @Override
     public Long pfadd(String key, String value) {
         if (StringUtils.isEmpty(key) || value == null) {
@@ -602,6 +1043,67 @@ public class RedisClusterCache implements IRedis {
         return jedisCluster.pfcount(key);
     }
 
+    @Override
+    public Long pfcount(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        Map<Integer, List<String>> slotKeys = ClusterNodeRouter.groupBySlot(keys);
+        if (slotKeys.size() == 1) {
+            return jedisCluster.pfcount(keys);
+        }
+        Map<Integer, List<byte[]>> slotValues = router.execute(slotKeys, (pipeline, keysInSlot) -> {
+            List<Response<byte[]>> responses = new ArrayList<>(keysInSlot.length);
+            for (String key : keysInSlot) {
+                responses.add(pipeline.get(SafeEncoder.encode(key)));
+            }
+            return () -> {
+                List<byte[]> values = new ArrayList<>(responses.size());
+                responses.forEach(response -> values.add(response.get()));
+                return values;
+            };
+        }, keysInSlot -> {
+            List<byte[]> values = new ArrayList<>(keysInSlot.length);
+            for (String key : keysInSlot) {
+                values.add(jedisCluster.get(SafeEncoder.encode(key)));
+            }
+            return values;
+        });
+        List<byte[]> values = new ArrayList<>(keys.length);
+        slotValues.values().forEach(values::addAll);
+        byte[] scratchKey = HllUtil.scratchKey();
+        return (Long) jedisCluster.eval(HllUtil.PFCOUNT_SCRIPT, Collections.singletonList(scratchKey), HllUtil.values(values));
+    }
+
+    @Override
+    public void pfadd(Map<String, Collection<String>> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        router.execute(ClusterNodeRouter.groupBySlot(values.keySet().toArray(new String[0])), (pipeline, slotKeys) -> {
+            List<Response<?>> responses = new ArrayList<>();
+            for (String key : slotKeys) {
+                for (String[] batch : HllUtil.partition(values.get(key))) {
+                    responses.add(pipeline.pfadd(key, batch));
+                }
+                if (seconds > 0) {
+                    responses.add(pipeline.expire(key, seconds));
+                }
+            }
+            return ClusterNodeRouter.await(responses);
+        }, slotKeys -> {
+            for (String key : slotKeys) {
+                for (String[] batch : HllUtil.partition(values.get(key))) {
+                    jedisCluster.pfadd(key, batch);
+                }
+                if (seconds > 0) {
+                    jedisCluster.expire(key, seconds);
+                }
+            }
+            return null;
+        });
+    }
+
     @Override
     public boolean setbit(String key, long offset, boolean value) {
         if (StringUtils.isEmpty(key)) {
@@ -642,12 +1144,113 @@ public class RedisClusterCache implements IRedis {
         return jedisCluster.bitcount(key, start, end);
     }
 
+    @Override
+    public List<Long> bitcount(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        Map<Integer, List<Long>> slotCounts = router.execute(ClusterNodeRouter.groupBySlot(keys), (pipeline, slotKeys) -> {
+            List<Response<Long>> responses = new ArrayList<>(slotKeys.length);
+            for (String key : slotKeys) {
+                responses.add(pipeline.bitcount(key));
+            }
+            return () -> {
+                List<Long> counts = new ArrayList<>(responses.size());
+                responses.forEach(response -> counts.add(response.get()));
+                return counts;
+            };
+        }, slotKeys -> {
+            List<Long> counts = new ArrayList<>(slotKeys.length);
+            for (String key : slotKeys) {
+                counts.add(jedisCluster.bitcount(key));
+            }
+            return counts;
+        });
+        return merge(keys, slotCounts);
+    }
+
+    @Override
+    public List<Long> bitcountChunks(String key, long chunkBytes, long fromChunk, int chunks) {
+        if (StringUtils.isEmpty(key) || chunkBytes <= 0 || fromChunk < 0 || chunks <= 0) {
+            return null;
+        }
+        Map<Integer, List<Long>> slotCounts = router.execute(ClusterNodeRouter.groupBySlot(key), (pipeline, slotKeys) -> {
+            List<Response<Long>> responses = new ArrayList<>(chunks);
+            for (long chunk = fromChunk; chunk < fromChunk + chunks; chunk++) {
+                responses.add(pipeline.bitcount(key, chunk * chunkBytes, (chunk + 1) * chunkBytes - 1));
+            }
+            return () -> {
+                List<Long> counts = new ArrayList<>(chunks);
+                responses.forEach(response -> counts.add(response.get()));
+                return counts;
+            };
+        }, slotKeys -> {
+            List<Long> counts = new ArrayList<>(chunks);
+            for (long chunk = fromChunk; chunk < fromChunk + chunks; chunk++) {
+                counts.add(jedisCluster.bitcount(key, chunk * chunkBytes, (chunk + 1) * chunkBytes - 1));
+            }
+            return counts;
+        });
+        return slotCounts.values().iterator().next();
+    }
+
+    @Override
+    public Long strlen(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return jedisCluster.strlen(key);
+    }
+
     @Override
     public Long bitop(BitOP op, String destKey, String... srcKeys) {
+        return bitop(op, destKey, srcKeys, false);
+    }
+
+    @Override
+    public Long bitopcount(BitOP op, String destKey, String... srcKeys) {
+        return bitop(op, destKey, srcKeys, true);
+    }
+
+    /**
+     * 所有key在同一个slot上时直接执行BITOP，否则在客户端分段计算
+     * @param count true返回结果中值为1的位的个数，false返回结果的长度
+     */
+    private Long bitop(BitOP op, String destKey, String[] srcKeys, boolean count) {
         if (op == null || StringUtils.isEmpty(destKey) || srcKeys == null || srcKeys.length == 0) {
             return null;
         }
-        return jedisCluster.bitop(op, destKey, srcKeys);
+        int slot = JedisClusterCRC16.getSlot(destKey);
+        boolean sameSlot = true;
+        for (String srcKey : srcKeys) {
+            sameSlot &= JedisClusterCRC16.getSlot(srcKey) == slot;
+        }
+        if (sameSlot) {
+            Long length = jedisCluster.bitop(op, destKey, srcKeys);
+            return count ? jedisCluster.bitcount(destKey) : length;
+        }
+        BitOpUtil.Result result = BitOpUtil.bitop(new BitOpUtil.RangeCommands() {
+            @Override
+            public Long strlen(byte[] key) {
+                return jedisCluster.strlen(key);
+            }
+
+            @Override
+            public byte[] getrange(byte[] key, long startOffset, long endOffset) {
+                return jedisCluster.getrange(key, startOffset, endOffset);
+            }
+
+            @Override
+            public Long setrange(byte[] key, long offset, byte[] value) {
+                return jedisCluster.setrange(key, offset, value);
+            }
+
+            @Override
+            public Long del(byte[] key) {
+                return jedisCluster.del(key);
+            }
+        }, op, destKey, srcKeys);
+        return count ? result.getBitcount() : result.getLength();
     }
 
     @Override
@@ -722,4 +1325,142 @@ public class RedisClusterCache implements IRedis {
         Object result = jedisCluster.eval(script, Collections.singletonList(lockKey), Collections.singletonList(requestId));
         return RELEASE_SUCCESS.equals(result);
     }
+
+    @Override
+    public Long publish(String channel, String message) {
+        if (StringUtils.isEmpty(channel) || message == null) {
+            return null;
+        }
+        return jedisCluster.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(JedisPubSub listener, String... channels) {
+        if (listener == null || channels == null || channels.length == 0) {
+            return;
+        }
+        jedisCluster.subscribe(listener, channels);
+    }
+
+    @Override
+    public Object eval(String script, List<String> keys, List<String> args) {
+        if (StringUtils.isEmpty(script) || keys == null || keys.isEmpty()) {
+            return null;
+        }
+        List<String> argList = args == null ? Collections.emptyList() : args;
+        return ScriptUtil.eval(script, keys, argList, jedisCluster::evalsha, jedisCluster::eval);
+    }
+
+    /**
+     * 按slot管道执行INCRBY/HINCRBY，执行结果记录在每个Increment中
+     * 这两个命令不是幂等的，只重新执行返回重定向错误（MOVED/ASK/CLUSTERDOWN）或没有发送的命令
+     * 管道连接异常时无法确定已发送的命令是否执行，这些命令不重新执行（避免重复累加），结果记为UNKNOWN
+     */
+    private void increment(List<Increment> increments) {
+        Map<String, List<Increment>> keyIncrements = new LinkedHashMap<>();
+        increments.forEach(increment -> keyIncrements.computeIfAbsent(increment.key, key -> new ArrayList<>()).add(increment));
+        //管道同步成功的slot，只有这些slot中命令的结果是确定的
+        Set<Integer> syncedSlots = Collections.synchronizedSet(new HashSet<>());
+        try {
+            router.execute(ClusterNodeRouter.groupBySlot(keyIncrements.keySet().toArray(new String[0])), (pipeline, slotKeys) -> {
+                List<Increment> sent = new ArrayList<>();
+                for (String key : slotKeys) {
+                    for (Increment increment : keyIncrements.get(key)) {
+                        increment.response = increment.field == null ? pipeline.incrBy(key, increment.delta)
+                                : pipeline.hincrBy(key, increment.field, increment.delta);
+                        sent.add(increment);
+                    }
+                }
+                return () -> {
+                    syncedSlots.add(JedisClusterCRC16.getSlot(slotKeys[0]));
+                    boolean redirected = false;
+                    for (Increment increment : sent) {
+                        try {
+                            increment.response.get();
+                            increment.result = WriteResult.APPLIED;
+                        } catch (JedisRedirectionException | JedisClusterException e) {
+                            redirected = true;
+                        } catch (JedisDataException e) {
+                            increment.result = WriteResult.REJECTED;
+                        }
+                    }
+                    if (redirected) {
+                        throw new RedisCacheException("cluster pipeline increment redirected");
+                    }
+                    return null;
+                };
+            }, slotKeys -> {
+                boolean synced = syncedSlots.contains(JedisClusterCRC16.getSlot(slotKeys[0]));
+                for (String key : slotKeys) {
+                    for (Increment increment : keyIncrements.get(key)) {
+                        if (increment.result != null) {
+                            continue;
+                        }
+                        if (increment.response != null && !synced) {
+                            increment.result = WriteResult.UNKNOWN;
+                            continue;
+                        }
+                        try {
+                            if (increment.field == null) {
+                                jedisCluster.incrBy(key, increment.delta);
+                            } else {
+                                jedisCluster.hincrBy(key, increment.field, increment.delta);
+                            }
+                            increment.result = WriteResult.APPLIED;
+                        } catch (JedisDataException e) {
+                            //重试耗尽时可能是连接异常后重新发送过，无法确定是否执行
+                            if (!(e instanceof JedisClusterMaxRedirectionsException)) {
+                                increment.result = WriteResult.REJECTED;
+                                continue;
+                            }
+                            log.error("increment error, key: {}, field: {}, delta: {}", key, increment.field, increment.delta, e);
+                            increment.result = WriteResult.UNKNOWN;
+                        } catch (Exception e) {
+                            log.error("increment error, key: {}, field: {}, delta: {}", key, increment.field, increment.delta, e);
+                            increment.result = WriteResult.UNKNOWN;
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("increment error, keys: {}", GsonUtil.to(keyIncrements.keySet()), e);
+        }
+        for (Increment increment : increments) {
+            if (increment.result == null) {
+                increment.result = increment.response == null ? WriteResult.NOT_SENT : WriteResult.UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * 将按slot拆分执行的结果还原为keys的顺序
+     */
+    private <T> List<T> merge(String[] keys, Map<Integer, List<T>> slotValues) {
+        Map<Integer, Integer> slotPositions = new HashMap<>(slotValues.size());
+        List<T> values = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            int slot = JedisClusterCRC16.getSlot(key);
+            int position = slotPositions.merge(slot, 1, Integer::sum) - 1;
+            values.add(slotValues.get(slot).get(position));
+        }
+        return values;
+    }
+
+    /**
+     * 一次INCRBY（field为null）或HINCRBY
+     */
+    private static class Increment {
+        private final String key;
+        private final String field;
+        private final long delta;
+        private volatile Response<Long> response;
+        private volatile WriteResult result;
+
+        Increment(String key, String field, long delta) {
+            this.key = key;
+            this.field = field;
+            this.delta = delta;
+        }
+    }
 }
@@ -5,7 +5,13 @@ import com.google.common.collect.Sets;
 import com.google.gson.reflect.TypeToken;
 import com.dxy.library.cache.exception.RedisCacheException;
 import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.WriteResult;
 import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.dxy.library.cache.redis.util.HllUtil;
+import com.dxy.library.cache.redis.util.PatternDeleteUtil;
+import com.dxy.library.cache.redis.util.ScanIterator;
+import com.dxy.library.cache.redis.util.ScriptUtil;
+import com.dxy.library.cache.redis.util.UnlinkUtil;
 import com.dxy.library.json.gson.GsonUtil;
 import com.dxy.library.util.common.ListUtils;
 import com.dxy.library.util.common.config.ConfigUtils;
@@ -14,8 +20,12 @@ import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import redis.clients.jedis.*;
+import redis.clients.util.SafeEncoder;
 
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * Redis单机模式缓存器
@@ -31,6 +41,8 @@ public class RedisSentinelCache implements IRedis {
     private static final Long RELEASE_SUCCESS = 1L;
 
     private JedisSentinelPool jedisSentinelPool;
+    //只读命令的路由，按cache.redis.sentinel.read.policy选择从节点或主节点
+    private SentinelReadRouter readRouter;
 
     public RedisSentinelCache() {
         JedisPoolConfig config = new JedisPoolConfig();
@@ -55,6 +67,15 @@ public class RedisSentinelCache implements IRedis {
         int database = 0;
 
         jedisSentinelPool = new JedisSentinelPool(masterName, sentinels, config, timeout, password, database);
+        readRouter = new SentinelReadRouter(jedisSentinelPool, sentinels, masterName, config, timeout, password, database);
+    }
+
+    /**
+     * 获取只读命令使用的连接，写命令、读后写（如bloomadd的存在判断）、游标遍历，
+     * 以及ChunkedBitcount、CompressedBitmapStore依赖的strlen、bitcountChunks、带范围的bitpos、hmgetBytes、hgetAllBytes始终使用主节点
+     */
+    private Jedis getReadResource() {
+        return readRouter.getResource();
     }
 
     @Override
@@ -84,6 +105,27 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public void mset(Map<String, String> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            values.forEach((key, value) -> {
+                if (seconds > 0) {
+                    pipeline.setex(key, seconds, value);
+                } else {
+                    pipeline.set(key, value);
+                }
+            });
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("mset error, keys: {}, seconds: {}", GsonUtil.to(values.keySet()), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public <T> Long setnx(String key, T value) {
         return setnx(key, value, 0);
@@ -116,7 +158,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.get(key);
         } catch (Exception e) {
             log.error("get error, key: {}", key, e);
@@ -129,7 +171,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key) || c == null) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             String value = jedis.get(key);
             if (c == String.class) {
                 return (T) value;
@@ -147,7 +189,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key) || typeToken == null) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return GsonUtil.from(jedis.get(key), typeToken);
         } catch (Exception e) {
             log.error("get error, key: {}", key, e);
@@ -155,6 +197,19 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public List<String> mget(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.mget(keys);
+        } catch (Exception e) {
+            log.error("mget error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long incr(String key, Integer value, int seconds) {
         if (StringUtils.isEmpty(key) || value == null || seconds < 0) {
@@ -217,6 +272,36 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public Map<String, WriteResult> incr(Map<String, Long> deltas) {
+        Map<String, WriteResult> results = new HashMap<>();
+        if (deltas == null || deltas.isEmpty()) {
+            return results;
+        }
+        Jedis jedis;
+        try {
+            jedis = jedisSentinelPool.getResource();
+        } catch (Exception e) {
+            log.error("incr error, deltas: {}", GsonUtil.to(deltas), e);
+            deltas.keySet().forEach(key -> results.put(key, WriteResult.NOT_SENT));
+            return results;
+        }
+        try {
+            Pipeline pipeline = jedis.pipelined();
+            Map<String, Response<Long>> responses = new HashMap<>(deltas.size());
+            deltas.forEach((key, value) -> responses.put(key, pipeline.incrBy(key, value)));
+            pipeline.sync();
+            responses.forEach((key, response) -> results.put(key, WriteResult.of(response)));
+        } catch (Exception e) {
+            //管道已发送，无法确定哪些命令已执行
+            log.error("incr error, deltas: {}", GsonUtil.to(deltas), e);
+            deltas.keySet().forEach(key -> results.putIfAbsent(key, WriteResult.UNKNOWN));
+        } finally {
+            jedis.close();
+        }
+        return results;
+    }
+
     @Override
     public Long expire(String key, int seconds) {
         if (StringUtils.isEmpty(key) || seconds < 0) {
@@ -230,6 +315,23 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public void expire(int seconds, String... keys) {
+        if (keys == null || keys.length == 0 || seconds < 0) {
+            return;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (String key : keys) {
+                pipeline.expire(key, seconds);
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("expire error, keys: {}, seconds: {}", GsonUtil.to(keys), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long persist(String key) {
         if (StringUtils.isEmpty(key)) {
@@ -248,7 +350,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return false;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.exists(key);
         } catch (Exception e) {
             log.error("exists error, key: {}", key, e);
@@ -256,6 +358,27 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public List<Boolean> exist(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Boolean>> responses = new ArrayList<>(keys.length);
+            for (String key : keys) {
+                responses.add(pipeline.exists(key));
+            }
+            pipeline.sync();
+            List<Boolean> exists = new ArrayList<>(keys.length);
+            responses.forEach(response -> exists.add(response.get()));
+            return exists;
+        } catch (Exception e) {
+            log.error("exists error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long del(String key) {
         if (StringUtils.isEmpty(key)) {
@@ -282,6 +405,51 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public Long unlink(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return UnlinkUtil.unlink(jedis, Collections.singletonList(key));
+        } catch (Exception e) {
+            log.error("unlink error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long unlink(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return UnlinkUtil.unlink(jedis, Arrays.asList(keys));
+        } catch (Exception e) {
+            log.error("unlink error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Iterator<String> scanKeys(String pattern) {
+        ScanParams params = new ScanParams().match(StringUtils.defaultIfEmpty(pattern, "*")).count(ScanIterator.PAGE_SIZE);
+        return new ScanIterator<>(pager("scan", pattern, (jedis, cursor) -> jedis.scan(cursor, params)));
+    }
+
+    @Override
+    public Long delByPattern(String pattern, LongConsumer progress) {
+        if (StringUtils.isEmpty(pattern)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return PatternDeleteUtil.delete(jedis, pattern, keys -> Lists.partition(keys, UnlinkUtil.UNLINK_BATCH_SIZE), PatternDeleteUtil.total(progress));
+        } catch (Exception e) {
+            log.error("delByPattern error, pattern: {}", pattern, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public <T> Long lpush(String key, T value) {
         return lpush(key, value, 0);
@@ -403,7 +571,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.lrange(key, 0, llen(key));
         } catch (Exception e) {
             log.error("lrange error, key: {}", key, e);
@@ -421,7 +589,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key) || end < 0) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.lrange(key, 0, end);
         } catch (Exception e) {
             log.error("lrange error, key: {}, end: {}", key, end, e);
@@ -439,7 +607,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key) || start < 0 || end < 0) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.lrange(key, start, end);
         } catch (Exception e) {
             log.error("lrange error, key: {}, start: {}, end: {}", key, start, end, e);
@@ -452,7 +620,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key) || start < 0 || end < 0 || c == null) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             List<String> strings = jedis.lrange(key, start, end);
             if (c == String.class) {
                 return (List<T>) strings;
@@ -476,12 +644,20 @@ public class RedisSentinelCache implements IRedis {
         return lrange(key, pageNo * pageSize, (pageNo + 1) * pageSize, c);
     }
 
+    @Override
+    public Iterator<String> lrangeStream(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return new ScanIterator<>(ScanIterator.range((start, end) -> lrange(key, start, end)));
+    }
+
     @Override
     public String lindex(String key, int index) {
         if (StringUtils.isEmpty(key) || index < 0) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.lindex(key, index);
         } catch (Exception e) {
             log.error("lindex error, key: {}, index: {}", key, index, e);
@@ -494,7 +670,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key) || index < 0) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             String s = jedis.lindex(key, index);
             if (c == String.class) {
                 return (T) s;
@@ -512,7 +688,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.llen(key);
         } catch (Exception e) {
             log.error("llen error, key: {}", key, e);
@@ -525,12 +701,8 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return;
         }
-        Long llen = llen(key);
-        if (llen != null && llen > 0) {
-            for (long i = 0; i < llen; i++) {
-                lpop(key);
-            }
-        }
+        //直接删除整个List，大List由unlink在后台释放内存
+        unlink(key);
     }
 
     @Override
@@ -639,7 +811,7 @@ public class RedisSentinelCache implements IRedis {
         if (value == null || StringUtils.isEmpty(key)) {
             return false;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.sismember(key, value);
         } catch (Exception e) {
             log.error("sismember error, key: {}, value: {}", key, value, e);
@@ -652,7 +824,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.smembers(key);
         } catch (Exception e) {
             log.error("smembers error, key: {}", key, e);
@@ -660,6 +832,215 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public Iterator<String> sscan(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(ScanIterator.PAGE_SIZE);
+        return new ScanIterator<>(pager("sscan", key, (jedis, cursor) -> jedis.sscan(key, cursor, params)));
+    }
+
+    @Override
+    public Long zadd(String key, double score, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.zadd(key, score, member);
+        } catch (Exception e) {
+            log.error("zadd error, key: {}, score: {}, member: {}", key, score, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        if (StringUtils.isEmpty(key) || scoreMembers == null || scoreMembers.isEmpty()) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.zadd(key, scoreMembers);
+        } catch (Exception e) {
+            log.error("zadd error, key: {}, scoreMembers: {}", key, GsonUtil.to(scoreMembers), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Double zincrby(String key, double increment, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.zincrby(key, increment, member);
+        } catch (Exception e) {
+            log.error("zincrby error, key: {}, increment: {}, member: {}", key, increment, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Double> zincrby(String key, Map<String, Double> increments) {
+        if (StringUtils.isEmpty(key) || increments == null || increments.isEmpty()) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Map<String, Response<Double>> responses = new LinkedHashMap<>();
+            increments.forEach((member, increment) -> responses.put(member, pipeline.zincrby(key, increment, member)));
+            pipeline.sync();
+            Map<String, Double> scores = new LinkedHashMap<>();
+            responses.forEach((member, response) -> scores.put(member, response.get()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zincrby error, key: {}, increments: {}", key, GsonUtil.to(increments), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Double zscore(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.zscore(key, member);
+        } catch (Exception e) {
+            log.error("zscore error, key: {}, member: {}", key, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public List<Double> zscore(String key, String... members) {
+        if (StringUtils.isEmpty(key) || members == null || members.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Double>> responses = new ArrayList<>(members.length);
+            for (String member : members) {
+                responses.add(pipeline.zscore(key, member));
+            }
+            pipeline.sync();
+            List<Double> scores = new ArrayList<>(members.length);
+            responses.forEach(response -> scores.add(response.get()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zscore error, key: {}, members: {}", key, GsonUtil.to(members), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zrank(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.zrank(key, member);
+        } catch (Exception e) {
+            log.error("zrank error, key: {}, member: {}", key, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zrevrank(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.zrevrank(key, member);
+        } catch (Exception e) {
+            log.error("zrevrank error, key: {}, member: {}", key, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Set<String> zrange(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.zrange(key, start, end);
+        } catch (Exception e) {
+            log.error("zrange error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Set<String> zrevrange(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.zrevrange(key, start, end);
+        } catch (Exception e) {
+            log.error("zrevrange error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Double> zrangeWithScores(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            Map<String, Double> scores = new LinkedHashMap<>();
+            jedis.zrangeWithScores(key, start, end).forEach(tuple -> scores.put(tuple.getElement(), tuple.getScore()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zrangeWithScores error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Double> zrevrangeWithScores(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            Map<String, Double> scores = new LinkedHashMap<>();
+            jedis.zrevrangeWithScores(key, start, end).forEach(tuple -> scores.put(tuple.getElement(), tuple.getScore()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zrevrangeWithScores error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zrem(String key, String... members) {
+        if (StringUtils.isEmpty(key) || members == null || members.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.zrem(key, members);
+        } catch (Exception e) {
+            log.error("zrem error, key: {}, members: {}", key, GsonUtil.to(members), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zcard(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.zcard(key);
+        } catch (Exception e) {
+            log.error("zcard error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public <T> Long hset(String key, String field, T value) {
         return hset(key, field, value, 0);
@@ -715,12 +1096,32 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public void hmset(Map<String, Map<String, String>> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            values.forEach((key, fields) -> {
+                pipeline.hmset(key, fields);
+                if (seconds > 0) {
+                    pipeline.expire(key, seconds);
+                }
+            });
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("hmset error, keys: {}, seconds: {}", GsonUtil.to(values.keySet()), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public String hget(String key, String field) {
         if (field == null || StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.hget(key, field);
         } catch (Exception e) {
             log.error("hget error, key: {}, field: {}", key, field, e);
@@ -766,12 +1167,46 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public Map<String, Map<String, WriteResult>> hincr(Map<String, Map<String, Long>> deltas) {
+        Map<String, Map<String, WriteResult>> results = new HashMap<>();
+        if (deltas == null || deltas.isEmpty()) {
+            return results;
+        }
+        Jedis jedis;
+        try {
+            jedis = jedisSentinelPool.getResource();
+        } catch (Exception e) {
+            log.error("hincr error, deltas: {}", GsonUtil.to(deltas), e);
+            deltas.forEach((key, fields) -> fields.keySet().forEach(field ->
+                    results.computeIfAbsent(key, k -> new HashMap<>()).put(field, WriteResult.NOT_SENT)));
+            return results;
+        }
+        try {
+            Pipeline pipeline = jedis.pipelined();
+            Map<String, Map<String, Response<Long>>> responses = new HashMap<>(deltas.size());
+            deltas.forEach((key, fields) -> fields.forEach((field, value) ->
+                    responses.computeIfAbsent(key, k -> new HashMap<>()).put(field, pipeline.hincrBy(key, field, value))));
+            pipeline.sync();
+            responses.forEach((key, fields) -> fields.forEach((field, response) ->
+                    results.computeIfAbsent(key, k -> new HashMap<>()).put(field, WriteResult.of(response))));
+        } catch (Exception e) {
+            //管道已发送，无法确定哪些命令已执行
+            log.error("hincr error, deltas: {}", GsonUtil.to(deltas), e);
+            deltas.forEach((key, fields) -> fields.keySet().forEach(field ->
+                    results.computeIfAbsent(key, k -> new HashMap<>()).putIfAbsent(field, WriteResult.UNKNOWN)));
+        } finally {
+            jedis.close();
+        }
+        return results;
+    }
+
     @Override
     public Map<String, String> hgetAll(String key) {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.hgetAll(key);
         } catch (Exception e) {
             log.error("hgetAll error, key: {}", key, e);
@@ -779,6 +1214,74 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public List<byte[]> hmgetBytes(String key, String... fields) {
+        if (StringUtils.isEmpty(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.hmget(SafeEncoder.encode(key), SafeEncoder.encodeMany(fields));
+        } catch (Exception e) {
+            log.error("hmgetBytes error, key: {}, fields: {}", key, GsonUtil.to(fields), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, byte[]> hgetAllBytes(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Map<byte[], byte[]> values = jedis.hgetAll(SafeEncoder.encode(key));
+            Map<String, byte[]> result = new HashMap<>(values.size());
+            values.forEach((field, value) -> result.put(SafeEncoder.encode(field), value));
+            return result;
+        } catch (Exception e) {
+            log.error("hgetAllBytes error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public void hsetBytes(String key, Map<String, byte[]> values) {
+        if (StringUtils.isEmpty(key) || values == null || values.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> sets = new HashMap<>();
+        List<byte[]> dels = new ArrayList<>();
+        values.forEach((field, value) -> {
+            if (value == null) {
+                dels.add(SafeEncoder.encode(field));
+            } else {
+                sets.put(SafeEncoder.encode(field), value);
+            }
+        });
+        byte[] keyBytes = SafeEncoder.encode(key);
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            if (!sets.isEmpty()) {
+                pipeline.hmset(keyBytes, sets);
+            }
+            if (!dels.isEmpty()) {
+                pipeline.hdel(keyBytes, dels.toArray(new byte[0][]));
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("hsetBytes error, key: {}, fields: {}", key, GsonUtil.to(values.keySet()), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> hscan(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(ScanIterator.PAGE_SIZE);
+        return new ScanIterator<>(pager("hscan", key, (jedis, cursor) -> jedis.hscan(key, cursor, params)));
+    }
+
     @Override
     public Long pfadd(String key, String value) {
         if (StringUtils.isEmpty(key) || value == null) {
@@ -814,7 +1317,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.pfcount(key);
         } catch (Exception e) {
             log.error("pfcount error, key: {}", key, e);
@@ -822,6 +1325,41 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public Long pfcount(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            return jedis.pfcount(keys);
+        } catch (Exception e) {
+            log.error("pfcount error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public void pfadd(Map<String, Collection<String>> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            values.forEach((key, elements) -> {
+                for (String[] batch : HllUtil.partition(elements)) {
+                    pipeline.pfadd(key, batch);
+                }
+                if (seconds > 0) {
+                    pipeline.expire(key, seconds);
+                }
+            });
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("pfadd error, keys: {}, seconds: {}", GsonUtil.to(values.keySet()), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public boolean setbit(String key, long offset, boolean value) {
         if (StringUtils.isEmpty(key)) {
@@ -853,7 +1391,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return false;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return BooleanUtils.toBoolean(jedis.getbit(key, offset));
         } catch (Exception e) {
             log.error("getbit error, key: {}, offset: {}", key, offset, e);
@@ -866,7 +1404,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.bitcount(key);
         } catch (Exception e) {
             log.error("getbit error, key: {}", key, e);
@@ -879,7 +1417,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.bitcount(key, start, end);
         } catch (Exception e) {
             log.error("getbit error, key: {}, start: {}, end: {}", key, start, end, e);
@@ -887,6 +1425,61 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public List<Long> bitcount(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = getReadResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (String key : keys) {
+                pipeline.bitcount(key);
+            }
+            List<Long> counts = new ArrayList<>(keys.length);
+            for (Object count : pipeline.syncAndReturnAll()) {
+                counts.add((Long) count);
+            }
+            return counts;
+        } catch (Exception e) {
+            log.error("bitcount error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public List<Long> bitcountChunks(String key, long chunkBytes, long fromChunk, int chunks) {
+        if (StringUtils.isEmpty(key) || chunkBytes <= 0 || fromChunk < 0 || chunks <= 0) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Long>> responses = new ArrayList<>(chunks);
+            for (long chunk = fromChunk; chunk < fromChunk + chunks; chunk++) {
+                responses.add(pipeline.bitcount(key, chunk * chunkBytes, (chunk + 1) * chunkBytes - 1));
+            }
+            pipeline.sync();
+            List<Long> counts = new ArrayList<>(chunks);
+            responses.forEach(response -> counts.add(response.get()));
+            return counts;
+        } catch (Exception e) {
+            log.error("bitcountChunks error, key: {}, chunkBytes: {}, fromChunk: {}, chunks: {}", key, chunkBytes, fromChunk, chunks, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long strlen(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.strlen(key);
+        } catch (Exception e) {
+            log.error("strlen error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long bitop(BitOP op, String destKey, String... srcKeys) {
         if (op == null || StringUtils.isEmpty(destKey) || srcKeys == null || srcKeys.length == 0) {
@@ -900,6 +1493,23 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public Long bitopcount(BitOP op, String destKey, String... srcKeys) {
+        if (op == null || StringUtils.isEmpty(destKey) || srcKeys == null || srcKeys.length == 0) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.bitop(op, destKey, srcKeys);
+            Response<Long> count = pipeline.bitcount(destKey);
+            pipeline.sync();
+            return count.get();
+        } catch (Exception e) {
+            log.error("bitopcount error, operate: {}, destKey: {}, srcKeys: {}", op.toString(), destKey, GsonUtil.to(srcKeys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public List<Long> bitfield(String key, String... arguments) {
         if (StringUtils.isEmpty(key) || arguments == null || arguments.length == 0) {
@@ -918,7 +1528,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             return jedis.bitpos(key, value);
         } catch (Exception e) {
             log.error("bitpos error, key: {}, value: {}", key, value, e);
@@ -931,6 +1541,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return null;
         }
+        //与strlen、bitcountChunks一样读主节点，ChunkedBitcount按主节点的分块计数选择范围后再查找位置
         try (Jedis jedis = jedisSentinelPool.getResource()) {
             return jedis.bitpos(key, value, new BitPosParams(start, end));
         } catch (Exception e) {
@@ -945,11 +1556,18 @@ public class RedisSentinelCache implements IRedis {
             return false;
         }
         try (Jedis jedis = jedisSentinelPool.getResource()) {
-            boolean bloomconstains = bloomcons(key, value);
+            //在主节点上判断是否存在，从节点的复制延迟可能导致重复添加
+            long[] offsets = BitHashUtil.getBitOffsets(value);
+            boolean bloomconstains = true;
+            for (long offset : offsets) {
+                if (!jedis.getbit(key, offset)) {
+                    bloomconstains = false;
+                    break;
+                }
+            }
             if (bloomconstains) {
                 return false;
             }
-            long[] offsets = BitHashUtil.getBitOffsets(value);
             for (long offset : offsets) {
                 jedis.setbit(key, offset, true);
             }
@@ -965,7 +1583,7 @@ public class RedisSentinelCache implements IRedis {
         if (StringUtils.isEmpty(key) || value == null) {
             return false;
         }
-        try (Jedis jedis = jedisSentinelPool.getResource()) {
+        try (Jedis jedis = getReadResource()) {
             long[] offsets = BitHashUtil.getBitOffsets(value);
             for (long offset : offsets) {
                 if (!jedis.getbit(key, offset)) {
@@ -1008,4 +1626,58 @@ public class RedisSentinelCache implements IRedis {
         }
     }
 
+    @Override
+    public Long publish(String channel, String message) {
+        if (StringUtils.isEmpty(channel) || message == null) {
+            return null;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return jedis.publish(channel, message);
+        } catch (Exception e) {
+            log.error("publish error, channel: {}, message: {}", channel, message, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public void subscribe(JedisPubSub listener, String... channels) {
+        if (listener == null || channels == null || channels.length == 0) {
+            return;
+        }
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            jedis.subscribe(listener, channels);
+        } catch (Exception e) {
+            log.error("subscribe error, channels: {}", GsonUtil.to(channels), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Object eval(String script, List<String> keys, List<String> args) {
+        if (StringUtils.isEmpty(script) || keys == null || keys.isEmpty()) {
+            return null;
+        }
+        List<String> argList = args == null ? Collections.emptyList() : args;
+        try (Jedis jedis = jedisSentinelPool.getResource()) {
+            return ScriptUtil.eval(script, keys, argList, jedis::evalsha, jedis::eval);
+        } catch (Exception e) {
+            log.error("eval error, script: {}, keys: {}, args: {}", script, GsonUtil.to(keys), GsonUtil.to(args), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    /**
+     * 按游标分页获取的数据源，每页使用一次连接
+     */
+    private <T> Function<String, ScanResult<T>> pager(String command, String key, BiFunction<Jedis, String, ScanResult<T>> scan) {
+        return cursor -> {
+            try (Jedis jedis = jedisSentinelPool.getResource()) {
+                return scan.apply(jedis, cursor);
+            } catch (Exception e) {
+                log.error("{} error, key: {}, cursor: {}", command, key, cursor, e);
+                throw new RedisCacheException(e);
+            }
+        };
+    }
+
 }
@@ -0,0 +1,282 @@
+package com.dxy.library.cache.redis.sentinel;
+
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisSentinelPool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 哨兵模式的读请求路由，通过哨兵发现从节点并为每个从节点维护连接池
+ * 后台线程定期刷新从节点列表、探测延迟（PING）和复制偏移量（INFO replication），读请求按策略选择节点：
+ * master：只读主节点；prefer-replica：轮询可用的从节点，没有可用从节点时读主节点；nearest：选择延迟最低的节点（包括主节点）
+ * 配置了cache.redis.sentinel.read.max.lag.bytes时，复制偏移量落后主节点超过该值的从节点不参与读取
+ * 延迟和偏移量每个刷新周期更新一次，两次刷新之间的复制延迟不受约束
+ * @author duanxinyuan
+ * 2019/3/20 10:30
+ */
+@Slf4j
+public class SentinelReadRouter {
+
+    private enum Policy {
+        MASTER, PREFER_REPLICA, NEAREST
+    }
+
+    //延迟的平滑系数，新的探测结果占的比例
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    //从节点不可读时probe的返回值
+    private static final long UNAVAILABLE = Long.MIN_VALUE;
+
+    private final JedisSentinelPool masterPool;
+    private final Set<String> sentinels;
+    private final String masterName;
+    private final JedisPoolConfig config;
+    private final int timeout;
+    private final String password;
+    private final int database;
+
+    private final Policy policy;
+    private final long maxLagBytes;
+    private final ScheduledExecutorService refresher;
+
+    //host:port -> 从节点
+    private final Map<String, Replica> replicas = new ConcurrentHashMap<>();
+    //当前可读的从节点，每次刷新后整体替换
+    private volatile List<Replica> readable = new ArrayList<>();
+    //主节点的延迟（纳秒）
+    private volatile long masterLatency = Long.MAX_VALUE;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public SentinelReadRouter(JedisSentinelPool masterPool, Set<String> sentinels, String masterName, JedisPoolConfig config,
+                              int timeout, String password, int database) {
+        this.masterPool = masterPool;
+        this.sentinels = sentinels;
+        this.masterName = masterName;
+        this.config = config;
+        this.timeout = timeout;
+        this.password = password;
+        this.database = database;
+        this.policy = parsePolicy(ConfigUtils.getConfig("cache.redis.sentinel.read.policy"));
+        this.maxLagBytes = NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.sentinel.read.max.lag.bytes"), 0);
+        if (policy == Policy.MASTER) {
+            refresher = null;
+            return;
+        }
+        long refreshMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.sentinel.read.refresh.millis"), 1000), 100);
+        refresher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("cache-sentinel-read-refresher-%d").setDaemon(true).build());
+        refresh();
+        refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取读连接，按策略选择从节点，没有可用从节点或从节点连接失败时返回主节点连接
+     */
+    public Jedis getResource() {
+        if (policy == Policy.MASTER) {
+            return masterPool.getResource();
+        }
+        List<Replica> candidates = readable;
+        if (candidates.isEmpty()) {
+            return masterPool.getResource();
+        }
+        Replica replica;
+        if (policy == Policy.NEAREST) {
+            replica = null;
+            for (Replica candidate : candidates) {
+                if (replica == null || candidate.latency < replica.latency) {
+                    replica = candidate;
+                }
+            }
+            if (replica.latency > masterLatency) {
+                return masterPool.getResource();
+            }
+        } else {
+            replica = candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+        }
+        try {
+            return replica.pool.getResource();
+        } catch (Exception e) {
+            //从节点不可用时立即摘除，等待下次刷新恢复
+            log.warn("redis replica unavailable, read from master, replica: {}", replica.address, e);
+            replica.available = false;
+            removeReadable(replica);
+            return masterPool.getResource();
+        }
+    }
+
+    private synchronized void removeReadable(Replica replica) {
+        List<Replica> candidates = new ArrayList<>(readable);
+        if (candidates.remove(replica)) {
+            readable = candidates;
+        }
+    }
+
+    /**
+     * 刷新从节点列表、延迟和复制偏移量
+     */
+    private void refresh() {
+        try {
+            List<Map<String, String>> slaves = sentinelSlaves();
+            if (slaves == null) {
+                return;
+            }
+            HostAndPort master = masterPool.getCurrentHostMaster();
+            Set<String> addresses = new HashSet<>();
+            for (Map<String, String> slave : slaves) {
+                String flags = StringUtils.defaultString(slave.get("flags"));
+                if (flags.contains("s_down") || flags.contains("o_down") || flags.contains("disconnected")) {
+                    continue;
+                }
+                String address = slave.get("ip") + ":" + slave.get("port");
+                //故障转移后原主节点会作为从节点出现，新主节点不作为从节点
+                if (master != null && address.equals(master.getHost() + ":" + master.getPort())) {
+                    continue;
+                }
+                addresses.add(address);
+                replicas.computeIfAbsent(address, key -> new Replica(key, new JedisPool(config, slave.get("ip"),
+                        NumberUtils.toInt(slave.get("port")), timeout, password, database)));
+            }
+            replicas.entrySet().removeIf(entry -> {
+                if (!addresses.contains(entry.getKey())) {
+                    log.info("redis replica removed, replica: {}", entry.getKey());
+                    entry.getValue().pool.destroy();
+                    return true;
+                }
+                return false;
+            });
+
+            //先取从节点偏移量再取主节点偏移量，期间主节点的写入只会使计算出的延迟偏大，不会把落后的从节点误判为可读
+            Map<Replica, Long> offsets = new HashMap<>();
+            for (Replica replica : replicas.values()) {
+                long offset = probe(replica);
+                if (offset != UNAVAILABLE) {
+                    offsets.put(replica, offset);
+                }
+            }
+            long masterOffset = -1;
+            try (Jedis jedis = masterPool.getResource()) {
+                long start = System.nanoTime();
+                String info = jedis.info("replication");
+                masterLatency = smooth(masterLatency, System.nanoTime() - start);
+                masterOffset = NumberUtils.toLong(infoField(info, "master_repl_offset"), -1);
+            } catch (Exception e) {
+                log.error("redis master probe error", e);
+            }
+            List<Replica> candidates = new ArrayList<>();
+            for (Map.Entry<Replica, Long> entry : offsets.entrySet()) {
+                Replica replica = entry.getKey();
+                long offset = entry.getValue();
+                //主节点偏移量未知时无法判断延迟，不读从节点
+                if (maxLagBytes > 0 && (masterOffset < 0 || offset < 0 || masterOffset - offset > maxLagBytes)) {
+                    replica.available = false;
+                    continue;
+                }
+                if (!replica.available) {
+                    log.info("redis replica available, replica: {}", replica.address);
+                }
+                replica.available = true;
+                candidates.add(replica);
+            }
+            synchronized (this) {
+                readable = candidates;
+            }
+        } catch (Exception e) {
+            log.error("redis replica refresh error", e);
+        }
+    }
+
+    /**
+     * 探测从节点的延迟和复制状态，返回从节点的复制偏移量（未知时为-1），与主节点断开或探测失败时返回UNAVAILABLE
+     */
+    private long probe(Replica replica) {
+        try (Jedis jedis = replica.pool.getResource()) {
+            long start = System.nanoTime();
+            String info = jedis.info("replication");
+            replica.latency = smooth(replica.latency, System.nanoTime() - start);
+            if (!"up".equals(infoField(info, "master_link_status"))) {
+                replica.available = false;
+                return UNAVAILABLE;
+            }
+            return NumberUtils.toLong(infoField(info, "slave_repl_offset"), -1);
+        } catch (Exception e) {
+            log.error("redis replica probe error, replica: {}", replica.address, e);
+            replica.available = false;
+            return UNAVAILABLE;
+        }
+    }
+
+    /**
+     * 依次询问哨兵，返回第一个成功的结果
+     */
+    private List<Map<String, String>> sentinelSlaves() {
+        for (String sentinel : sentinels) {
+            HostAndPort hostAndPort = HostAndPort.parseString(sentinel.trim());
+            try (Jedis jedis = new Jedis(hostAndPort.getHost(), hostAndPort.getPort(), timeout)) {
+                return jedis.sentinelSlaves(masterName);
+            } catch (Exception e) {
+                log.warn("redis sentinel slaves error, sentinel: {}", sentinel, e);
+            }
+        }
+        log.error("redis sentinel slaves error, all sentinels unavailable");
+        return null;
+    }
+
+    private static long smooth(long latency, long sample) {
+        return latency == Long.MAX_VALUE ? sample : (long) (latency * (1 - LATENCY_WEIGHT) + sample * LATENCY_WEIGHT);
+    }
+
+    private static String infoField(String info, String name) {
+        if (info == null) {
+            return null;
+        }
+        for (String line : info.split("\r?\n")) {
+            if (line.startsWith(name + ":")) {
+                return line.substring(name.length() + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private static Policy parsePolicy(String value) {
+        if ("prefer-replica".equalsIgnoreCase(value)) {
+            return Policy.PREFER_REPLICA;
+        }
+        if ("nearest".equalsIgnoreCase(value)) {
+            return Policy.NEAREST;
+        }
+        return Policy.MASTER;
+    }
+
+    private static class Replica {
+        private final String address;
+        private final JedisPool pool;
+        //平滑后的延迟（纳秒）
+        private volatile long latency = Long.MAX_VALUE;
+        private volatile boolean available = true;
+
+        Replica(String address, JedisPool pool) {
+            this.address = address;
+            this.pool = pool;
+        }
+    }
+
+}
@@ -1,10 +1,19 @@
 package com.dxy.library.cache.redis.sharded;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.gson.reflect.TypeToken;
 import com.dxy.library.cache.exception.RedisCacheException;
 import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.WriteResult;
 import com.dxy.library.cache.redis.util.BitHashUtil;
+import com.dxy.library.cache.redis.util.BitOpUtil;
+import com.dxy.library.cache.redis.util.HllUtil;
+import com.dxy.library.cache.redis.util.ParallelUtil;
+import com.dxy.library.cache.redis.util.PatternDeleteUtil;
+import com.dxy.library.cache.redis.util.ScanIterator;
+import com.dxy.library.cache.redis.util.ScriptUtil;
+import com.dxy.library.cache.redis.util.UnlinkUtil;
 import com.dxy.library.json.gson.GsonUtil;
 import com.dxy.library.util.common.ListUtils;
 import com.dxy.library.util.common.config.ConfigUtils;
@@ -13,8 +22,13 @@ import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import redis.clients.jedis.*;
+import redis.clients.util.SafeEncoder;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * Redis分片模式缓存器
@@ -86,6 +100,20 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public void mset(Map<String, String> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            pipelined(jedis, values.keySet().toArray(new String[0]), (pipeline, key) ->
+                    seconds > 0 ? pipeline.setex(key, seconds, values.get(key)) : pipeline.set(key, values.get(key)));
+        } catch (Exception e) {
+            log.error("mset error, keys: {}, seconds: {}", GsonUtil.to(values.keySet()), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public <T> Long setnx(String key, T value) {
         return setnx(key, value, 0);
@@ -157,6 +185,25 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public List<String> mget(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            //ShardedJedis不支持mget，按分片拆分后每个分片使用一个管道并行获取
+            Map<String, String> values = pipelined(jedis, keys, Pipeline::get);
+            List<String> result = new ArrayList<>(keys.length);
+            for (String key : keys) {
+                result.add(values.get(key));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("mget error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long incr(String key, Integer value, int seconds) {
         if (StringUtils.isEmpty(key) || value == null) {
@@ -211,6 +258,19 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public Map<String, WriteResult> incr(Map<String, Long> deltas) {
+        Map<String, WriteResult> results = new HashMap<>();
+        if (deltas == null || deltas.isEmpty()) {
+            return results;
+        }
+        //field为null表示incrBy
+        Map<String, Map<String, Long>> increments = new HashMap<>(deltas.size());
+        deltas.forEach((key, value) -> increments.put(key, Collections.singletonMap(null, value)));
+        increment("incr", increments).forEach((key, fields) -> results.put(key, fields.get(null)));
+        return results;
+    }
+
     @Override
     public Long expire(String key, int seconds) {
         if (StringUtils.isEmpty(key) || seconds < 0) {
@@ -224,6 +284,19 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public void expire(int seconds, String... keys) {
+        if (keys == null || keys.length == 0 || seconds < 0) {
+            return;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            pipelined(jedis, keys, (pipeline, key) -> pipeline.expire(key, seconds));
+        } catch (Exception e) {
+            log.error("expire error, keys: {}, seconds: {}", GsonUtil.to(keys), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long persist(String key) {
         if (StringUtils.isEmpty(key)) {
@@ -250,6 +323,24 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public List<Boolean> exist(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Map<String, Boolean> exists = pipelined(jedis, keys, Pipeline::exists);
+            List<Boolean> result = new ArrayList<>(keys.length);
+            for (String key : keys) {
+                result.add(exists.get(key));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("exists error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long del(String key) {
         if (StringUtils.isEmpty(key)) {
@@ -268,8 +359,85 @@ public class RedisShardedCache implements IRedis {
         if (keys == null || keys.length == 0) {
             return;
         }
-        for (String key : keys) {
-            jedisPool.getResource().del(key);
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            pipelined(jedis, keys, Pipeline::del);
+        } catch (Exception e) {
+            log.error("del error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long unlink(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return UnlinkUtil.unlink(jedis.getShard(key), Collections.singletonList(key));
+        } catch (Exception e) {
+            log.error("unlink error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long unlink(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Map<Jedis, List<String>> shardKeys = new IdentityHashMap<>();
+            for (String key : keys) {
+                shardKeys.computeIfAbsent(jedis.getShard(key), shard -> new ArrayList<>()).add(key);
+            }
+            List<Callable<Long>> tasks = new ArrayList<>(shardKeys.size());
+            shardKeys.forEach((shard, keyList) -> tasks.add(() -> UnlinkUtil.unlink(shard, keyList)));
+            long count = 0;
+            for (Long shardCount : ParallelUtil.invokeAll(tasks)) {
+                count += shardCount;
+            }
+            return count;
+        } catch (Exception e) {
+            log.error("unlink error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Iterator<String> scanKeys(String pattern) {
+        ScanParams params = new ScanParams().match(StringUtils.defaultIfEmpty(pattern, "*")).count(ScanIterator.PAGE_SIZE);
+        int shardCount;
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            shardCount = jedis.getAllShards().size();
+        }
+        List<Function<String, ScanResult<String>>> sources = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int shardIndex = i;
+            //分片顺序与配置的节点顺序一致
+            sources.add(pager("scan", pattern, (jedis, cursor) -> Iterables.get(jedis.getAllShards(), shardIndex).scan(cursor, params)));
+        }
+        return new ScanIterator<>(sources);
+    }
+
+    @Override
+    public Long delByPattern(String pattern, LongConsumer progress) {
+        if (StringUtils.isEmpty(pattern)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            LongConsumer total = PatternDeleteUtil.total(progress);
+            List<Callable<Long>> tasks = new ArrayList<>();
+            for (Jedis shard : jedis.getAllShards()) {
+                tasks.add(() -> PatternDeleteUtil.delete(shard, pattern, keys -> Lists.partition(keys, UnlinkUtil.UNLINK_BATCH_SIZE), total));
+            }
+            long count = 0;
+            for (Long shardCount : ParallelUtil.invokeAll(tasks)) {
+                count += shardCount;
+            }
+            return count;
+        } catch (Exception e) {
+            log.error("delByPattern error, pattern: {}", pattern, e);
+            throw new RedisCacheException(e);
         }
     }
 
@@ -467,6 +635,14 @@ public class RedisShardedCache implements IRedis {
         return lrange(key, pageNo * pageSize, (pageNo + 1) * pageSize, c);
     }
 
+    @Override
+    public Iterator<String> lrangeStream(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return new ScanIterator<>(ScanIterator.range((start, end) -> lrange(key, start, end)));
+    }
+
     @Override
     public String lindex(String key, int index) {
         if (StringUtils.isEmpty(key) || index < 0) {
@@ -516,12 +692,8 @@ public class RedisShardedCache implements IRedis {
         if (StringUtils.isEmpty(key)) {
             return;
         }
-        Long llen = llen(key);
-        if (llen != null && llen > 0) {
-            for (long i = 0; i < llen; i++) {
-                lpop(key);
-            }
-        }
+        //直接删除整个List，大List由unlink在后台释放内存
+        unlink(key);
     }
 
     @Override
@@ -663,6 +835,215 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public Iterator<String> sscan(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(ScanIterator.PAGE_SIZE);
+        return new ScanIterator<>(pager("sscan", key, (jedis, cursor) -> jedis.sscan(key, cursor, params)));
+    }
+
+    @Override
+    public Long zadd(String key, double score, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zadd(key, score, member);
+        } catch (Exception e) {
+            log.error("zadd error, key: {}, score: {}, member: {}", key, score, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        if (StringUtils.isEmpty(key) || scoreMembers == null || scoreMembers.isEmpty()) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zadd(key, scoreMembers);
+        } catch (Exception e) {
+            log.error("zadd error, key: {}, scoreMembers: {}", key, GsonUtil.to(scoreMembers), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Double zincrby(String key, double increment, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zincrby(key, increment, member);
+        } catch (Exception e) {
+            log.error("zincrby error, key: {}, increment: {}, member: {}", key, increment, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Double> zincrby(String key, Map<String, Double> increments) {
+        if (StringUtils.isEmpty(key) || increments == null || increments.isEmpty()) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.getShard(key).pipelined();
+            Map<String, Response<Double>> responses = new LinkedHashMap<>();
+            increments.forEach((member, increment) -> responses.put(member, pipeline.zincrby(key, increment, member)));
+            pipeline.sync();
+            Map<String, Double> scores = new LinkedHashMap<>();
+            responses.forEach((member, response) -> scores.put(member, response.get()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zincrby error, key: {}, increments: {}", key, GsonUtil.to(increments), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Double zscore(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zscore(key, member);
+        } catch (Exception e) {
+            log.error("zscore error, key: {}, member: {}", key, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public List<Double> zscore(String key, String... members) {
+        if (StringUtils.isEmpty(key) || members == null || members.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.getShard(key).pipelined();
+            List<Response<Double>> responses = new ArrayList<>(members.length);
+            for (String member : members) {
+                responses.add(pipeline.zscore(key, member));
+            }
+            pipeline.sync();
+            List<Double> scores = new ArrayList<>(members.length);
+            responses.forEach(response -> scores.add(response.get()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zscore error, key: {}, members: {}", key, GsonUtil.to(members), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zrank(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zrank(key, member);
+        } catch (Exception e) {
+            log.error("zrank error, key: {}, member: {}", key, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zrevrank(String key, String member) {
+        if (StringUtils.isEmpty(key) || member == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zrevrank(key, member);
+        } catch (Exception e) {
+            log.error("zrevrank error, key: {}, member: {}", key, member, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Set<String> zrange(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zrange(key, start, end);
+        } catch (Exception e) {
+            log.error("zrange error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Set<String> zrevrange(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zrevrange(key, start, end);
+        } catch (Exception e) {
+            log.error("zrevrange error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Double> zrangeWithScores(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Map<String, Double> scores = new LinkedHashMap<>();
+            jedis.zrangeWithScores(key, start, end).forEach(tuple -> scores.put(tuple.getElement(), tuple.getScore()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zrangeWithScores error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Double> zrevrangeWithScores(String key, long start, long end) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Map<String, Double> scores = new LinkedHashMap<>();
+            jedis.zrevrangeWithScores(key, start, end).forEach(tuple -> scores.put(tuple.getElement(), tuple.getScore()));
+            return scores;
+        } catch (Exception e) {
+            log.error("zrevrangeWithScores error, key: {}, start: {}, end: {}", key, start, end, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zrem(String key, String... members) {
+        if (StringUtils.isEmpty(key) || members == null || members.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zrem(key, members);
+        } catch (Exception e) {
+            log.error("zrem error, key: {}, members: {}", key, GsonUtil.to(members), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long zcard(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.zcard(key);
+        } catch (Exception e) {
+            log.error("zcard error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public <T> Long hset(String key, String field, T value) {
         return hset(key, field, value, 0);
@@ -718,6 +1099,25 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public void hmset(Map<String, Map<String, String>> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            pipelined(jedis, values.keySet().toArray(new String[0]), (pipeline, key) -> {
+                Response<String> response = pipeline.hmset(key, values.get(key));
+                if (seconds > 0) {
+                    pipeline.expire(key, seconds);
+                }
+                return response;
+            });
+        } catch (Exception e) {
+            log.error("hmset error, keys: {}, seconds: {}", GsonUtil.to(values.keySet()), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public String hget(String key, String field) {
         if (field == null || StringUtils.isEmpty(key)) {
@@ -769,6 +1169,14 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public Map<String, Map<String, WriteResult>> hincr(Map<String, Map<String, Long>> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return new HashMap<>();
+        }
+        return increment("hincr", deltas);
+    }
+
     @Override
     public Map<String, String> hgetAll(String key) {
         if (StringUtils.isEmpty(key)) {
@@ -782,6 +1190,72 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public List<byte[]> hmgetBytes(String key, String... fields) {
+        if (StringUtils.isEmpty(key) || fields == null || fields.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.hmget(SafeEncoder.encode(key), SafeEncoder.encodeMany(fields));
+        } catch (Exception e) {
+            log.error("hmgetBytes error, key: {}, fields: {}", key, GsonUtil.to(fields), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Map<String, byte[]> hgetAllBytes(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Map<byte[], byte[]> values = jedis.hgetAll(SafeEncoder.encode(key));
+            Map<String, byte[]> result = new HashMap<>(values.size());
+            values.forEach((field, value) -> result.put(SafeEncoder.encode(field), value));
+            return result;
+        } catch (Exception e) {
+            log.error("hgetAllBytes error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public void hsetBytes(String key, Map<String, byte[]> values) {
+        if (StringUtils.isEmpty(key) || values == null || values.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> sets = new HashMap<>();
+        List<byte[]> dels = new ArrayList<>();
+        values.forEach((field, value) -> {
+            if (value == null) {
+                dels.add(SafeEncoder.encode(field));
+            } else {
+                sets.put(SafeEncoder.encode(field), value);
+            }
+        });
+        byte[] keyBytes = SafeEncoder.encode(key);
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            if (!sets.isEmpty()) {
+                jedis.hmset(keyBytes, sets);
+            }
+            if (!dels.isEmpty()) {
+                jedis.hdel(keyBytes, dels.toArray(new byte[0][]));
+            }
+        } catch (Exception e) {
+            log.error("hsetBytes error, key: {}, fields: {}", key, GsonUtil.to(values.keySet()), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> hscan(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        ScanParams params = new ScanParams().count(ScanIterator.PAGE_SIZE);
+        return new ScanIterator<>(pager("hscan", key, (jedis, cursor) -> jedis.hscan(key, cursor, params)));
+    }
+
     @Override
     public Long pfadd(String key, String value) {
         if (StringUtils.isEmpty(key) || value == null) {
@@ -825,6 +1299,50 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public Long pfcount(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Set<Jedis> shards = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String key : keys) {
+                shards.add(jedis.getShard(key));
+            }
+            if (shards.size() == 1) {
+                return shards.iterator().next().pfcount(keys);
+            }
+            Map<String, byte[]> values = pipelined(jedis, keys, (pipeline, key) -> pipeline.get(SafeEncoder.encode(key)));
+            byte[] scratchKey = HllUtil.scratchKey();
+            return (Long) jedis.getShard(scratchKey).eval(HllUtil.PFCOUNT_SCRIPT, Collections.singletonList(scratchKey), HllUtil.values(values.values()));
+        } catch (Exception e) {
+            log.error("pfcount error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public void pfadd(Map<String, Collection<String>> values, int seconds) {
+        if (values == null || values.isEmpty() || seconds < 0) {
+            return;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            pipelined(jedis, values.keySet().toArray(new String[0]), (pipeline, key) -> {
+                Response<Long> response = null;
+                for (String[] batch : HllUtil.partition(values.get(key))) {
+                    response = pipeline.pfadd(key, batch);
+                }
+                if (seconds > 0) {
+                    pipeline.expire(key, seconds);
+                }
+                return response;
+            });
+        } catch (Exception e) {
+            log.error("pfadd error, keys: {}, seconds: {}", GsonUtil.to(values.keySet()), seconds, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public boolean setbit(String key, long offset, boolean value) {
         if (StringUtils.isEmpty(key)) {
@@ -890,10 +1408,129 @@ public class RedisShardedCache implements IRedis {
         }
     }
 
+    @Override
+    public List<Long> bitcount(String... keys) {
+        if (keys == null || keys.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Map<String, Long> counts = pipelined(jedis, keys, Pipeline::bitcount);
+            List<Long> list = new ArrayList<>(keys.length);
+            for (String key : keys) {
+                list.add(counts.get(key));
+            }
+            return list;
+        } catch (Exception e) {
+            log.error("bitcount error, keys: {}", GsonUtil.to(keys), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public List<Long> bitcountChunks(String key, long chunkBytes, long fromChunk, int chunks) {
+        if (StringUtils.isEmpty(key) || chunkBytes <= 0 || fromChunk < 0 || chunks <= 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.getShard(key).pipelined();
+            List<Response<Long>> responses = new ArrayList<>(chunks);
+            for (long chunk = fromChunk; chunk < fromChunk + chunks; chunk++) {
+                responses.add(pipeline.bitcount(key, chunk * chunkBytes, (chunk + 1) * chunkBytes - 1));
+            }
+            pipeline.sync();
+            List<Long> counts = new ArrayList<>(chunks);
+            responses.forEach(response -> counts.add(response.get()));
+            return counts;
+        } catch (Exception e) {
+            log.error("bitcountChunks error, key: {}, chunkBytes: {}, fromChunk: {}, chunks: {}", key, chunkBytes, fromChunk, chunks, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Long strlen(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.strlen(key);
+        } catch (Exception e) {
+            log.error("strlen error, key: {}", key, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
     @Override
     public Long bitop(BitOP op, String destKey, String... srcKeys) {
-        //ShardedJedis不支持bitop操作
-        throw new RedisCacheException("sharded mode not support bitop");
+        return bitop(op, destKey, srcKeys, false);
+    }
+
+    @Override
+    public Long bitopcount(BitOP op, String destKey, String... srcKeys) {
+        return bitop(op, destKey, srcKeys, true);
+    }
+
+    /**
+     * ShardedJedis不支持bitop操作，所有key在同一个分片上时在该分片上执行BITOP，否则在客户端分段计算
+     * @param count true返回结果中值为1的位的个数，false返回结果的长度
+     */
+    private Long bitop(BitOP op, String destKey, String[] srcKeys, boolean count) {
+        if (op == null || StringUtils.isEmpty(destKey) || srcKeys == null || srcKeys.length == 0) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Jedis shard = jedis.getShard(destKey);
+            boolean sameShard = true;
+            for (String srcKey : srcKeys) {
+                sameShard &= jedis.getShard(srcKey) == shard;
+            }
+            if (sameShard) {
+                Pipeline pipeline = shard.pipelined();
+                Response<Long> length = pipeline.bitop(op, destKey, srcKeys);
+                Response<Long> bitcount = count ? pipeline.bitcount(destKey) : null;
+                pipeline.sync();
+                return count ? bitcount.get() : length.get();
+            }
+        } catch (Exception e) {
+            log.error("bitop error, operate: {}, destKey: {}, srcKeys: {}", op.toString(), destKey, GsonUtil.to(srcKeys), e);
+            throw new RedisCacheException(e);
+        }
+        try {
+            //分段读写并行执行，每次调用单独获取连接
+            BitOpUtil.Result result = BitOpUtil.bitop(new BitOpUtil.RangeCommands() {
+                @Override
+                public Long strlen(byte[] key) {
+                    try (ShardedJedis jedis = jedisPool.getResource()) {
+                        return jedis.strlen(key);
+                    }
+                }
+
+                @Override
+                public byte[] getrange(byte[] key, long startOffset, long endOffset) {
+                    try (ShardedJedis jedis = jedisPool.getResource()) {
+                        return jedis.getrange(key, startOffset, endOffset);
+                    }
+                }
+
+                @Override
+                public Long setrange(byte[] key, long offset, byte[] value) {
+                    try (ShardedJedis jedis = jedisPool.getResource()) {
+                        return jedis.setrange(key, offset, value);
+                    }
+                }
+
+                @Override
+                public Long del(byte[] key) {
+                    try (ShardedJedis jedis = jedisPool.getResource()) {
+                        return jedis.del(key);
+                    }
+                }
+            }, op, destKey, srcKeys);
+            return count ? result.getBitcount() : result.getLength();
+        } catch (Exception e) {
+            log.error("bitop error, operate: {}, destKey: {}, srcKeys: {}", op.toString(), destKey, GsonUtil.to(srcKeys), e);
+            throw e instanceof RedisCacheException ? (RedisCacheException) e : new RedisCacheException(e);
+        }
     }
 
     @Override
@@ -1003,4 +1640,141 @@ public class RedisShardedCache implements IRedis {
             throw new RedisCacheException(e);
         }
     }
+
+    @Override
+    public Long publish(String channel, String message) {
+        if (StringUtils.isEmpty(channel) || message == null) {
+            return null;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            return jedis.getShard(channel).publish(channel, message);
+        } catch (Exception e) {
+            log.error("publish error, channel: {}, message: {}", channel, message, e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public void subscribe(JedisPubSub listener, String... channels) {
+        if (listener == null || channels == null || channels.length == 0) {
+            return;
+        }
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            jedis.getShard(channels[0]).subscribe(listener, channels);
+        } catch (Exception e) {
+            log.error("subscribe error, channels: {}", GsonUtil.to(channels), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @Override
+    public Object eval(String script, List<String> keys, List<String> args) {
+        if (StringUtils.isEmpty(script) || keys == null || keys.isEmpty()) {
+            return null;
+        }
+        List<String> argList = args == null ? Collections.emptyList() : args;
+        try (ShardedJedis jedis = jedisPool.getResource()) {
+            Jedis shard = jedis.getShard(keys.get(0));
+            return ScriptUtil.eval(script, keys, argList, shard::evalsha, shard::eval);
+        } catch (Exception e) {
+            log.error("eval error, script: {}, keys: {}, args: {}", script, GsonUtil.to(keys), GsonUtil.to(args), e);
+            throw new RedisCacheException(e);
+        }
+    }
+
+    /**
+     * 按分片拆分多Key命令，每个分片使用一个管道，不同分片并行执行，返回key -> 结果
+     */
+    private <R> Map<String, R> pipelined(ShardedJedis jedis, String[] keys, BiFunction<Pipeline, String, Response<R>> command) {
+        Map<Jedis, List<String>> shardKeys = new IdentityHashMap<>();
+        for (String key : keys) {
+            shardKeys.computeIfAbsent(jedis.getShard(key), shard -> new ArrayList<>()).add(key);
+        }
+        List<Callable<Map<String, R>>> tasks = new ArrayList<>(shardKeys.size());
+        shardKeys.forEach((shard, keyList) -> tasks.add(() -> {
+            Pipeline pipeline = shard.pipelined();
+            Map<String, Response<R>> responses = new HashMap<>(keyList.size());
+            for (String key : keyList) {
+                responses.put(key, command.apply(pipeline, key));
+            }
+            pipeline.sync();
+            Map<String, R> results = new HashMap<>(responses.size());
+            responses.forEach((key, response) -> results.put(key, response.get()));
+            return results;
+        }));
+        Map<String, R> results = new HashMap<>(keys.length);
+        ParallelUtil.invokeAll(tasks).forEach(results::putAll);
+        return results;
+    }
+
+    /**
+     * 按分片批量执行incrBy/hincrBy（field为null时执行incrBy），不同分片并行执行，返回key -> (field -> 执行结果)
+     * 某个分片的管道同步失败时只有该分片的命令结果未知，其他分片不受影响
+     */
+    private Map<String, Map<String, WriteResult>> increment(String command, Map<String, Map<String, Long>> deltas) {
+        Map<String, Map<String, WriteResult>> results = new HashMap<>(deltas.size());
+        ShardedJedis jedis;
+        try {
+            jedis = jedisPool.getResource();
+        } catch (Exception e) {
+            log.error("{} error, deltas: {}", command, GsonUtil.to(deltas), e);
+            fill(results, deltas, deltas.keySet(), WriteResult.NOT_SENT);
+            return results;
+        }
+        try {
+            Map<Jedis, List<String>> shardKeys = new IdentityHashMap<>();
+            for (String key : deltas.keySet()) {
+                shardKeys.computeIfAbsent(jedis.getShard(key), shard -> new ArrayList<>()).add(key);
+            }
+            List<Callable<Map<String, Map<String, WriteResult>>>> tasks = new ArrayList<>(shardKeys.size());
+            shardKeys.forEach((shard, keyList) -> tasks.add(() -> {
+                Map<String, Map<String, WriteResult>> shardResults = new HashMap<>(keyList.size());
+                Map<String, Map<String, Response<Long>>> responses = new HashMap<>(keyList.size());
+                try {
+                    Pipeline pipeline = shard.pipelined();
+                    for (String key : keyList) {
+                        deltas.get(key).forEach((field, value) -> responses.computeIfAbsent(key, k -> new HashMap<>())
+                                .put(field, field == null ? pipeline.incrBy(key, value) : pipeline.hincrBy(key, field, value)));
+                    }
+                    pipeline.sync();
+                } catch (Exception e) {
+                    //管道已发送，无法确定哪些命令已执行
+                    log.error("{} error, keys: {}", command, GsonUtil.to(keyList), e);
+                    fill(shardResults, deltas, keyList, WriteResult.UNKNOWN);
+                    return shardResults;
+                }
+                responses.forEach((key, fields) -> fields.forEach((field, response) ->
+                        shardResults.computeIfAbsent(key, k -> new HashMap<>()).put(field, WriteResult.of(response))));
+                return shardResults;
+            }));
+            ParallelUtil.invokeAll(tasks).forEach(results::putAll);
+        } catch (Exception e) {
+            log.error("{} error, deltas: {}", command, GsonUtil.to(deltas), e);
+            fill(results, deltas, deltas.keySet(), WriteResult.UNKNOWN);
+        } finally {
+            jedis.close();
+        }
+        return results;
+    }
+
+    private static void fill(Map<String, Map<String, WriteResult>> results, Map<String, Map<String, Long>> deltas,
+                             Collection<String> keys, WriteResult result) {
+        for (String key : keys) {
+            deltas.get(key).keySet().forEach(field -> results.computeIfAbsent(key, k -> new HashMap<>()).putIfAbsent(field, result));
+        }
+    }
+
+    /**
+     * 按游标分页获取的数据源，每页使用一次连接
+     */
+    private <T> Function<String, ScanResult<T>> pager(String command, String key, BiFunction<ShardedJedis, String, ScanResult<T>> scan) {
+        return cursor -> {
+            try (ShardedJedis jedis = jedisPool.getResource()) {
+                return scan.apply(jedis, cursor);
+            } catch (Exception e) {
+                log.error("{} error, key: {}, cursor: {}", command, key, cursor, e);
+                throw new RedisCacheException(e);
+            }
+        };
+    }
 }
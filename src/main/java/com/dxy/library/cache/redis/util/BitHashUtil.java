@@ -13,7 +13,10 @@ import java.nio.charset.StandardCharsets;
 public class BitHashUtil {
 
     //Redis的Bitmap最大比特位为2的32次方，占用空间512M
-    private static long MAX_BIT_COUNT = (long) Math.pow(2, 32);
+    public static final long MAX_BIT_COUNT = (long) Math.pow(2, 32);
+
+    //固定布局（getBitOffsets）的Hash次数
+    public static final int HASH_FUNCTION_COUNT = 8;
 
     /**
      * 使用Redis的MurmurHash进行多次Hash获取bit的offset值
@@ -21,7 +24,7 @@ public class BitHashUtil {
      * @param value Hash的值
      */
     public static <T> long[] getBitOffsets(T value) {
-        return murmurHash(value, 8, MAX_BIT_COUNT);
+        return murmurHash(value, HASH_FUNCTION_COUNT, MAX_BIT_COUNT);
     }
 
 
@@ -33,6 +36,21 @@ public class BitHashUtil {
      */
     public static <T> long[] murmurHash(T value, int hashFunctionCount, long maxBitCount) {
         long[] offsets = new long[hashFunctionCount];
+        int[] hashes = baseHashes(value);
+        int hash1 = hashes[0];
+        int hash2 = hashes[1];
+        for (int i = 0; i < hashFunctionCount; ++i) {
+            offsets[i] = Math.abs((hash1 + i * hash2) % maxBitCount);
+        }
+        return offsets;
+    }
+
+    /**
+     * 计算offset使用的两个基础Hash值，第i次Hash的offset为：abs((hash1 + i * hash2) % maxBitCount)（int运算溢出）
+     * 用于在Lua脚本中按相同的规则计算offset
+     * @param value Hash的值
+     */
+    public static <T> int[] baseHashes(T value) {
         byte[] bytes;
         if (value instanceof String) {
             bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
@@ -41,10 +59,7 @@ public class BitHashUtil {
         }
         int hash1 = MurmurHash.hash(bytes, 0);
         int hash2 = MurmurHash.hash(bytes, hash1);
-        for (int i = 0; i < hashFunctionCount; ++i) {
-            offsets[i] = Math.abs((hash1 + i * hash2) % maxBitCount);
-        }
-        return offsets;
+        return new int[]{hash1, hash2};
     }
 
 }
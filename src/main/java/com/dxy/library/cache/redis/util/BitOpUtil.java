@@ -0,0 +1,178 @@
+package com.dxy.library.cache.redis.util;
+
+import com.dxy.library.cache.exception.RedisCacheException;
+import com.dxy.library.util.common.config.ConfigUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.BitOP;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * 客户端位运算工具类，用于源key分布在不同分片/节点上、无法执行BITOP的场景
+ * 按固定大小（cache.redis.bitop.chunk.bytes）分段，并行从各分片/节点GETRANGE读取源key的同一段，按long逐字计算后SETRANGE写回
+ * 内存占用为分段大小 *（源key数量 + 1），与Bitmap的大小无关
+ * 结果与BITOP一致：不存在的key视为空字符串，较短的key按0补齐，结果的长度等于最长的源key
+ * @author duanxinyuan
+ * 2019/3/22 10:30
+ */
+public class BitOpUtil {
+
+    //分段大小按8字节对齐，默认64K
+    private static final int CHUNK_BYTES = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.bitop.chunk.bytes"), 65536) / 8 * 8, 8);
+
+    /**
+     * 位运算需要的字符串命令，分片模式下每次调用需要按key路由到对应的分片，并且可以被多个线程并发调用
+     */
+    public interface RangeCommands {
+
+        Long strlen(byte[] key);
+
+        byte[] getrange(byte[] key, long startOffset, long endOffset);
+
+        Long setrange(byte[] key, long offset, byte[] value);
+
+        Long del(byte[] key);
+    }
+
+    /**
+     * 位运算结果
+     */
+    public static class Result {
+        //结果的字节数，与BITOP的返回值一致
+        private final long length;
+        //结果中值为1的位的个数
+        private final long bitcount;
+
+        Result(long length, long bitcount) {
+            this.length = length;
+            this.bitcount = bitcount;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getBitcount() {
+            return bitcount;
+        }
+    }
+
+    /**
+     * 在客户端执行位运算并写入destKey，destKey可以是源key之一
+     */
+    public static Result bitop(RangeCommands commands, BitOP op, String destKey, String... srcKeys) {
+        if (op == BitOP.NOT && srcKeys.length != 1) {
+            throw new RedisCacheException("bitop NOT must be called with a single source key");
+        }
+        byte[] dest = SafeEncoder.encode(destKey);
+        List<byte[]> srcs = new ArrayList<>(srcKeys.length);
+        boolean destIsSource = false;
+        for (String srcKey : srcKeys) {
+            srcs.add(SafeEncoder.encode(srcKey));
+            destIsSource |= srcKey.equals(destKey);
+        }
+
+        List<Callable<Long>> strlenTasks = new ArrayList<>(srcs.size());
+        for (byte[] src : srcs) {
+            strlenTasks.add(() -> commands.strlen(src));
+        }
+        List<Long> lengths = ParallelUtil.invokeAll(strlenTasks);
+        long length = 0;
+        for (Long srcLength : lengths) {
+            length = Math.max(length, srcLength == null ? 0 : srcLength);
+        }
+        //与BITOP一致，结果为空时删除destKey
+        if (length == 0 || !destIsSource) {
+            commands.del(dest);
+        }
+
+        long bitcount = 0;
+        for (long offset = 0; offset < length; offset += CHUNK_BYTES) {
+            int size = (int) Math.min(CHUNK_BYTES, length - offset);
+            long start = offset;
+            List<Callable<byte[]>> tasks = new ArrayList<>(srcs.size());
+            for (int i = 0; i < srcs.size(); i++) {
+                byte[] src = srcs.get(i);
+                Long srcLength = lengths.get(i);
+                //源key在该段已经结束，不需要读取
+                tasks.add(srcLength == null || srcLength <= start ? () -> null : () -> commands.getrange(src, start, start + size - 1));
+            }
+            byte[] chunk = combine(op, ParallelUtil.invokeAll(tasks), size);
+            long chunkCount = bitcount(chunk);
+            bitcount += chunkCount;
+            //destKey已被删除时全0的段不需要写入，最后一段必须写入以保证结果的长度
+            if (destIsSource || chunkCount > 0 || offset + size >= length) {
+                commands.setrange(dest, offset, chunk);
+            }
+        }
+        return new Result(length, bitcount);
+    }
+
+    private static byte[] combine(BitOP op, List<byte[]> values, int size) {
+        byte[] result = pad(values.get(0), size);
+        ByteBuffer resultBuffer = ByteBuffer.wrap(result);
+        int words = size / 8;
+        if (op == BitOP.NOT) {
+            for (int i = 0; i < words; i++) {
+                resultBuffer.putLong(i * 8, ~resultBuffer.getLong(i * 8));
+            }
+            for (int i = words * 8; i < size; i++) {
+                result[i] = (byte) ~result[i];
+            }
+            return result;
+        }
+        for (int j = 1; j < values.size(); j++) {
+            byte[] value = pad(values.get(j), size);
+            ByteBuffer valueBuffer = ByteBuffer.wrap(value);
+            for (int i = 0; i < words; i++) {
+                resultBuffer.putLong(i * 8, apply(op, resultBuffer.getLong(i * 8), valueBuffer.getLong(i * 8)));
+            }
+            for (int i = words * 8; i < size; i++) {
+                result[i] = (byte) apply(op, result[i], value[i]);
+            }
+        }
+        return result;
+    }
+
+    private static long apply(BitOP op, long a, long b) {
+        switch (op) {
+            case AND:
+                return a & b;
+            case OR:
+                return a | b;
+            case XOR:
+                return a ^ b;
+            default:
+                throw new RedisCacheException("unsupported bitop: " + op);
+        }
+    }
+
+    /**
+     * 较短（或不存在）的源key按0补齐
+     */
+    private static byte[] pad(byte[] value, int size) {
+        if (value == null) {
+            return new byte[size];
+        }
+        return value.length == size ? value : Arrays.copyOf(value, size);
+    }
+
+    private static long bitcount(byte[] chunk) {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        int words = chunk.length / 8;
+        long count = 0;
+        for (int i = 0; i < words; i++) {
+            count += Long.bitCount(buffer.getLong(i * 8));
+        }
+        for (int i = words * 8; i < chunk.length; i++) {
+            count += Integer.bitCount(chunk[i] & 0xFF);
+        }
+        return count;
+    }
+
+}
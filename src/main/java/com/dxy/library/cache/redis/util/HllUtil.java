@@ -0,0 +1,58 @@
+package com.dxy.library.cache.redis.util;
+
+import com.google.common.collect.Iterables;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * HyperLogLog工具类
+ * 分片/集群模式下多个key不在同一节点时，先读取各节点上hyperloglog的原始值，再写入一个节点的临时key上计算合并之后的数量
+ * @author duanxinyuan
+ * 2019/3/18 10:30
+ */
+public class HllUtil {
+
+    //单个PFADD命令的最大元素数量
+    public static final int PFADD_BATCH_SIZE = 1000;
+
+    //KEYS[1]为临时key的前缀（包含hash tag，临时key与其在同一slot），ARGV为hyperloglog的原始值，计算完成后删除临时key
+    //PFCOUNT失败（如原始值不是合法的hyperloglog）时也先删除临时key再返回错误，临时key同时设置过期时间兜底
+    public static final byte[] PFCOUNT_SCRIPT = SafeEncoder.encode("if #ARGV == 0 then return 0 end "
+            + "local keys = {} "
+            + "for i, value in ipairs(ARGV) do keys[i] = KEYS[1] .. ':' .. i redis.call('SET', keys[i], value, 'PX', 60000) end "
+            + "local count = redis.pcall('PFCOUNT', unpack(keys)) "
+            + "redis.call('DEL', unpack(keys)) "
+            + "return count");
+
+    /**
+     * 临时key的前缀，使用hash tag保证脚本中创建的所有临时key在同一slot
+     */
+    public static byte[] scratchKey() {
+        return SafeEncoder.encode("{pfcount:tmp:" + UUID.randomUUID().toString() + "}");
+    }
+
+    /**
+     * 过滤不存在的key，返回hyperloglog的原始值
+     */
+    public static List<byte[]> values(Collection<byte[]> values) {
+        List<byte[]> list = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            if (value != null) {
+                list.add(value);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 按PFADD_BATCH_SIZE拆分元素
+     */
+    public static Iterable<String[]> partition(Collection<String> values) {
+        return Iterables.transform(Iterables.partition(values, PFADD_BATCH_SIZE), batch -> batch.toArray(new String[0]));
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.dxy.library.cache.redis.util;
+
+import com.dxy.library.cache.exception.RedisCacheException;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并行执行工具类，用于向多个节点/分片并行发送请求
+ * 线程池满时由调用线程执行，嵌套调用也不会死锁
+ * @author duanxinyuan
+ * 2019/3/7 15:10
+ */
+public class ParallelUtil {
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        int threads = NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.parallel.threads"), 16);
+        EXECUTOR = new ThreadPoolExecutor(0, Math.max(threads, 1), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("cache-redis-parallel-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 并行执行所有任务，返回结果与任务顺序一致，任一任务失败时抛出RedisCacheException
+     */
+    public static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        if (tasks == null || tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (tasks.size() == 1) {
+            return Collections.singletonList(call(tasks.get(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        //第一个任务由调用线程执行，减少一次线程切换
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(EXECUTOR.submit(tasks.get(i)));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        results.add(call(tasks.get(0)));
+        for (Future<T> future : futures) {
+            results.add(get(future));
+        }
+        return results;
+    }
+
+    /**
+     * 异步执行任务，线程池满时由调用线程执行
+     */
+    public static <T> Future<T> submit(Callable<T> task) {
+        return EXECUTOR.submit(task);
+    }
+
+    /**
+     * 等待异步任务执行完成，任务失败时抛出RedisCacheException
+     */
+    public static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCacheException(e);
+        } catch (ExecutionException e) {
+            throw wrap(e.getCause());
+        }
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw wrap(e);
+        }
+    }
+
+    private static RedisCacheException wrap(Throwable e) {
+        if (e instanceof RedisCacheException) {
+            return (RedisCacheException) e;
+        }
+        return new RedisCacheException(e);
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.dxy.library.cache.redis.util;
+
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * 按匹配模式删除Key的工具类，在单个节点上SCAN匹配的Key，每批Key使用管道UNLINK，按节点限速
+ * @author duanxinyuan
+ * 2019/3/9 11:20
+ */
+@Slf4j
+public class PatternDeleteUtil {
+
+    //SCAN的COUNT参数，即每批扫描的Key数量
+    private static final int SCAN_COUNT = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.del.pattern.scan.count"), 5000), 1);
+
+    //每个节点每秒最多删除的Key数量，小于等于0表示不限速
+    private static final int KEYS_PER_SECOND = NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.del.pattern.keys.per.second"), 50000);
+
+    /**
+     * 在一个节点上删除匹配的Key，返回删除的Key数量
+     * @param grouper 将一批Key拆分为多组，每组Key使用一条UNLINK命令（集群模式下每组Key必须在同一个slot上）
+     * @param progress 每删除一批Key后回调该批删除的数量
+     */
+    public static long delete(Jedis jedis, String pattern, Function<List<String>, Collection<List<String>>> grouper, LongConsumer progress) {
+        long start = System.currentTimeMillis();
+        RateLimiter rateLimiter = KEYS_PER_SECOND > 0 ? RateLimiter.create(KEYS_PER_SECOND) : null;
+        ScanParams params = new ScanParams().match(pattern).count(SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        long count = 0;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            cursor = result.getStringCursor();
+            List<String> keys = result.getResult();
+            if (keys.isEmpty()) {
+                continue;
+            }
+            if (rateLimiter != null) {
+                rateLimiter.acquire(keys.size());
+            }
+            long deleted = UnlinkUtil.unlinkPipelined(jedis, grouper.apply(keys));
+            count += deleted;
+            if (progress != null) {
+                progress.accept(deleted);
+            }
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        log.info("del by pattern finished, node: {}:{}, pattern: {}, count: {}, cost: {}ms",
+                jedis.getClient().getHost(), jedis.getClient().getPort(), pattern, count, System.currentTimeMillis() - start);
+        return count;
+    }
+
+    /**
+     * 汇总所有节点删除的数量，每删除一批Key后回调已删除的总数（可能在多个线程中回调）
+     */
+    public static LongConsumer total(LongConsumer progress) {
+        AtomicLong total = new AtomicLong();
+        return deleted -> {
+            long count = total.addAndGet(deleted);
+            if (progress != null) {
+                progress.accept(count);
+            }
+        };
+    }
+
+}
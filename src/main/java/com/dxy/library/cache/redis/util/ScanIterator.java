@@ -0,0 +1,107 @@
+package com.dxy.library.cache.redis.util;
+
+import com.dxy.library.util.common.config.ConfigUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 游标迭代器，按页从Redis获取数据，每页使用一次连接，遍历过程中不占用连接
+ * 每个数据源（集群的主节点、分片）最多预取一页，内存占用只与页大小和数据源数量有关
+ * 多个数据源时并行预取，轮流返回各数据源的数据
+ * 与SCAN命令一致，遍历期间被修改的数据可能重复返回或不返回
+ * @author duanxinyuan
+ * 2019/3/8 16:10
+ */
+public class ScanIterator<T> implements Iterator<T> {
+
+    //每页获取的数据量（SCAN的COUNT参数）
+    public static final int PAGE_SIZE = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.scan.count"), 1000), 1);
+
+    //数据源：游标 -> 该页数据和下一页的游标，游标为0表示遍历结束
+    private final List<Function<String, ScanResult<T>>> sources;
+    //各数据源正在获取的下一页，为null表示该数据源已遍历结束
+    private final List<Future<ScanResult<T>>> pages;
+    private int sourceIndex;
+    private Iterator<T> current = Collections.emptyIterator();
+
+    public ScanIterator(Function<String, ScanResult<T>> source) {
+        this(Collections.singletonList(source));
+    }
+
+    public ScanIterator(List<Function<String, ScanResult<T>>> sources) {
+        this.sources = sources;
+        this.pages = new ArrayList<>(sources.size());
+    }
+
+    /**
+     * 按偏移量分页的数据源（如LRANGE），游标为下一页的起始位置
+     * @param range 起始位置, 结束位置 -> 数据
+     */
+    public static <T> Function<String, ScanResult<T>> range(BiFunction<Long, Long, List<T>> range) {
+        return cursor -> {
+            long start = Long.parseLong(cursor);
+            List<T> result = range.apply(start, start + PAGE_SIZE - 1);
+            if (result == null) {
+                result = Collections.emptyList();
+            }
+            String next = result.size() < PAGE_SIZE ? ScanParams.SCAN_POINTER_START : String.valueOf(start + PAGE_SIZE);
+            return new ScanResult<>(next, result);
+        };
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (!nextPage()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * 从下一个未结束的数据源取出预取的一页，并开始预取该数据源的下一页，所有数据源都结束时返回false
+     */
+    private boolean nextPage() {
+        if (pages.isEmpty()) {
+            sources.forEach(source -> pages.add(fetch(source, ScanParams.SCAN_POINTER_START)));
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            int index = (sourceIndex + i) % sources.size();
+            Future<ScanResult<T>> page = pages.get(index);
+            if (page == null) {
+                continue;
+            }
+            ScanResult<T> result = ParallelUtil.get(page);
+            String cursor = result.getStringCursor();
+            pages.set(index, ScanParams.SCAN_POINTER_START.equals(cursor) ? null : fetch(sources.get(index), cursor));
+            current = result.getResult().iterator();
+            sourceIndex = index + 1;
+            return true;
+        }
+        return false;
+    }
+
+    private Future<ScanResult<T>> fetch(Function<String, ScanResult<T>> source, String cursor) {
+        return ParallelUtil.submit(() -> source.apply(cursor));
+    }
+
+}
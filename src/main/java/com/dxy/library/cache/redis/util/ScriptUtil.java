@@ -0,0 +1,55 @@
+package com.dxy.library.cache.redis.util;
+
+import com.dxy.library.cache.exception.RedisCacheException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lua脚本执行工具类，优先使用EVALSHA只发送脚本的SHA1，服务端没有缓存该脚本时再使用EVAL发送脚本内容
+ * @author duanxinyuan
+ * 2019/3/11 10:15
+ */
+public class ScriptUtil {
+
+    //脚本 -> SHA1
+    private static final Map<String, String> SHA1S = new ConcurrentHashMap<>();
+
+    /**
+     * 执行Lua脚本
+     * @param evalsha 使用SHA1执行脚本
+     * @param eval 使用脚本内容执行脚本
+     */
+    public static Object eval(String script, List<String> keys, List<String> args, Evaluator evalsha, Evaluator eval) {
+        try {
+            return evalsha.eval(SHA1S.computeIfAbsent(script, ScriptUtil::sha1), keys, args);
+        } catch (JedisNoScriptException e) {
+            //EVAL执行后服务端会缓存脚本，之后的EVALSHA可以执行成功
+            return eval.eval(script, keys, args);
+        }
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sha1 = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sha1.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sha1.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RedisCacheException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Evaluator {
+        Object eval(String script, List<String> keys, List<String> args);
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.dxy.library.cache.redis.util;
+
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisCommands;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 非阻塞删除工具类
+ * 服务端支持UNLINK（Redis 4.0+）时，由Redis在后台线程释放内存；不支持时，大Key按批次分段删除，避免一次DEL阻塞Redis
+ * Jedis 2.9没有UNLINK命令，通过Lua脚本调用
+ * @author duanxinyuan
+ * 2019/3/8 10:20
+ */
+@Slf4j
+public class UnlinkUtil {
+
+    public static final String UNLINK_SCRIPT = "return redis.call('unlink', unpack(KEYS))";
+
+    public static final byte[] UNLINK_SCRIPT_BYTES = SafeEncoder.encode(UNLINK_SCRIPT);
+
+    //单次UNLINK的最大Key数量，不超过Lua的unpack限制
+    public static final int UNLINK_BATCH_SIZE = 1000;
+
+    //分段删除时每批删除的元素数量
+    private static final int CHUNK_SIZE = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.unlink.chunk.size"), 500), 1);
+
+    //服务端是否支持UNLINK，第一次调用失败后不再尝试
+    private static volatile boolean supported = true;
+
+    public static boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * 删除Key，返回删除的Key数量
+     */
+    public static long unlink(Jedis jedis, List<String> keys) {
+        return unlink(jedis, batch -> jedis.eval(UNLINK_SCRIPT, batch, Collections.emptyList()), keys);
+    }
+
+    /**
+     * 删除Key，返回删除的Key数量，keys必须在同一个slot上
+     */
+    public static long unlink(JedisCluster jedisCluster, List<String> keys) {
+        return unlink(jedisCluster, batch -> jedisCluster.eval(UNLINK_SCRIPT, batch, Collections.emptyList()), keys);
+    }
+
+    /**
+     * 使用管道删除多组Key，每组Key一条命令，返回删除的Key数量
+     * 集群模式下每组Key必须在同一个slot上，不支持UNLINK时直接DEL，适用于大量小Key的删除
+     */
+    public static long unlinkPipelined(Jedis jedis, Collection<List<String>> groups) {
+        Pipeline pipeline = jedis.pipelined();
+        for (List<String> group : groups) {
+            if (supported) {
+                List<byte[]> keys = new ArrayList<>(group.size());
+                group.forEach(key -> keys.add(SafeEncoder.encode(key)));
+                pipeline.eval(UNLINK_SCRIPT_BYTES, keys, Collections.emptyList());
+            } else {
+                pipeline.del(group.toArray(new String[0]));
+            }
+        }
+        long count = 0;
+        List<List<String>> unsupportedGroups = new ArrayList<>();
+        Iterator<List<String>> iterator = groups.iterator();
+        for (Object result : pipeline.syncAndReturnAll()) {
+            List<String> group = iterator.next();
+            if (result instanceof JedisDataException) {
+                if (!isUnknownCommand((JedisDataException) result)) {
+                    throw (JedisDataException) result;
+                }
+                supported = false;
+                unsupportedGroups.add(group);
+            } else {
+                count += count(result);
+            }
+        }
+        if (!unsupportedGroups.isEmpty()) {
+            log.warn("redis server does not support unlink, fall back to del");
+            count += unlinkPipelined(jedis, unsupportedGroups);
+        }
+        return count;
+    }
+
+    /**
+     * UNLINK执行结果转换为删除的Key数量
+     */
+    public static long count(Object result) {
+        return result instanceof Long ? (Long) result : 0;
+    }
+
+    /**
+     * 分段删除Key，集合类型每次删除一批元素，最后删除Key本身，返回Key是否存在
+     */
+    public static boolean chunkedDel(JedisCommands commands, String key) {
+        String type = commands.type(key);
+        ScanParams params = new ScanParams().count(CHUNK_SIZE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        switch (type) {
+            case "none":
+                return false;
+            case "hash":
+                do {
+                    ScanResult<Map.Entry<String, String>> result = commands.hscan(key, cursor, params);
+                    cursor = result.getStringCursor();
+                    List<String> fields = new ArrayList<>(result.getResult().size());
+                    result.getResult().forEach(entry -> fields.add(entry.getKey()));
+                    if (!fields.isEmpty()) {
+                        commands.hdel(key, fields.toArray(new String[0]));
+                    }
+                } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+                break;
+            case "set":
+                do {
+                    ScanResult<String> result = commands.sscan(key, cursor, params);
+                    cursor = result.getStringCursor();
+                    if (!result.getResult().isEmpty()) {
+                        commands.srem(key, result.getResult().toArray(new String[0]));
+                    }
+                } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+                break;
+            case "zset":
+                Long removed;
+                do {
+                    removed = commands.zremrangeByRank(key, 0, CHUNK_SIZE - 1);
+                } while (removed != null && removed >= CHUNK_SIZE);
+                break;
+            case "list":
+                Long llen;
+                while ((llen = commands.llen(key)) != null && llen > CHUNK_SIZE) {
+                    commands.ltrim(key, CHUNK_SIZE, -1);
+                }
+                break;
+            default:
+                //String（包括Bitmap）删除只需释放一块内存，直接删除
+                break;
+        }
+        commands.del(key);
+        return true;
+    }
+
+    private static long unlink(JedisCommands commands, Function<List<String>, Object> eval, List<String> keys) {
+        long count = 0;
+        if (supported) {
+            try {
+                for (List<String> batch : Lists.partition(keys, UNLINK_BATCH_SIZE)) {
+                    count += count(eval.apply(batch));
+                }
+                return count;
+            } catch (JedisDataException e) {
+                if (!isUnknownCommand(e)) {
+                    throw e;
+                }
+                supported = false;
+                log.warn("redis server does not support unlink, fall back to chunked delete");
+            }
+        }
+        for (String key : keys) {
+            if (chunkedDel(commands, key)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 是否为命令不存在的异常（Redis 4.0以下执行UNLINK，或2.6以下执行EVAL）
+     */
+    public static boolean isUnknownCommand(Exception e) {
+        String message = StringUtils.lowerCase(e.getMessage());
+        return message != null && (message.contains("unknown redis command") || message.contains("unknown command"));
+    }
+
+}
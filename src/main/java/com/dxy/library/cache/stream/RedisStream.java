@@ -0,0 +1,190 @@
+package com.dxy.library.cache.stream;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis Stream操作（Redis 5.0+），Jedis 2.9没有Stream相关命令，通过Lua脚本执行
+ * 分片/集群模式下按Stream的key路由
+ * @author duanxinyuan
+ * 2019/3/11 14:20
+ */
+public class RedisStream {
+
+    //参数：maxLen（小于等于0不裁剪），然后依次为每条消息的字段数量和字段、值，返回消息ID列表
+    private static final String XADD_SCRIPT = "local ids = {} local i = 2 "
+            + "while i <= #ARGV do "
+            + "local count = tonumber(ARGV[i]) local args = {} "
+            + "if tonumber(ARGV[1]) > 0 then args = {'MAXLEN', '~', ARGV[1]} end "
+            + "args[#args + 1] = '*' "
+            + "for j = i + 1, i + count * 2 do args[#args + 1] = ARGV[j] end "
+            + "ids[#ids + 1] = redis.call('XADD', KEYS[1], unpack(args)) "
+            + "i = i + count * 2 + 1 "
+            + "end return ids";
+
+    //参数：group、startId，消费组已存在时返回0
+    private static final String XGROUP_CREATE_SCRIPT = "local result = redis.pcall('XGROUP', 'CREATE', KEYS[1], ARGV[1], ARGV[2], 'MKSTREAM') "
+            + "if type(result) == 'table' and result.err then "
+            + "if string.find(result.err, 'BUSYGROUP') then return 0 end "
+            + "return redis.error_reply(result.err) end "
+            + "return 1";
+
+    //参数：group、consumer、count，只读取未投递过的消息
+    private static final String XREADGROUP_SCRIPT = "local result = redis.call('XREADGROUP', 'GROUP', ARGV[1], ARGV[2], 'COUNT', ARGV[3], 'STREAMS', KEYS[1], '>') "
+            + "if not result then return {} end "
+            + "return result[1][2]";
+
+    //参数：group、id...
+    private static final String XACK_SCRIPT = "return redis.call('XACK', KEYS[1], ARGV[1], unpack(ARGV, 2))";
+
+    //参数：group、consumer、minIdleMillis、count，转移超时未确认的消息，已被删除的消息直接确认
+    private static final String XCLAIM_SCRIPT = "local pending = redis.call('XPENDING', KEYS[1], ARGV[1], '-', '+', ARGV[4]) "
+            + "local ids = {} "
+            + "for _, entry in ipairs(pending) do if entry[3] >= tonumber(ARGV[3]) then ids[#ids + 1] = entry[1] end end "
+            + "if #ids == 0 then return {} end "
+            + "local claimed = redis.call('XCLAIM', KEYS[1], ARGV[1], ARGV[2], ARGV[3], unpack(ids)) "
+            + "local messages = {} "
+            + "for i, message in ipairs(claimed) do "
+            + "if message then messages[#messages + 1] = message else redis.call('XACK', KEYS[1], ARGV[1], ids[i]) end "
+            + "end return messages";
+
+    private static final String XLEN_SCRIPT = "return redis.call('XLEN', KEYS[1])";
+
+    //单次XACK的最大ID数量，不超过Lua的unpack限制
+    private static final int ACK_BATCH_SIZE = 1000;
+
+    private final IRedis redis;
+
+    public RedisStream(IRedis redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * 添加消息，返回消息ID
+     * @param maxLen Stream的最大长度（近似裁剪），小于等于0不裁剪
+     */
+    public String xadd(String key, Map<String, String> fields, long maxLen) {
+        List<String> ids = xadd(key, Collections.singletonList(fields), maxLen);
+        return ids == null || ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * 批量添加消息，一次请求完成，返回的消息ID与messages顺序一致
+     * @param maxLen Stream的最大长度（近似裁剪），小于等于0不裁剪
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> xadd(String key, List<Map<String, String>> messages, long maxLen) {
+        if (StringUtils.isEmpty(key) || messages == null || messages.isEmpty()) {
+            return null;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(maxLen));
+        for (Map<String, String> fields : messages) {
+            args.add(String.valueOf(fields.size()));
+            fields.forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+        }
+        return (List<String>) redis.eval(XADD_SCRIPT, Collections.singletonList(key), args);
+    }
+
+    /**
+     * 创建消费组，Stream不存在时自动创建，返回false表示消费组已存在
+     * @param startId 开始消费的消息ID，$表示只消费创建之后的消息，0表示从头开始消费
+     */
+    public boolean xgroupCreate(String key, String group, String startId) {
+        if (StringUtils.isEmpty(key) || StringUtils.isEmpty(group)) {
+            return false;
+        }
+        Object result = redis.eval(XGROUP_CREATE_SCRIPT, Collections.singletonList(key), Arrays.asList(group, StringUtils.defaultIfEmpty(startId, "$")));
+        return Long.valueOf(1).equals(result);
+    }
+
+    /**
+     * 以消费组的方式读取最多count条未投递过的消息，读取后消息进入该消费者的待确认列表
+     */
+    public List<StreamMessage> xreadgroup(String key, String group, String consumer, int count) {
+        if (StringUtils.isEmpty(key) || StringUtils.isEmpty(group) || StringUtils.isEmpty(consumer) || count <= 0) {
+            return Collections.emptyList();
+        }
+        Object result = redis.eval(XREADGROUP_SCRIPT, Collections.singletonList(key), Arrays.asList(group, consumer, String.valueOf(count)));
+        return toMessages(result);
+    }
+
+    /**
+     * 批量确认消息，返回确认成功的数量
+     */
+    public long xack(String key, String group, List<String> ids) {
+        if (StringUtils.isEmpty(key) || StringUtils.isEmpty(group) || ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        long count = 0;
+        for (List<String> batch : Lists.partition(ids, ACK_BATCH_SIZE)) {
+            List<String> args = new ArrayList<>(batch.size() + 1);
+            args.add(group);
+            args.addAll(batch);
+            Object result = redis.eval(XACK_SCRIPT, Collections.singletonList(key), args);
+            count += result instanceof Long ? (Long) result : 0;
+        }
+        return count;
+    }
+
+    /**
+     * 将消费组中超过minIdleMillis未确认的消息（最多count条）转移给consumer，用于消费者下线或处理失败后的消息恢复
+     */
+    public List<StreamMessage> xclaim(String key, String group, String consumer, long minIdleMillis, int count) {
+        if (StringUtils.isEmpty(key) || StringUtils.isEmpty(group) || StringUtils.isEmpty(consumer) || count <= 0) {
+            return Collections.emptyList();
+        }
+        Object result = redis.eval(XCLAIM_SCRIPT, Collections.singletonList(key),
+                Arrays.asList(group, consumer, String.valueOf(minIdleMillis), String.valueOf(count)));
+        return toMessages(result);
+    }
+
+    /**
+     * 获取Stream中的消息数量
+     */
+    public Long xlen(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return null;
+        }
+        return (Long) redis.eval(XLEN_SCRIPT, Collections.singletonList(key), Collections.emptyList());
+    }
+
+    /**
+     * 解析消息列表，每条消息的格式为：[id, [field, value, ...]]
+     */
+    @SuppressWarnings("unchecked")
+    private static List<StreamMessage> toMessages(Object result) {
+        if (!(result instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<Object> entries = (List<Object>) result;
+        List<StreamMessage> messages = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            if (!(entry instanceof List)) {
+                continue;
+            }
+            List<Object> message = (List<Object>) entry;
+            Map<String, String> fields = new LinkedHashMap<>();
+            if (message.size() > 1 && message.get(1) instanceof List) {
+                List<Object> values = (List<Object>) message.get(1);
+                for (int i = 0; i + 1 < values.size(); i += 2) {
+                    fields.put((String) values.get(i), (String) values.get(i + 1));
+                }
+            }
+            messages.add(new StreamMessage((String) message.get(0), fields));
+        }
+        return messages;
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.dxy.library.cache.stream;
+
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Stream消费者，一个拉取线程按批读取消息后交给工作线程池处理，处理成功后批量确认
+ * 处理失败（抛出异常）的消息不确认，超过cache.redis.stream.claim.idle.millis后重新投递，即至少投递一次
+ * 正在处理的批次数量不超过工作线程数的2倍，处理不过来时暂停拉取
+ * @author duanxinyuan
+ * 2019/3/11 15:30
+ */
+@Slf4j
+public class StreamConsumer implements Closeable {
+
+    private final RedisStream stream;
+    private final String key;
+    private final String group;
+    private final String consumer;
+    private final Consumer<List<StreamMessage>> handler;
+
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long claimIdleMillis;
+    private final ExecutorService workers;
+    private final Semaphore batches;
+
+    private volatile boolean running;
+    private Thread poller;
+
+    /**
+     * @param handler 消息处理器，每次处理一批消息，抛出异常表示处理失败
+     */
+    public StreamConsumer(RedisStream stream, String key, String group, String consumer, Consumer<List<StreamMessage>> handler) {
+        this.stream = stream;
+        this.key = key;
+        this.group = group;
+        this.consumer = consumer;
+        this.handler = handler;
+        this.batchSize = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.stream.batch.size"), 100), 1);
+        this.pollIntervalMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.stream.poll.interval.millis"), 100), 1);
+        this.claimIdleMillis = NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.stream.claim.idle.millis"), 60000);
+        int threads = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.stream.worker.threads"), 4), 1);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("cache-stream-" + key + "-worker-%d").setDaemon(true).build());
+        this.batches = new Semaphore(threads * 2);
+    }
+
+    /**
+     * 创建消费组（已存在时忽略）并开始消费
+     */
+    public synchronized StreamConsumer start() {
+        if (running) {
+            return this;
+        }
+        stream.xgroupCreate(key, group, "$");
+        running = true;
+        poller = new Thread(this::poll, "cache-stream-" + key + "-poller");
+        poller.setDaemon(true);
+        poller.start();
+        log.info("stream consumer started, key: {}, group: {}, consumer: {}", key, group, consumer);
+        return this;
+    }
+
+    /**
+     * 停止拉取消息，等待已拉取的消息处理完成
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        poller.interrupt();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("stream consumer close timeout, key: {}, group: {}, consumer: {}", key, group, consumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("stream consumer closed, key: {}, group: {}, consumer: {}", key, group, consumer);
+    }
+
+    private void poll() {
+        long lastClaimTime = 0;
+        while (running) {
+            try {
+                List<StreamMessage> messages = null;
+                if (claimIdleMillis > 0 && System.currentTimeMillis() - lastClaimTime >= claimIdleMillis) {
+                    //回收超时未确认的消息（消费者下线、处理失败），回收完之后再继续读取新消息
+                    messages = stream.xclaim(key, group, consumer, claimIdleMillis, batchSize);
+                    if (messages.size() < batchSize) {
+                        lastClaimTime = System.currentTimeMillis();
+                    }
+                }
+                if (messages == null || messages.isEmpty()) {
+                    messages = stream.xreadgroup(key, group, consumer, batchSize);
+                }
+                if (messages.isEmpty()) {
+                    //Lua脚本中不能阻塞读取，没有消息时等待一段时间再拉取
+                    Thread.sleep(pollIntervalMillis);
+                    continue;
+                }
+                batches.acquire();
+                List<StreamMessage> batch = messages;
+                workers.execute(() -> {
+                    try {
+                        handle(batch);
+                    } finally {
+                        batches.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("stream poll error, key: {}, group: {}, consumer: {}", key, group, consumer, e);
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(List<StreamMessage> messages) {
+        try {
+            handler.accept(messages);
+        } catch (Exception e) {
+            log.error("stream handle error, key: {}, group: {}, size: {}", key, group, messages.size(), e);
+            return;
+        }
+        List<String> ids = new ArrayList<>(messages.size());
+        messages.forEach(message -> ids.add(message.getId()));
+        try {
+            stream.xack(key, group, ids);
+        } catch (Exception e) {
+            log.error("stream ack error, key: {}, group: {}, ids: {}", key, group, ids, e);
+        }
+    }
+
+}
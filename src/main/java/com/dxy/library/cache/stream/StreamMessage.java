@@ -0,0 +1,34 @@
+package com.dxy.library.cache.stream;
+
+import java.util.Map;
+
+/**
+ * Stream中的一条消息
+ * @author duanxinyuan
+ * 2019/3/11 14:05
+ */
+public class StreamMessage {
+
+    //消息ID，格式为：毫秒时间戳-序号
+    private final String id;
+
+    private final Map<String, String> fields;
+
+    public StreamMessage(String id, Map<String, String> fields) {
+        this.id = id;
+        this.fields = fields;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamMessage{id='" + id + "', fields=" + fields + '}';
+    }
+}
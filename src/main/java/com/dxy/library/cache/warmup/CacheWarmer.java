@@ -0,0 +1,173 @@
+package com.dxy.library.cache.warmup;
+
+import com.dxy.library.cache.memory.IMemory;
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.json.gson.GsonUtil;
+import com.dxy.library.util.common.config.ConfigUtils;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存预热器，定期将读取最多的Key保存到清单文件，启动时按清单从Redis批量读取数据写入内存缓存
+ * 预热完成前isReady返回false，可用于服务的就绪检查
+ * @author duanxinyuan
+ * 2019/3/6 11:40
+ */
+@Slf4j
+public class CacheWarmer {
+
+    public static final String TYPE_STRING = "string";
+
+    public static final String TYPE_SET = "set";
+
+    public static final String TYPE_HASH = "hash";
+
+    private final IMemory memory;
+    private final IRedis redis;
+    private final File manifest;
+    private final HotKeyRecorder recorder;
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    private final int concurrency;
+    private final int batchSize;
+    private final int timeoutSeconds;
+    private final int saveSeconds;
+
+    public CacheWarmer(IMemory memory, IRedis redis) {
+        this.memory = memory;
+        this.redis = redis;
+        String path = ConfigUtils.getConfig("cache.warmup.manifest.file");
+        if (StringUtils.isEmpty(path)) {
+            path = System.getProperty("java.io.tmpdir") + File.separator + "redis-cache.hotkeys";
+        }
+        this.manifest = new File(path);
+        this.recorder = new HotKeyRecorder(NumberUtils.toInt(ConfigUtils.getConfig("cache.warmup.top.n"), 1000));
+        this.concurrency = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.warmup.concurrency"), 4), 1);
+        this.batchSize = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.warmup.batch.size"), 100), 1);
+        this.timeoutSeconds = NumberUtils.toInt(ConfigUtils.getConfig("cache.warmup.timeout.seconds"), 60);
+        this.saveSeconds = NumberUtils.toInt(ConfigUtils.getConfig("cache.warmup.save.seconds"), 300);
+    }
+
+    /**
+     * 开始预热（异步执行），并启动热点Key清单的定期保存
+     */
+    public void start() {
+        Thread thread = new Thread(this::warmup, "cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("cache-hotkey-save-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(() -> recorder.save(manifest), saveSeconds, saveSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> recorder.save(manifest)));
+    }
+
+    /**
+     * 记录一次Key的读取
+     */
+    public void record(String key, String type) {
+        recorder.record(key, type);
+    }
+
+    /**
+     * 预热是否已完成
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * 等待预热完成，返回true表示已完成
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    private void warmup() {
+        long start = System.currentTimeMillis();
+        Map<String, List<String>> keys = HotKeyRecorder.load(manifest);
+        if (keys.isEmpty()) {
+            ready.countDown();
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("cache-warmup-%d").setDaemon(true).build());
+        AtomicInteger count = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            keys.forEach((type, typeKeys) -> {
+                for (List<String> batch : Lists.partition(typeKeys, batchSize)) {
+                    futures.add(executor.submit(() -> count.addAndGet(warmup(type, batch))));
+                }
+            });
+            long deadline = start + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    log.warn("cache warmup batch failed", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            ready.countDown();
+        }
+        log.info("cache warmup finished, keys: {}, cost: {}ms", count.get(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 预热一批Key，返回写入内存的Key数量
+     */
+    private int warmup(String type, List<String> keys) {
+        int count = 0;
+        switch (type) {
+            case TYPE_STRING:
+                List<String> values = redis.mget(keys.toArray(new String[0]));
+                for (int i = 0; i < keys.size(); i++) {
+                    if (StringUtils.isNotEmpty(values.get(i))) {
+                        memory.set(keys.get(i), values.get(i));
+                        count++;
+                    }
+                }
+                break;
+            case TYPE_SET:
+                for (String key : keys) {
+                    Set<String> set = redis.smembers(key);
+                    if (set != null && !set.isEmpty()) {
+                        memory.set(key, GsonUtil.to(set));
+                        count++;
+                    }
+                }
+                break;
+            case TYPE_HASH:
+                for (String key : keys) {
+                    Map<String, String> map = redis.hgetAll(key);
+                    if (map != null && !map.isEmpty()) {
+                        memory.set(key, GsonUtil.to(map));
+                        count++;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        return count;
+    }
+
+}
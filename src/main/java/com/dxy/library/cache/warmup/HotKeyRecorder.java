@@ -0,0 +1,142 @@
+package com.dxy.library.cache.warmup;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 热点Key记录器，统计一段时间内读取次数最多的Key及其数据类型，并保存为清单文件
+ * 清单文件每行一个Key，格式为：类型\tKey
+ * @author duanxinyuan
+ * 2019/3/6 11:05
+ */
+@Slf4j
+public class HotKeyRecorder {
+
+    //Key -> 读取次数
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    //上一个统计周期的读取次数，保存时与当前周期合并，进程退出时即使当前周期刚开始，清单也至少覆盖一个完整周期
+    private Map<String, Snapshot> previous = new HashMap<>();
+
+    private final int topN;
+    //最多统计的Key数量，超过后不再记录新Key，防止统计本身占用过多内存
+    private final int maxKeys;
+
+    public HotKeyRecorder(int topN) {
+        this.topN = topN;
+        this.maxKeys = topN * 10;
+    }
+
+    /**
+     * 记录一次Key的读取
+     * @param type 数据类型，见CacheWarmer中的TYPE常量
+     */
+    public void record(String key, String type) {
+        if (key == null) {
+            return;
+        }
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxKeys) {
+                return;
+            }
+            counter = counters.computeIfAbsent(key, k -> new Counter(type));
+        }
+        counter.count.increment();
+    }
+
+    /**
+     * 将上一个周期与当前周期合并后读取次数最多的topN个Key写入清单文件，并清空统计，开始下一个统计周期
+     */
+    public synchronized void save(File manifest) {
+        Map<String, Snapshot> current = new HashMap<>(counters.size());
+        counters.forEach((key, counter) -> current.put(key, new Snapshot(counter.type, counter.count.sum())));
+        counters.clear();
+        Map<String, Snapshot> merged = new HashMap<>(previous);
+        current.forEach((key, snapshot) -> merged.merge(key, snapshot, (o1, o2) -> new Snapshot(o2.type, o1.count + o2.count)));
+        previous = current;
+        List<String> lines = merged.entrySet().stream()
+                .sorted((o1, o2) -> Long.compare(o2.getValue().count, o1.getValue().count))
+                .limit(topN)
+                .map(entry -> entry.getValue().type + "\t" + entry.getKey())
+                .collect(Collectors.toList());
+        if (lines.isEmpty()) {
+            return;
+        }
+        File parent = manifest.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            log.error("hot key manifest save failed, mkdirs failed: {}", parent);
+            return;
+        }
+        //先写临时文件再替换，防止进程退出时清单文件不完整
+        File temp = new File(manifest.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            log.error("hot key manifest save failed, file: {}", manifest, e);
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("hot key manifest save failed, file: {}", manifest, e);
+        }
+    }
+
+    /**
+     * 读取清单文件，返回类型 -> Key列表
+     */
+    public static Map<String, List<String>> load(File manifest) {
+        Map<String, List<String>> keys = new HashMap<>();
+        if (!manifest.exists()) {
+            return keys;
+        }
+        try {
+            for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                int index = line.indexOf('\t');
+                if (index <= 0 || index == line.length() - 1) {
+                    continue;
+                }
+                keys.computeIfAbsent(line.substring(0, index), type -> new ArrayList<>()).add(line.substring(index + 1));
+            }
+        } catch (IOException e) {
+            log.error("hot key manifest load failed, file: {}", manifest, e);
+        }
+        return keys;
+    }
+
+    private static class Snapshot {
+        private final String type;
+        private final long count;
+
+        Snapshot(String type, long count) {
+            this.type = type;
+            this.count = count;
+        }
+    }
+
+    private static class Counter {
+        private final String type;
+        private final LongAdder count = new LongAdder();
+
+        Counter(String type) {
+            this.type = type;
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+package com.dxy.library.cache.window;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.util.common.config.ConfigUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 按时间分桶的去重计数（HyperLogLog）和计数器，可以同时按多个粒度（如5分钟、1小时、1天）分桶
+ * 写入时一次请求更新所有粒度的当前桶并设置过期时间，查询时用尽量少的桶覆盖查询区间（整段用粗粒度，两端用细粒度），一次请求完成
+ * 桶按UTC纪元时间（1970-01-01T00:00:00Z）对齐，天粒度的桶从UTC零点开始，不是本地时区的零点（如北京时间为早上8点）
+ * 所有桶的key使用同一个hash tag，集群模式下位于同一slot；所有操作通过以锚点key路由的Lua脚本执行，分片模式下位于同一分片
+ * @author duanxinyuan
+ * 2019/3/19 10:20
+ */
+public class RedisWindow {
+
+    //Lua的unpack一次最多展开约8000个值，每次展开的key数量，也是一次脚本调用读取的桶数量
+    private static final int CHUNK_SIZE = 1000;
+
+    //KEYS[1]为锚点key（只用于路由），KEYS[2..]为各粒度的桶，ARGV[1..n]为各桶的过期时间（毫秒），之后为添加的值
+    private static final String PFADD_SCRIPT = "local n = #KEYS - 1 "
+            + "for i = 2, #KEYS do redis.call('PFADD', KEYS[i], unpack(ARGV, n + 1)) redis.call('PEXPIRE', KEYS[i], ARGV[i - 1]) end "
+            + "return n";
+
+    //KEYS同上，ARGV[1..n]为各桶的过期时间（毫秒），ARGV[n + 1]为增量
+    private static final String INCR_SCRIPT = "local n = #KEYS - 1 "
+            + "for i = 2, #KEYS do redis.call('INCRBY', KEYS[i], ARGV[n + 1]) redis.call('PEXPIRE', KEYS[i], ARGV[i - 1]) end "
+            + "return n";
+
+    //KEYS[2]为临时key，KEYS[3..]为统计的桶，桶数量超过CHUNK_SIZE时分批合并到临时key中再统计，返回前删除临时key
+    private static final String PFCOUNT_SCRIPT = "local n = #KEYS - 2 "
+            + "if n < 1 then return 0 end "
+            + "if n <= " + CHUNK_SIZE + " then return redis.call('PFCOUNT', unpack(KEYS, 3)) end "
+            + "for i = 3, #KEYS, " + CHUNK_SIZE + " do "
+            + "local result = redis.pcall('PFMERGE', KEYS[2], unpack(KEYS, i, math.min(i + " + (CHUNK_SIZE - 1) + ", #KEYS))) "
+            + "if type(result) == 'table' and result.err then redis.call('DEL', KEYS[2]) return result end "
+            + "end "
+            + "local count = redis.call('PFCOUNT', KEYS[2]) redis.call('DEL', KEYS[2]) return count";
+
+    private static final String PFCOUNT_EACH_SCRIPT = "local counts = {} "
+            + "for i = 2, #KEYS do counts[i - 1] = redis.call('PFCOUNT', KEYS[i]) end "
+            + "return counts";
+
+    private static final String MGET_SCRIPT = "if #KEYS < 2 then return {} end return redis.call('MGET', unpack(KEYS, 2))";
+
+    //KEYS[2]为目标key，KEYS[3..]为合并的桶（分批合并），ARGV[1]为目标key的过期时间（毫秒），返回合并之后的数量
+    private static final String PFMERGE_SCRIPT = "for i = 3, math.max(#KEYS, 3), " + CHUNK_SIZE + " do "
+            + "redis.call('PFMERGE', KEYS[2], unpack(KEYS, i, math.min(i + " + (CHUNK_SIZE - 1) + ", #KEYS))) end "
+            + "if tonumber(ARGV[1]) > 0 then redis.call('PEXPIRE', KEYS[2], ARGV[1]) end "
+            + "return redis.call('PFCOUNT', KEYS[2])";
+
+    private static final String PFCOUNT_ROLLUP_SCRIPT = "return redis.call('PFCOUNT', KEYS[2])";
+
+    private final IRedis redis;
+    private final String anchor;
+    //各粒度的桶大小（毫秒），从大到小排列
+    private final long[] buckets;
+    private final long[] expireMillis;
+
+    /**
+     * @param name 统计名称，如uv
+     * @param buckets 分桶粒度，可以有多个，查询区间的精度取决于最小的粒度；较粗的粒度必须是较细粒度的整数倍（如5分钟、1小时、1天），
+     *                否则粗粒度桶的边界与细粒度桶不对齐，区间两端无法被细粒度桶完整覆盖
+     */
+    public RedisWindow(IRedis redis, String name, Duration... buckets) {
+        if (buckets == null || buckets.length == 0) {
+            throw new IllegalArgumentException("window buckets must not be empty, name: " + name);
+        }
+        this.redis = redis;
+        this.anchor = "window:{" + name + "}";
+        this.buckets = Arrays.stream(buckets).mapToLong(Duration::toMillis).filter(millis -> millis > 0).distinct().sorted().toArray();
+        if (this.buckets.length == 0) {
+            throw new IllegalArgumentException("window buckets must be positive, name: " + name);
+        }
+        for (int i = 0, j = this.buckets.length - 1; i < j; i++, j--) {
+            long bucket = this.buckets[i];
+            this.buckets[i] = this.buckets[j];
+            this.buckets[j] = bucket;
+        }
+        for (int i = 0; i + 1 < this.buckets.length; i++) {
+            if (this.buckets[i] % this.buckets[i + 1] != 0) {
+                throw new IllegalArgumentException("window bucket " + this.buckets[i] + "ms is not a multiple of " + this.buckets[i + 1]
+                        + "ms, name: " + name);
+            }
+        }
+        //每个粒度保留的桶数量
+        long retention = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.window.retention.buckets"), 400), 1);
+        this.expireMillis = Arrays.stream(this.buckets).map(bucket -> bucket * retention).toArray();
+    }
+
+    /**
+     * 向当前时间所在的桶（所有粒度）添加值
+     */
+    public void pfadd(String... values) {
+        pfadd(System.currentTimeMillis(), values);
+    }
+
+    /**
+     * 向指定时间所在的桶（所有粒度）添加值
+     */
+    public void pfadd(long timestamp, String... values) {
+        if (values == null || values.length == 0) {
+            return;
+        }
+        List<String> args = expireArgs();
+        args.addAll(Arrays.asList(values));
+        redis.eval(PFADD_SCRIPT, currentKeys(timestamp), args);
+    }
+
+    /**
+     * 获取[from, to)时间区间内去重之后的数量，区间两端按最小粒度对齐
+     */
+    public long pfcount(long from, long to) {
+        List<String> keys = cover(from, to);
+        keys.add(1, anchor + ":tmp:" + UUID.randomUUID());
+        return toLong(redis.eval(PFCOUNT_SCRIPT, keys, Collections.emptyList()));
+    }
+
+    /**
+     * 获取最近一段时间内去重之后的数量
+     */
+    public long pfcount(Duration range) {
+        long now = System.currentTimeMillis();
+        return pfcount(now - range.toMillis(), now);
+    }
+
+    /**
+     * 获取[from, to)时间区间内每个桶去重之后的数量，返回桶的开始时间 -> 数量
+     * @param bucket 分桶粒度，必须是创建时指定的粒度之一
+     */
+    public Map<Long, Long> pfcountSeries(Duration bucket, long from, long to) {
+        List<Long> starts = new ArrayList<>();
+        List<String> keys = seriesKeys(bucket, from, to, starts);
+        return toSeries(starts, evalChunked(PFCOUNT_EACH_SCRIPT, keys));
+    }
+
+    /**
+     * 在服务端将[from, to)时间区间内的桶合并到一个新的key中，返回合并之后的数量
+     * 合并结果与各桶使用同一个hash tag，集群模式下位于同一slot，可以通过RedisCache.pfcount与同一统计的其他key一起统计
+     * 分片模式不识别hash tag，RedisCache.pfcount按完整key选择分片，读不到合并结果，需要通过{@link #rollupCount(String)}读取
+     * @param seconds 合并结果的过期时间（秒），0表示不过期
+     */
+    public long rollup(String rollupName, long from, long to, int seconds) {
+        List<String> keys = cover(from, to);
+        keys.add(1, rollupKey(rollupName));
+        return toLong(redis.eval(PFMERGE_SCRIPT, keys, Collections.singletonList(String.valueOf(seconds * 1000L))));
+    }
+
+    /**
+     * 获取合并结果的数量，通过锚点key路由，所有部署模式下都与合并时位于同一节点
+     */
+    public long rollupCount(String rollupName) {
+        return toLong(redis.eval(PFCOUNT_ROLLUP_SCRIPT, Arrays.asList(anchor, rollupKey(rollupName)), Collections.emptyList()));
+    }
+
+    /**
+     * 合并结果的key，集群、单机、哨兵模式下可以直接用于RedisCache的读写，分片模式下只能通过本类读取
+     */
+    public String rollupKey(String rollupName) {
+        return anchor + ":rollup:" + rollupName;
+    }
+
+    /**
+     * 当前时间所在的桶（所有粒度）计数增加delta
+     */
+    public void incr(long delta) {
+        incr(System.currentTimeMillis(), delta);
+    }
+
+    /**
+     * 指定时间所在的桶（所有粒度）计数增加delta
+     */
+    public void incr(long timestamp, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        List<String> args = expireArgs();
+        args.add(String.valueOf(delta));
+        redis.eval(INCR_SCRIPT, currentKeys(timestamp), args);
+    }
+
+    /**
+     * 获取[from, to)时间区间内的计数之和，区间两端按最小粒度对齐
+     */
+    public long sum(long from, long to) {
+        List<Object> values = evalChunked(MGET_SCRIPT, cover(from, to));
+        long sum = 0;
+        for (Object value : values) {
+            sum += toLong(value);
+        }
+        return sum;
+    }
+
+    /**
+     * 获取最近一段时间内的计数之和
+     */
+    public long sum(Duration range) {
+        long now = System.currentTimeMillis();
+        return sum(now - range.toMillis(), now);
+    }
+
+    /**
+     * 获取[from, to)时间区间内每个桶的计数，返回桶的开始时间 -> 计数
+     * @param bucket 分桶粒度，必须是创建时指定的粒度之一
+     */
+    public Map<Long, Long> series(Duration bucket, long from, long to) {
+        List<Long> starts = new ArrayList<>();
+        List<String> keys = seriesKeys(bucket, from, to, starts);
+        return toSeries(starts, evalChunked(MGET_SCRIPT, keys));
+    }
+
+    private List<String> currentKeys(long timestamp) {
+        List<String> keys = new ArrayList<>(buckets.length + 1);
+        keys.add(anchor);
+        for (long bucket : buckets) {
+            keys.add(key(bucket, Math.floorDiv(timestamp, bucket)));
+        }
+        return keys;
+    }
+
+    private List<String> expireArgs() {
+        List<String> args = new ArrayList<>(buckets.length + 1);
+        for (long expire : expireMillis) {
+            args.add(String.valueOf(expire));
+        }
+        return args;
+    }
+
+    /**
+     * 用尽量少的桶覆盖[from, to)，第一个元素为锚点key
+     */
+    private List<String> cover(long from, long to) {
+        List<String> keys = new ArrayList<>();
+        keys.add(anchor);
+        long finest = buckets[buckets.length - 1];
+        cover(Math.floorDiv(from, finest) * finest, -Math.floorDiv(-to, finest) * finest, 0, keys);
+        return keys;
+    }
+
+    private void cover(long from, long to, int level, List<String> keys) {
+        if (from >= to || level >= buckets.length) {
+            return;
+        }
+        long bucket = buckets[level];
+        long first = -Math.floorDiv(-from, bucket);
+        long last = Math.floorDiv(to, bucket);
+        if (first >= last) {
+            cover(from, to, level + 1, keys);
+            return;
+        }
+        for (long index = first; index < last; index++) {
+            keys.add(key(bucket, index));
+        }
+        cover(from, first * bucket, level + 1, keys);
+        cover(last * bucket, to, level + 1, keys);
+    }
+
+    private List<String> seriesKeys(Duration bucket, long from, long to, List<Long> starts) {
+        long millis = bucket.toMillis();
+        if (Arrays.stream(buckets).noneMatch(b -> b == millis)) {
+            throw new IllegalArgumentException("window bucket not configured: " + bucket);
+        }
+        List<String> keys = new ArrayList<>();
+        keys.add(anchor);
+        for (long index = Math.floorDiv(from, millis); index * millis < to; index++) {
+            keys.add(key(millis, index));
+            starts.add(index * millis);
+        }
+        return keys;
+    }
+
+    /**
+     * 按桶分批执行读取脚本（每批不超过CHUNK_SIZE个桶，都以锚点key路由），按顺序拼接各批的结果
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> evalChunked(String script, List<String> keys) {
+        List<Object> values = new ArrayList<>(keys.size());
+        for (int from = 1; from < keys.size(); from += CHUNK_SIZE) {
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE + 1);
+            chunk.add(anchor);
+            chunk.addAll(keys.subList(from, Math.min(from + CHUNK_SIZE, keys.size())));
+            List<Object> chunkValues = (List<Object>) redis.eval(script, chunk, Collections.emptyList());
+            if (chunkValues != null) {
+                values.addAll(chunkValues);
+            } else {
+                values.addAll(Collections.nCopies(chunk.size() - 1, null));
+            }
+        }
+        return values;
+    }
+
+    private String key(long bucket, long index) {
+        return anchor + ":" + bucket + ":" + index;
+    }
+
+    private static Map<Long, Long> toSeries(List<Long> starts, List<Object> values) {
+        Map<Long, Long> series = new LinkedHashMap<>(starts.size());
+        for (int i = 0; i < starts.size(); i++) {
+            series.put(starts.get(i), values != null && i < values.size() ? toLong(values.get(i)) : 0L);
+        }
+        return series;
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        return value == null ? 0 : NumberUtils.toLong(value.toString());
+    }
+
+}
@@ -0,0 +1,307 @@
+package com.dxy.library.cache.writebehind;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.cache.redis.WriteResult;
+import com.dxy.library.util.common.config.ConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 计数器写缓冲，incr/hincr的增量先在本地LongAdder中累加，定期或累积到一定数量后批量写入Redis
+ * 每个key在一个刷新周期内只产生一次INCRBY/HINCRBY，没有发送到Redis的增量放回缓冲区等待下次刷新
+ * Redis返回错误（如WRONGTYPE）或结果未知（连接在发送后断开）的增量记录日志后丢弃，重试会导致重复累加或一直失败
+ * 进程异常退出时最多丢失一个刷新周期（或cache.redis.counter.flush.size个增量）的数据，正常退出时会刷新
+ * @author duanxinyuan
+ * 2019/3/15 10:10
+ */
+@Slf4j
+public class CounterBuffer implements Closeable {
+
+    //每批写入的key数量
+    private static final int BATCH_SIZE = 1000;
+
+    private final IRedis redis;
+    //每批写入后通知写入的key，用于清除其他缓存层（如内存缓存）中的旧值
+    private final Consumer<String> flushListener;
+    private final long flushIntervalMillis;
+    private final long flushSize;
+
+    private final Map<CounterKey, LongAdder> counters = new ConcurrentHashMap<>();
+    //上次刷新时已经为0而被移除的计数器，下次刷新时再读取一次，避免移除时正在累加的增量丢失
+    private List<Map.Entry<CounterKey, LongAdder>> retired = new ArrayList<>();
+
+    //未刷新的增量次数
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public CounterBuffer(IRedis redis) {
+        this(redis, null);
+    }
+
+    public CounterBuffer(IRedis redis, Consumer<String> flushListener) {
+        this.redis = redis;
+        this.flushListener = flushListener;
+        this.flushIntervalMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.counter.flush.interval.millis"), 1000), 1);
+        this.flushSize = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.counter.flush.size"), 10000), 1);
+        this.flusher = new Thread(this::run, "cache-counter-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "cache-counter-shutdown"));
+    }
+
+    public void incr(String key, long delta) {
+        add(new CounterKey(key, null), delta);
+    }
+
+    public void hincr(String key, String field, long delta) {
+        add(new CounterKey(key, field), delta);
+    }
+
+    private void add(CounterKey counterKey, long delta) {
+        if (StringUtils.isEmpty(counterKey.key) || delta == 0) {
+            return;
+        }
+        counters.computeIfAbsent(counterKey, k -> new LongAdder()).add(delta);
+        if (pending.incrementAndGet() == flushSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * 未刷新的增量次数
+     */
+    public long getPendingDeltas() {
+        return pending.get();
+    }
+
+    /**
+     * 缓冲区中的计数器数量（包括增量为0、等待移除的计数器）
+     */
+    public int getPendingKeys() {
+        return counters.size();
+    }
+
+    /**
+     * 已写入Redis的key数量
+     */
+    public long getFlushedKeys() {
+        return flushed.get();
+    }
+
+    /**
+     * 写入失败（有增量没有写入成功）的批次数量
+     */
+    public long getFailedFlushes() {
+        return failed.get();
+    }
+
+    /**
+     * 因Redis返回错误或结果未知而丢弃的增量数量
+     */
+    public long getDroppedKeys() {
+        return dropped.get();
+    }
+
+    /**
+     * 立即将缓冲区中的增量写入Redis
+     */
+    public synchronized void flush() {
+        pending.set(0);
+        Map<String, Long> deltas = new HashMap<>();
+        Map<String, Map<String, Long>> hashDeltas = new HashMap<>();
+        List<Map.Entry<CounterKey, LongAdder>> lastRetired = retired;
+        retired = new ArrayList<>();
+        for (Map.Entry<CounterKey, LongAdder> entry : lastRetired) {
+            collect(entry.getKey(), entry.getValue().sum(), deltas, hashDeltas);
+        }
+        counters.forEach((counterKey, adder) -> {
+            long sum = adder.sum();
+            if (sum == 0) {
+                if (counters.remove(counterKey, adder)) {
+                    retired.add(new HashMap.SimpleEntry<>(counterKey, adder));
+                }
+                return;
+            }
+            //只减去读取到的值，读取之后的增量保留到下次刷新
+            adder.add(-sum);
+            collect(counterKey, sum, deltas, hashDeltas);
+        });
+        write(deltas, hashDeltas);
+    }
+
+    private void collect(CounterKey counterKey, long sum, Map<String, Long> deltas, Map<String, Map<String, Long>> hashDeltas) {
+        if (sum == 0) {
+            return;
+        }
+        if (counterKey.field == null) {
+            deltas.merge(counterKey.key, sum, Long::sum);
+        } else {
+            hashDeltas.computeIfAbsent(counterKey.key, k -> new HashMap<>()).merge(counterKey.field, sum, Long::sum);
+        }
+    }
+
+    private void write(Map<String, Long> deltas, Map<String, Map<String, Long>> hashDeltas) {
+        for (Map<String, Long> batch : partition(deltas)) {
+            Map<String, WriteResult> results;
+            try {
+                results = redis.incr(batch);
+            } catch (Exception e) {
+                log.error("counter flush error, size: {}", batch.size(), e);
+                results = new HashMap<>();
+            }
+            boolean success = true;
+            for (Map.Entry<String, Long> entry : batch.entrySet()) {
+                success &= complete(new CounterKey(entry.getKey(), null), entry.getValue(), results.get(entry.getKey()));
+            }
+            if (!success) {
+                failed.incrementAndGet();
+            }
+            notifyFlushed(batch.keySet());
+        }
+        for (Map<String, Map<String, Long>> batch : partition(hashDeltas)) {
+            Map<String, Map<String, WriteResult>> results;
+            try {
+                results = redis.hincr(batch);
+            } catch (Exception e) {
+                log.error("hash counter flush error, size: {}", batch.size(), e);
+                results = new HashMap<>();
+            }
+            boolean success = true;
+            for (Map.Entry<String, Map<String, Long>> entry : batch.entrySet()) {
+                Map<String, WriteResult> fieldResults = results.getOrDefault(entry.getKey(), new HashMap<>());
+                for (Map.Entry<String, Long> field : entry.getValue().entrySet()) {
+                    success &= complete(new CounterKey(entry.getKey(), field.getKey()), field.getValue(), fieldResults.get(field.getKey()));
+                }
+            }
+            if (!success) {
+                failed.incrementAndGet();
+            }
+            notifyFlushed(batch.keySet());
+        }
+    }
+
+    private void notifyFlushed(Set<String> keys) {
+        if (flushListener == null) {
+            return;
+        }
+        try {
+            keys.forEach(flushListener);
+        } catch (Exception e) {
+            log.error("counter flush listener error, size: {}", keys.size(), e);
+        }
+    }
+
+    /**
+     * 处理单个增量的写入结果，没有发送的增量放回缓冲区，其他失败的增量丢弃，返回是否写入成功
+     * 没有返回结果（写入时抛出异常）时无法确定是否已执行，按结果未知处理
+     */
+    private boolean complete(CounterKey counterKey, long delta, WriteResult result) {
+        if (result == WriteResult.APPLIED) {
+            flushed.incrementAndGet();
+            return true;
+        }
+        if (result == WriteResult.NOT_SENT) {
+            add(counterKey, delta);
+            return false;
+        }
+        dropped.incrementAndGet();
+        log.error("counter flush {}, delta dropped, key: {}, field: {}, delta: {}",
+                result == null ? WriteResult.UNKNOWN : result, counterKey.key, counterKey.field, delta);
+        return false;
+    }
+
+    private static <V> List<Map<String, V>> partition(Map<String, V> map) {
+        List<Map<String, V>> batches = new ArrayList<>();
+        Map<String, V> batch = new HashMap<>();
+        for (Map.Entry<String, V> entry : map.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() >= BATCH_SIZE) {
+                batches.add(batch);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+            if (!running) {
+                return;
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("counter flush error", e);
+            }
+        }
+    }
+
+    /**
+     * 停止定时刷新，并将剩余的增量写入Redis
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        flush();
+        //移除的计数器需要再读取一次
+        flush();
+        log.info("counter buffer closed, flushed keys: {}, failed flushes: {}, dropped keys: {}", flushed.get(), failed.get(), dropped.get());
+    }
+
+    private static class CounterKey {
+        private final String key;
+        //hash的field，普通计数器为null
+        private final String field;
+
+        CounterKey(String key, String field) {
+            this.key = key;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CounterKey)) {
+                return false;
+            }
+            CounterKey that = (CounterKey) o;
+            return key.equals(that.key) && Objects.equals(field, that.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + Objects.hashCode(field);
+        }
+    }
+
+}
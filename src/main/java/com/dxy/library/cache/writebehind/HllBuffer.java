@@ -0,0 +1,192 @@
+package com.dxy.library.cache.writebehind;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.util.common.config.ConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * HyperLogLog写缓冲，pfadd的值先在本地按key去重，定期或累积到一定数量后通过多元素PFADD批量写入Redis
+ * 同一个值在一个刷新周期内只写入一次，写入失败的值放回缓冲区等待下次刷新（PFADD是幂等的，重复写入不影响计数）
+ * 进程异常退出时最多丢失一个刷新周期（或cache.redis.hll.flush.size个值）的数据，正常退出时会刷新
+ * @author duanxinyuan
+ * 2019/3/18 11:00
+ */
+@Slf4j
+public class HllBuffer implements Closeable {
+
+    //每批写入的值的数量
+    private static final int BATCH_SIZE = 10000;
+
+    private final IRedis redis;
+    private final long flushIntervalMillis;
+    private final long flushSize;
+
+    private final Map<String, Values> buffers = new ConcurrentHashMap<>();
+    //上次刷新时已经为空而被移除的缓冲，下次刷新时再读取一次，避免移除时正在添加的值丢失
+    private List<Map.Entry<String, Values>> retired = new ArrayList<>();
+
+    //未刷新的添加次数
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public HllBuffer(IRedis redis) {
+        this.redis = redis;
+        this.flushIntervalMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.hll.flush.interval.millis"), 1000), 1);
+        this.flushSize = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.hll.flush.size"), 10000), 1);
+        this.flusher = new Thread(this::run, "cache-hll-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "cache-hll-shutdown"));
+    }
+
+    /**
+     * @param seconds 过期时间（秒），0表示不过期，同一个key以最后一次添加时的过期时间为准
+     */
+    public void pfadd(String key, String value, int seconds) {
+        if (StringUtils.isEmpty(key) || value == null || seconds < 0) {
+            return;
+        }
+        Values values = buffers.computeIfAbsent(key, k -> new Values());
+        values.seconds = seconds;
+        if (values.elements.add(value) && pending.incrementAndGet() == flushSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * 未刷新的值的数量（已去重）
+     */
+    public long getPendingValues() {
+        return pending.get();
+    }
+
+    /**
+     * 缓冲区中的key数量
+     */
+    public int getPendingKeys() {
+        return buffers.size();
+    }
+
+    /**
+     * 已写入Redis的值的数量
+     */
+    public long getFlushedValues() {
+        return flushed.get();
+    }
+
+    /**
+     * 写入失败的批次数量
+     */
+    public long getFailedFlushes() {
+        return failed.get();
+    }
+
+    /**
+     * 立即将缓冲区中的值写入Redis
+     */
+    public synchronized void flush() {
+        pending.set(0);
+        Map<Integer, Map<String, Collection<String>>> batches = new HashMap<>();
+        int[] size = {0};
+        List<Map.Entry<String, Values>> lastRetired = retired;
+        retired = new ArrayList<>();
+        for (Map.Entry<String, Values> entry : lastRetired) {
+            drain(entry.getKey(), entry.getValue(), batches, size);
+        }
+        buffers.forEach((key, values) -> {
+            if (values.elements.isEmpty()) {
+                if (buffers.remove(key, values)) {
+                    retired.add(new HashMap.SimpleEntry<>(key, values));
+                }
+                return;
+            }
+            drain(key, values, batches, size);
+        });
+        write(batches);
+    }
+
+    /**
+     * 逐个移除并收集缓冲中的值，移除之后新添加的值留到下次刷新
+     */
+    private void drain(String key, Values values, Map<Integer, Map<String, Collection<String>>> batches, int[] size) {
+        Iterator<String> iterator = values.elements.iterator();
+        while (iterator.hasNext()) {
+            String value = iterator.next();
+            iterator.remove();
+            batches.computeIfAbsent(values.seconds, k -> new HashMap<>()).computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+            if (++size[0] >= BATCH_SIZE) {
+                write(batches);
+                batches.clear();
+                size[0] = 0;
+            }
+        }
+    }
+
+    private void write(Map<Integer, Map<String, Collection<String>>> batches) {
+        batches.forEach((seconds, batch) -> {
+            try {
+                redis.pfadd(batch, seconds);
+                batch.values().forEach(elements -> flushed.addAndGet(elements.size()));
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("hll flush error, keys: {}", batch.size(), e);
+                batch.forEach((key, elements) -> elements.forEach(value -> pfadd(key, value, seconds)));
+            }
+        });
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+            if (!running) {
+                return;
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("hll flush error", e);
+            }
+        }
+    }
+
+    /**
+     * 停止定时刷新，并将剩余的值写入Redis
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        flush();
+        //移除的缓冲需要再读取一次
+        flush();
+        log.info("hll buffer closed, flushed values: {}, failed flushes: {}", flushed.get(), failed.get());
+    }
+
+    private static class Values {
+        private final Set<String> elements = ConcurrentHashMap.newKeySet();
+        private volatile int seconds;
+    }
+
+}
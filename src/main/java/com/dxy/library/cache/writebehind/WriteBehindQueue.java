@@ -0,0 +1,304 @@
+package com.dxy.library.cache.writebehind;
+
+import com.dxy.library.cache.redis.IRedis;
+import com.dxy.library.util.common.config.ConfigUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步写队列，set/hset先放入有界队列后立即返回，由后台线程按批次通过管道写入Redis（分片/集群模式按节点分组并行写入）
+ * 同一个key（hash为同一个field）在写入之前的多次修改会合并，只写入最后一次的值
+ * 队列满时按cache.redis.write.behind.overflow处理：sync（调用线程同步写入）、drop（丢弃）、block（等待队列有空位）
+ * 不保证与同步写入（RedisCache.set等）之间的顺序，适用于不需要确认结果的缓存回填
+ * @author duanxinyuan
+ * 2019/3/15 15:20
+ */
+@Slf4j
+public class WriteBehindQueue implements Closeable {
+
+    private static final String OVERFLOW_SYNC = "sync";
+    private static final String OVERFLOW_DROP = "drop";
+    private static final String OVERFLOW_BLOCK = "block";
+
+    private final IRedis redis;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final String overflow;
+
+    private final Map<WriteKey, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public WriteBehindQueue(IRedis redis) {
+        this.redis = redis;
+        this.capacity = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.write.behind.capacity"), 100000), 1);
+        this.batchSize = Math.max(NumberUtils.toInt(ConfigUtils.getConfig("cache.redis.write.behind.batch.size"), 1000), 1);
+        this.flushIntervalMillis = Math.max(NumberUtils.toLong(ConfigUtils.getConfig("cache.redis.write.behind.flush.interval.millis"), 100), 1);
+        this.overflow = StringUtils.defaultIfEmpty(ConfigUtils.getConfig("cache.redis.write.behind.overflow"), OVERFLOW_SYNC);
+        this.flusher = new Thread(this::run, "cache-write-behind-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "cache-write-behind-shutdown"));
+    }
+
+    /**
+     * @param seconds 过期时间（秒），0表示不过期
+     */
+    public void set(String key, String value, int seconds) {
+        offer(new WriteKey(key, null), new PendingWrite(value, seconds));
+    }
+
+    /**
+     * @param seconds 整个map的过期时间（秒），0表示不过期
+     */
+    public void hset(String key, String field, String value, int seconds) {
+        offer(new WriteKey(key, field), new PendingWrite(value, seconds));
+    }
+
+    private void offer(WriteKey writeKey, PendingWrite write) {
+        if (StringUtils.isEmpty(writeKey.key) || write.value == null || write.seconds < 0) {
+            return;
+        }
+        if (!running) {
+            write(writeKey, write);
+            return;
+        }
+        if (size.get() >= capacity && !pending.containsKey(writeKey)) {
+            overflowed.incrementAndGet();
+            LockSupport.unpark(flusher);
+            switch (overflow) {
+                case OVERFLOW_DROP:
+                    dropped.incrementAndGet();
+                    return;
+                case OVERFLOW_BLOCK:
+                    if (!awaitCapacity()) {
+                        write(writeKey, write);
+                        return;
+                    }
+                    break;
+                default:
+                    write(writeKey, write);
+                    return;
+            }
+        }
+        if (pending.put(writeKey, write) == null) {
+            if (size.incrementAndGet() == batchSize) {
+                LockSupport.unpark(flusher);
+            }
+        } else {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * 等待队列有空位，队列已关闭时返回false
+     */
+    private boolean awaitCapacity() {
+        synchronized (size) {
+            while (running && size.get() >= capacity) {
+                try {
+                    size.wait(flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return running;
+    }
+
+    /**
+     * 队列中等待写入的key数量
+     */
+    public int getPendingSize() {
+        return size.get();
+    }
+
+    /**
+     * 写入之前被合并的修改次数
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * 队列满的次数
+     */
+    public long getOverflowCount() {
+        return overflowed.get();
+    }
+
+    /**
+     * 队列满时丢弃的写入次数（overflow=drop）
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 已写入Redis的key数量
+     */
+    public long getFlushedCount() {
+        return flushed.get();
+    }
+
+    /**
+     * 写入失败的key数量
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * 立即写入队列中的所有数据
+     */
+    public synchronized void flush() {
+        Iterator<WriteKey> iterator = pending.keySet().iterator();
+        while (iterator.hasNext()) {
+            Map<Integer, Map<String, String>> sets = new HashMap<>();
+            Map<Integer, Map<String, Map<String, String>>> hsets = new HashMap<>();
+            int count = 0;
+            while (count < batchSize && iterator.hasNext()) {
+                WriteKey writeKey = iterator.next();
+                //移除时取到的是最后一次写入的值，移除之后的写入进入下一批
+                PendingWrite write = pending.remove(writeKey);
+                if (write == null) {
+                    continue;
+                }
+                size.decrementAndGet();
+                count++;
+                if (writeKey.field == null) {
+                    sets.computeIfAbsent(write.seconds, k -> new HashMap<>()).put(writeKey.key, write.value);
+                } else {
+                    hsets.computeIfAbsent(write.seconds, k -> new HashMap<>())
+                            .computeIfAbsent(writeKey.key, k -> new HashMap<>()).put(writeKey.field, write.value);
+                }
+            }
+            sets.forEach((seconds, values) -> {
+                try {
+                    redis.mset(values, seconds);
+                    flushed.addAndGet(values.size());
+                } catch (Exception e) {
+                    failed.addAndGet(values.size());
+                    log.error("write behind flush error, size: {}", values.size(), e);
+                }
+            });
+            hsets.forEach((seconds, values) -> {
+                try {
+                    redis.hmset(values, seconds);
+                    flushed.addAndGet(values.size());
+                } catch (Exception e) {
+                    failed.addAndGet(values.size());
+                    log.error("write behind hash flush error, size: {}", values.size(), e);
+                }
+            });
+            synchronized (size) {
+                size.notifyAll();
+            }
+        }
+    }
+
+    private void write(WriteKey writeKey, PendingWrite write) {
+        Map<String, String> values = new HashMap<>(1);
+        if (writeKey.field == null) {
+            values.put(writeKey.key, write.value);
+            redis.mset(values, write.seconds);
+        } else {
+            values.put(writeKey.field, write.value);
+            Map<String, Map<String, String>> hashValues = new HashMap<>(1);
+            hashValues.put(writeKey.key, values);
+            redis.hmset(hashValues, write.seconds);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+            if (!running) {
+                return;
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("write behind flush error", e);
+            }
+        }
+    }
+
+    /**
+     * 停止后台写入，并写入队列中剩余的数据，关闭后的写入直接同步执行
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        synchronized (size) {
+            size.notifyAll();
+        }
+        flush();
+        log.info("write behind queue closed, flushed: {}, failed: {}, dropped: {}", flushed.get(), failed.get(), dropped.get());
+    }
+
+    private static class WriteKey {
+        private final String key;
+        //hash的field，set为null
+        private final String field;
+
+        WriteKey(String key, String field) {
+            this.key = key;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WriteKey)) {
+                return false;
+            }
+            WriteKey that = (WriteKey) o;
+            return key.equals(that.key) && Objects.equals(field, that.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + Objects.hashCode(field);
+        }
+    }
+
+    private static class PendingWrite {
+        private final String value;
+        private final int seconds;
+
+        PendingWrite(String value, int seconds) {
+            this.value = value;
+            this.seconds = seconds;
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 import com.dxy.library.cache.RedisCache;
 import com.dxy.library.json.gson.GsonUtil;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 
 /**
@@ -16,6 +17,7 @@ public class RedisCacheTest {
         testNumber();
         testList();
         testSet();
+        testZset();
         testMap();
         testPf();
         testBit();
@@ -86,6 +88,21 @@ public class RedisCacheTest {
         RedisCache.del("text_dxy_set");
     }
 
+    @Test
+    public void testZset() {
+        System.out.println("zadd: " + RedisCache.zadd("text_dxy_zset", 10, "m1"));
+        System.out.println("zadd: " + RedisCache.zadd("text_dxy_zset", ImmutableMap.of("m2", 20D, "m3", 30D)));
+        System.out.println("zincrby: " + RedisCache.zincrby("text_dxy_zset", 15, "m1"));
+        System.out.println("zincrby: " + GsonUtil.to(RedisCache.zincrby("text_dxy_zset", ImmutableMap.of("m2", 1D, "m4", 5D))));
+        System.out.println("zscore: " + GsonUtil.to(RedisCache.zscore("text_dxy_zset", "m1", "m5")));
+        System.out.println("zrevrank: " + RedisCache.zrevrank("text_dxy_zset", "m1"));
+        System.out.println("zrevrangeWithScores: " + GsonUtil.to(RedisCache.zrevrangeWithScores("text_dxy_zset", 0, 2)));
+        System.out.println("ztop: " + GsonUtil.to(RedisCache.ztop("text_dxy_zset", 3)));
+        System.out.println("zrem: " + RedisCache.zrem("text_dxy_zset", "m4"));
+        System.out.println("zcard: " + RedisCache.zcard("text_dxy_zset"));
+        RedisCache.del("text_dxy_zset");
+    }
+
     @Test
     public void testMap() {
         System.out.println("hset: " + RedisCache.hset("text_dxy_hset", "k1", "v1",timeout));
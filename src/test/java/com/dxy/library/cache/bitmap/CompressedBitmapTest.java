@@ -0,0 +1,174 @@
+package com.dxy.library.cache.bitmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * 压缩Bitmap与java.util.BitSet的对比测试，不依赖Redis
+ * @author duanxinyuan
+ * 2019/3/21 15:10
+ */
+public class CompressedBitmapTest {
+
+    //测试范围内的容器数量，每个容器65536个值
+    private static final int CONTAINERS = 12;
+
+    private static final int RANGE = CONTAINERS << 16;
+
+    @Test
+    public void testAddRemove() {
+        for (long offset : new long[]{0, CompressedBitmap.MAX_VALUE + 1 - RANGE}) {
+            Random random = new Random(offset);
+            BitSet expected = randomBitSet(random);
+            CompressedBitmap bitmap = toBitmap(expected, offset);
+            assertSame(expected, bitmap, offset);
+
+            for (int i = 0; i < 50000; i++) {
+                int value = random.nextInt(RANGE);
+                boolean exists = expected.get(value);
+                if (random.nextBoolean()) {
+                    Assert.assertEquals(!exists, bitmap.add(value + offset));
+                    expected.set(value);
+                } else {
+                    Assert.assertEquals(exists, bitmap.remove(value + offset));
+                    expected.clear(value);
+                }
+            }
+            assertSame(expected, bitmap, offset);
+            for (int i = 0; i < 10000; i++) {
+                int value = random.nextInt(RANGE);
+                Assert.assertEquals(expected.get(value), bitmap.contains(value + offset));
+            }
+        }
+    }
+
+    @Test
+    public void testContainerConversion() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        BitSet expected = new BitSet();
+        //超过4096个值时由数组容器转为位图容器
+        for (int value = 0; value < 10000; value++) {
+            bitmap.add(value * 3);
+            expected.set(value * 3);
+        }
+        Assert.assertEquals(1, bitmap.serializeContainer(0)[0]);
+        assertSame(expected, bitmap, 0);
+        //减少到4096个值以内时转回数组容器
+        for (int value = 0; value < 8000; value++) {
+            bitmap.remove(value * 3);
+            expected.clear(value * 3);
+        }
+        Assert.assertEquals(0, bitmap.serializeContainer(0)[0]);
+        assertSame(expected, bitmap, 0);
+        //容器为空时删除
+        for (int value = 8000; value < 10000; value++) {
+            bitmap.remove(value * 3);
+        }
+        Assert.assertTrue(bitmap.isEmpty());
+        Assert.assertNull(bitmap.serializeContainer(0));
+        Assert.assertEquals(-1, bitmap.last());
+    }
+
+    @Test
+    public void testSerialize() {
+        Random random = new Random(1);
+        for (int i = 0; i < 5; i++) {
+            BitSet expected = randomBitSet(random);
+            CompressedBitmap bitmap = toBitmap(expected, 0);
+            CompressedBitmap deserialized = CompressedBitmap.deserialize(bitmap.serializeContainers());
+            Assert.assertEquals(bitmap, deserialized);
+            assertSame(expected, deserialized, 0);
+        }
+    }
+
+    @Test
+    public void testBitOperations() {
+        Random random = new Random(2);
+        for (int i = 0; i < 5; i++) {
+            BitSet a = randomBitSet(random);
+            BitSet b = randomBitSet(random);
+            CompressedBitmap bitmapA = toBitmap(a, 0);
+            CompressedBitmap bitmapB = toBitmap(b, 0);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            assertSame(and, bitmapA.and(bitmapB), 0);
+
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            assertSame(or, bitmapA.or(bitmapB), 0);
+
+            BitSet xor = (BitSet) a.clone();
+            xor.xor(b);
+            assertSame(xor, bitmapA.xor(bitmapB), 0);
+
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+            assertSame(andNot, bitmapA.andNot(bitmapB), 0);
+
+            int end = random.nextInt(RANGE) + 1;
+            BitSet flip = (BitSet) a.clone();
+            flip.flip(0, end);
+            flip.clear(end, RANGE);
+            assertSame(flip, bitmapA.flip(end), 0);
+
+            //运算不修改原Bitmap
+            assertSame(a, bitmapA, 0);
+            assertSame(b, bitmapB, 0);
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        BitSet expected = randomBitSet(new Random(3));
+        CompressedBitmap bitmap = toBitmap(expected, 0);
+        CompressedBitmap copy = bitmap.copy();
+        copy.add(RANGE + 1);
+        copy.remove(expected.nextSetBit(0));
+        assertSame(expected, bitmap, 0);
+    }
+
+    /**
+     * 每个容器随机选择密度：空、稀疏（数组容器）、稠密（位图容器）、满
+     */
+    private static BitSet randomBitSet(Random random) {
+        BitSet bitSet = new BitSet(RANGE);
+        for (int container = 0; container < CONTAINERS; container++) {
+            int base = container << 16;
+            switch (random.nextInt(4)) {
+                case 0:
+                    break;
+                case 1:
+                    for (int i = random.nextInt(4096); i > 0; i--) {
+                        bitSet.set(base + random.nextInt(1 << 16));
+                    }
+                    break;
+                case 2:
+                    for (int i = 4096 + random.nextInt(40000); i > 0; i--) {
+                        bitSet.set(base + random.nextInt(1 << 16));
+                    }
+                    break;
+                default:
+                    bitSet.set(base, base + (1 << 16));
+                    break;
+            }
+        }
+        return bitSet;
+    }
+
+    private static CompressedBitmap toBitmap(BitSet bitSet, long offset) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        bitSet.stream().forEach(value -> bitmap.add(value + offset));
+        return bitmap;
+    }
+
+    private static void assertSame(BitSet expected, CompressedBitmap actual, long offset) {
+        Assert.assertArrayEquals(expected.stream().mapToLong(value -> value + offset).toArray(), actual.toArray());
+        Assert.assertEquals(expected.cardinality(), actual.cardinality());
+        Assert.assertEquals(expected.isEmpty() ? -1 : expected.length() - 1 + offset, actual.last());
+    }
+
+}